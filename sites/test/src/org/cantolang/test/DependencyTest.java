@@ -0,0 +1,82 @@
+/* Canto Test Suite: DependencyTest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ */
+
+package org.cantolang.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import canto.compiler.DependencyManifest;
+import canto.parser.Node;
+import canto.runtime.DependencyTracker;
+
+
+/** DependencyTest helps the Canto test suite test the dependency manifests
+ *  used by incremental static builds.  It records a page that reads a file,
+ *  then checks that the page is skipped while the file is unchanged and
+ *  rebuilt once it changes or the page's output is gone.
+ */
+public class DependencyTest {
+
+    /** Returns a letter for each check that passes and an x for each one
+     *  that fails, so the expected result is "ABCD".
+     */
+    public static String rebuildAndSkip() throws IOException {
+        File dir = File.createTempFile("canto_deps", "");
+        dir.delete();
+        dir.mkdirs();
+        File input = new File(dir, "input.txt");
+        File page = new File(dir, "page.html");
+        boolean wasEnabled = DependencyTracker.isEnabled();
+        StringBuffer sb = new StringBuffer();
+        try {
+            writeFile(input, "first");
+            writeFile(page, "page");
+
+            DependencyManifest.SourceIndex index = new DependencyManifest.SourceIndex(new Object[0], new Node[0]);
+            DependencyTracker.setEnabled(true);
+            DependencyTracker tracker = DependencyTracker.begin();
+            try {
+                DependencyTracker.fileRead(input.getPath());
+            } finally {
+                DependencyTracker.end();
+            }
+            DependencyManifest.write(page, "page", tracker, index);
+
+            // unchanged inputs: skip
+            sb.append(DependencyManifest.isUpToDate(page, index) ? "A" : "x");
+
+            // changed input: rebuild
+            writeFile(input, "second");
+            sb.append(DependencyManifest.isUpToDate(page, index) ? "x" : "B");
+
+            // rewritten manifest: skip again
+            DependencyManifest.write(page, "page", tracker, index);
+            sb.append(DependencyManifest.isUpToDate(page, index) ? "C" : "x");
+
+            // missing output: rebuild
+            page.delete();
+            sb.append(DependencyManifest.isUpToDate(page, index) ? "x" : "D");
+
+        } finally {
+            DependencyTracker.setEnabled(wasEnabled);
+            input.delete();
+            page.delete();
+            DependencyManifest.getManifestFile(page).delete();
+            dir.delete();
+        }
+        return sb.toString();
+    }
+
+    private static void writeFile(File file, String text) throws IOException {
+        FileWriter out = new FileWriter(file);
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+}
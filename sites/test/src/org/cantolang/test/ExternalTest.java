@@ -24,6 +24,15 @@ public class ExternalTest {
     }
 
     public String c = "C";
+
+    public static int intField = 2000;
+    public static short shortField = 7;
+    public static long longField = 3000000000L;
+    public static double doubleField = 1.5;
+    public static float floatField = 1.1f;
+    public static boolean booleanField = true;
+    public static char charField = 'Q';
+    public int instanceIntField = 5;
     private String str;
 
     public ExternalTest() {
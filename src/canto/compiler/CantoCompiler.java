@@ -10,18 +10,41 @@ package canto.compiler;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import canto.compiler.visitor.IncompleteDefinitionVisitor;
+import canto.lang.CantoArray;
 import canto.lang.Core;
 import canto.lang.Definition;
 import canto.lang.Instantiation;
+import canto.lang.NameNode;
+import canto.lang.ParameterList;
 import canto.lang.Redirection;
+import canto.lang.Site;
 import canto.lang.SiteLoader;
+import canto.lang.Value;
 import canto.runtime.Context;
 import canto.runtime.CantoLogger;
+import canto.runtime.DependencyTracker;
 
 /**
  * canto compiler.
@@ -69,10 +92,16 @@ public class CantoCompiler {
         System.out.println( "               have incomplete definitions." );
         System.out.println( "\n   -f filter   If sourcepath is a directory, load only the" );
         System.out.println( "               files that match the filter (default: *.can)" );
+        System.out.println( "\n   -i          Incremental build: only regenerate pages whose" );
+        System.out.println( "               dependencies changed since the last build" );
         System.out.println( "\n   -l logfile  Write logging information to logfile (default:" );
         System.out.println( "               write to console)" );
         System.out.println( "\n   -o dirname  Write output files to the dirname directory" );
         System.out.println( "               (default: write to current directory)" );
+        System.out.println( "\n   -p [n]      Generate pages in parallel on n threads" );
+        System.out.println( "               (default: one per processor); globals named in" );
+        System.out.println( "               a site's precompute_globals array are computed" );
+        System.out.println( "               before the threads start" );
         System.out.println( "\n   -r          If sourcepath is a directory, recurse through" );
         System.out.println( "               subdirectories" );
         System.out.println( "\n   -v          Verbose output" );
@@ -176,6 +205,345 @@ public class CantoCompiler {
         }
     }
 
+    /**
+     * PageResult
+     * 
+     * The outcome of generating a single page: the file written, if any, and the
+     * time spent generating and writing it.
+     */
+    protected static class PageResult {
+        public Definition page;
+        public File file = null;
+        public boolean upToDate = false;
+        public long time = 0L;
+
+        PageResult( Definition page ) {
+            this.page = page;
+        }
+
+        public boolean isWritten() {
+            return file != null;
+        }
+    }
+
+    /**
+     * Number of threads used to generate pages.  One (the default) means pages
+     * are generated sequentially with a single context.
+     */
+    protected int numThreads = 1;
+
+    /**
+     * If true, a dependency manifest is written next to each page, and pages
+     * whose dependencies have not changed since the manifest was written are
+     * not regenerated.
+     */
+    protected boolean incremental = false;
+
+    /** Number of slowest pages listed in the summary */
+    protected int NUM_SLOWEST_PAGES = 5;
+
+    private AtomicInteger pageCount = new AtomicInteger( 0 );
+
+    /** Hashes of the loaded source, used by incremental builds */
+    private DependencyManifest.SourceIndex sourceIndex = null;
+
+    /**
+     * generatePage
+     * 
+     * Instantiates a page in the passed context and writes the result to the
+     * page's output file.  In an incremental build, the page is skipped if
+     * it is up to date, and otherwise its dependency manifest is rewritten.
+     * 
+     * @param context
+     * @param page
+     * 
+     * @return the result, which records the file written, or no file if the
+     *         page does not generate output or is up to date.
+     */
+    protected PageResult generatePage( Context context, Definition page ) throws IOException {
+        long pageStartTime = System.nanoTime();
+        PageResult result = new PageResult( page );
+        DependencyTracker tracker = ( sourceIndex != null ? DependencyTracker.begin() : null );
+        try {
+            _generatePage( context, page, result );
+            if ( tracker != null && result.file != null ) {
+                DependencyManifest.write( result.file, page.getFullName(), tracker, sourceIndex );
+            }
+        } finally {
+            if ( tracker != null ) {
+                DependencyTracker.end();
+            }
+            result.time = System.nanoTime() - pageStartTime;
+        }
+        return result;
+    }
+
+    private void _generatePage( Context context, Definition page, PageResult result ) throws IOException {
+        Instantiation instance = new Instantiation( page );
+        if ( !isOutputAllowed( context, page, instance )) {
+            log( page.getFullName() + " does not generate output; skipping" );
+            return;
+        }
+
+        File pageFile = null;
+        if ( sourceIndex != null ) {
+            pageFile = getPageFile( page, instance );
+            if ( pageFile != null && DependencyManifest.isUpToDate( pageFile, sourceIndex ) ) {
+                log( "Page " + page.getFullName() + " is up to date, skipping." );
+                result.upToDate = true;
+                return;
+            }
+        }
+
+        String pageText = null;
+        try {
+            pageText = instance.getText( context );
+        } catch ( Redirection r ) {
+            log( "Page " + page.getName() + " redirects to " + r.getLocation() + "; skipping" );
+            return;
+        }
+        if ( pageText == null || pageText.length() == 0 ) {
+            log( "Page " + page.getFullName() + " has no content, skipping." );
+            return;
+        }
+
+        if ( pageFile == null ) {
+            pageFile = getPageFile( page, instance );
+            if ( pageFile == null ) {
+                return;
+            }
+        }
+        File parent = pageFile.getParentFile();
+        if ( parent != null && !parent.exists() ) {
+            if ( !parent.mkdirs() && !parent.isDirectory() ) {
+                log( "Unable to create parent directory " + parent.getAbsolutePath() );
+                return;
+            }
+        }
+        if ( pageFile.exists() && !pageFile.canWrite() ) {
+            log( "Unable to write to file " + pageFile.getAbsolutePath() );
+            return;
+        }
+
+        log( "Writing " + pageFile.getAbsolutePath() + "..." );
+        writePage( pageFile, pageText );
+        result.file = pageFile;
+    }
+
+    private File getPageFile( Definition page, Instantiation instance ) {
+        File outDir = createOutputDirectory( page, instance );
+        if ( outDir == null ) {
+            return null;
+        }
+        String fileName = createFileName( page, instance );
+        if ( fileName == null ) {
+            return null;
+        }
+        log( "Page " + pageCount.getAndIncrement() + " is " + fileName );
+        return new File( outDir, fileName );
+    }
+
+    /**
+     * writePage
+     * 
+     * Writes the page text to the file in a single buffered channel write,
+     * replacing any previous contents.  The text is encoded with the platform
+     * default charset, as FileWriter does.
+     */
+    protected void writePage( File pageFile, String pageText ) throws IOException {
+        ByteBuffer buf = Charset.defaultCharset().encode( pageText );
+        FileChannel channel = FileChannel.open( pageFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+        try {
+            while ( buf.hasRemaining() ) {
+                channel.write( buf );
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * generatePages
+     * 
+     * Generates the passed pages on a pool of numThreads worker threads.  Each
+     * page gets its own copy of the passed context, which shares the site and
+     * global keeps with it but has a fresh local cache.  The queue of waiting
+     * pages is bounded; when it is full the submitting thread generates the
+     * page itself.  Results are returned in the same order as the pages.
+     */
+    protected List<PageResult> generatePages( final Context context, List<Definition> pageList ) throws Exception {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor( numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>( numThreads * 2 ), new ThreadPoolExecutor.CallerRunsPolicy() );
+        List<Future<PageResult>> futures = new ArrayList<Future<PageResult>>( pageList.size() );
+        try {
+            Iterator<Definition> it = pageList.iterator();
+            while ( it.hasNext() ) {
+                final Definition page = it.next();
+                futures.add( pool.submit( new Callable<PageResult>() {
+                    public PageResult call() throws Exception {
+                        Context pageContext;
+                        synchronized ( context ) {
+                            pageContext = context.clone( true );
+                        }
+                        return generatePage( pageContext, page );
+                    }
+                } ) );
+            }
+
+            List<PageResult> results = new ArrayList<PageResult>( futures.size() );
+            Iterator<Future<PageResult>> futureIt = futures.iterator();
+            while ( futureIt.hasNext() ) {
+                try {
+                    results.add( futureIt.next().get() );
+                } catch ( ExecutionException ee ) {
+                    Throwable t = ee.getCause();
+                    if ( t instanceof Exception ) {
+                        throw (Exception) t;
+                    } else if ( t instanceof Error ) {
+                        throw (Error) t;
+                    }
+                    throw ee;
+                }
+            }
+            return results;
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * warmGlobals
+     * 
+     * Computes the globals each site lists by name in its
+     * <code>precompute_globals</code> array, so that pages generated in
+     * parallel find them in the shared global keep instead of each worker
+     * computing them.  Only listed globals are computed, since computing a
+     * global the pages never use may do work, or have side effects, the
+     * build would not otherwise have.  Names that are not parameterless
+     * globals are reported and skipped.  Any other global is computed on
+     * first use, and may be computed by more than one worker if the first
+     * page did not already compute it.
+     * 
+     * @return the number of globals computed.
+     */
+    protected int warmGlobals( Context context, Core core ) {
+        int count = 0;
+        Iterator<Site> sites = core.getSites();
+        while ( sites.hasNext() ) {
+            Site site = sites.next();
+            List<String> names = getPrecomputedNames( context, site );
+            Iterator<String> it = names.iterator();
+            while ( it.hasNext() ) {
+                String name = it.next();
+                try {
+                    Instantiation instance = new Instantiation( new NameNode( name ), site );
+                    Definition def = instance.getDefinition( context );
+                    if ( def == null ) {
+                        log( "Global " + name + " listed in precompute_globals is not defined in site " + site.getName() );
+                        continue;
+                    }
+                    List<ParameterList> paramLists = def.getParamLists();
+                    if ( !def.isGlobal() || ( paramLists != null && paramLists.size() > 0 ) ) {
+                        log( def.getFullName() + " listed in precompute_globals is not a parameterless global; skipping" );
+                        continue;
+                    }
+                    if ( !instance.isAbstract( context ) ) {
+                        instance.getData( context );
+                        count++;
+                    }
+                } catch ( Redirection r ) {
+                    log( "Redirection computing global " + name + ": " + r );
+                } catch ( Exception e ) {
+                    log( "Exception computing global " + name + ": " + e );
+                }
+            }
+        }
+        log( count + " global" + ( count == 1 ? "" : "s" ) + " computed before parallel generation" );
+        return count;
+    }
+
+    /** Returns the names in the site's precompute_globals array, or an empty
+     *  list if the site doesn't define one. */
+    private List<String> getPrecomputedNames( Context context, Site site ) {
+        List<String> names = new ArrayList<String>();
+        try {
+            Instantiation instance = new Instantiation( new NameNode( "precompute_globals" ), site );
+            if ( !instance.isDefined( context ) ) {
+                return names;
+            }
+            Object data = instance.getData( context );
+            if ( data instanceof Value ) {
+                data = ( (Value)data ).getValue();
+            }
+            if ( data instanceof CantoArray ) {
+                data = ( (CantoArray)data ).instantiateArray( context );
+            }
+            if ( data instanceof Object[] ) {
+                data = Arrays.asList( (Object[])data );
+            }
+            if ( data instanceof List<?> ) {
+                Iterator<?> it = ( (List<?>)data ).iterator();
+                while ( it.hasNext() ) {
+                    Object element = it.next();
+                    if ( element instanceof Value ) {
+                        element = ( (Value)element ).getString();
+                    }
+                    if ( element != null ) {
+                        names.add( element.toString() );
+                    }
+                }
+            }
+        } catch ( Redirection r ) {
+            log( "Redirection reading precompute_globals in site " + site.getName() + ": " + r );
+        }
+        return names;
+    }
+
+    private void logSummary( List<PageResult> results, long totalTime, long parseTime ) {
+        int count = 0;
+        int upToDate = 0;
+        long pageTime = 0L;
+        List<PageResult> written = new ArrayList<PageResult>( results.size() );
+        Iterator<PageResult> it = results.iterator();
+        while ( it.hasNext() ) {
+            PageResult result = it.next();
+            if ( result.isWritten() ) {
+                count++;
+                pageTime += result.time;
+                written.add( result );
+            } else if ( result.upToDate ) {
+                upToDate++;
+            }
+        }
+
+        long perPageTime = ( count > 0 ? ( totalTime / count ) : 0L );
+        log( count + " page" + ( count == 1 ? "" : "s" ) + " generated in " + durString( totalTime ) + " ("
+                + durString( perPageTime ) + " per page)" );
+        log( "(parse time " + durString( parseTime ) + ")" );
+        if ( incremental ) {
+            log( upToDate + " page" + ( upToDate == 1 ? " was" : "s were" ) + " up to date" );
+        }
+        if ( count == 0 ) {
+            return;
+        }
+
+        log( "(generation time " + durString( pageTime / 1000000L ) + " on " + numThreads + " thread"
+                + ( numThreads == 1 ? "" : "s" ) + ", average " + durString( pageTime / count / 1000000L ) + " per page)" );
+        Collections.sort( written, new Comparator<PageResult>() {
+            public int compare( PageResult r1, PageResult r2 ) {
+                return Long.compare( r2.time, r1.time );
+            }
+        } );
+        int n = Math.min( NUM_SLOWEST_PAGES, written.size() );
+        log( "Slowest page" + ( n == 1 ? ":" : "s:" ) );
+        for ( int i = 0; i < n; i++ ) {
+            PageResult result = written.get( i );
+            log( "    " + result.page.getFullName() + "  " + durString( result.time / 1000000L ) );
+        }
+    }
+
     void compile( String args[] ) {
 
         long startTime = System.currentTimeMillis();
@@ -205,6 +573,9 @@ public class CantoCompiler {
                         inFilter = args[ i ];
                     }
                     break;
+                case 'i':
+                    incremental = true;
+                    break;
                 case 'l':
                     if ( i < args.length - 1 ) {
                         i++;
@@ -220,6 +591,17 @@ public class CantoCompiler {
                         DEFAULT_OUTPUT_DIRECTORY = args[ i ];
                     }
                     break;
+                case 'p':
+                    numThreads = Runtime.getRuntime().availableProcessors();
+                    if ( i < args.length - 1 && args[ i + 1 ].length() > 0 && Character.isDigit( args[ i + 1 ].charAt( 0 ) ) ) {
+                        i++;
+                        try {
+                            numThreads = Math.max( 1, Integer.parseInt( args[ i ] ) );
+                        } catch ( NumberFormatException nfe ) {
+                            System.out.println( "Invalid thread count " + args[ i ] + "; using " + numThreads );
+                        }
+                    }
+                    break;
                 case 'r':
                     recursive = true;
                     break;
@@ -263,6 +645,10 @@ public class CantoCompiler {
         options.autoLoadCore = autoLoadCore;
         options.configurable = false;
         options.allowUnresolvedInstances = false;
+        if ( incremental ) {
+            // definitions are hashed by their source text
+            options.keepSource = true;
+        }
 
         SiteLoader loader = new SiteLoader(core, "", cantoPath, inFilter, recursive, options);
         loader.load();
@@ -285,76 +671,40 @@ public class CantoCompiler {
 
         }
 
+        if ( incremental ) {
+            sourceIndex = new DependencyManifest.SourceIndex( sources, loader.getParseResults() );
+            DependencyTracker.setEnabled( true );
+        }
+
         Definition[] pages = core.getDefinitions( "page" );
+        List<Definition> pageList = new ArrayList<Definition>( pages.length );
+        for ( int i = 0; i < pages.length; i++ ) {
+            if ( pageName == null || pageName.equals( pages[ i ].getName() ) ) {
+                pageList.add( pages[ i ] );
+            }
+        }
 
-        int numPages = pages.length;
+        int numPages = pageList.size();
         if ( numPages > 0 ) {
             // now spit out pages
-            int count = 0; // count of pages successfully written
             try {
-
                 Context context = new Context( core );
-                for ( int i = 0; i < numPages; i++ ) {
-
-                    if ( pageName != null && !pageName.equals( pages[ i ].getName() ) ) {
-                        continue;
-                    }
-
-                    Definition page = pages[ i ];
-                    Instantiation instance = new Instantiation( page );
-                    if ( !isOutputAllowed( context, page, instance )) {
-                        log( page.getFullName() + " does not generate output; skipping" );
-                        continue;
-                    }
-                    String pageText = null;
-                    try {
-                        pageText = instance.getText( context );
-                    } catch ( Redirection r ) {
-                        log( "Page " + pageName + " redirects to " + r.getLocation() + "; skipping" );
-                        continue;
-                    }
-                    if ( pageText != null && pageText.length() > 0 ) {
-                        File outDir = createOutputDirectory( page, instance );
-                        if ( outDir != null ) {
-                            String fileName = createFileName( page, instance );
-                            if ( fileName != null ) {
-                                log( "Page " + count + " is " + fileName );
-                                File pageFile = new File( outDir, fileName );
-                                if ( !pageFile.exists() ) {
-                                    File parent = pageFile.getParentFile();
-                                    if ( !parent.exists() ) {
-                                        if ( !parent.mkdirs() ) {
-                                            log( "Unable to create parent directory " + parent.getAbsolutePath() );
-                                            continue;
-                                        }
-                                    }
-                                    pageFile.createNewFile();
-                                }
-
-                                if ( !pageFile.canWrite() ) {
-                                    log( "Unable to write to file " + pageFile.getAbsolutePath() );
-                                    continue;
-                                }
-
-                                log( "Writing " + pageFile.getAbsolutePath() + "..." );
-                                FileWriter writer = new FileWriter( pageFile );
-                                writer.write( pageText );
-                                writer.close();
-                                count++;
-                            }
-                        }
-
-                    } else {
-                        log( "Page " + page.getFullName() + " has no content, skipping." );
+                List<PageResult> results = new ArrayList<PageResult>( numPages );
+
+                // the first page is always generated on this thread
+                results.add( generatePage( context, pageList.get( 0 ) ) );
+                if ( numThreads > 1 && numPages > 2 ) {
+                    warmGlobals( context, core );
+                    results.addAll( generatePages( context, pageList.subList( 1, numPages ) ) );
+                } else {
+                    for ( int i = 1; i < numPages; i++ ) {
+                        results.add( generatePage( context, pageList.get( i ) ) );
                     }
                 }
                 log( "Done." );
 
                 long totalTime = System.currentTimeMillis() - startTime;
-                long perPageTime = ( count > 0 ? ( totalTime / count ) : 0L );
-                log( count + " page" + ( count == 1 ? "" : "s" ) + " generated in " + durString( totalTime ) + " ("
-                        + durString( perPageTime ) + " per page)" );
-                log( "(parse time " + durString( parseTime ) + ")" );
+                logSummary( results, totalTime, parseTime );
 
             } catch ( Exception e ) {
                 log( "Exception generating pages: " + e );
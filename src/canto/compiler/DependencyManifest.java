@@ -0,0 +1,280 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * DependencyManifest.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.compiler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+
+import canto.compiler.visitor.CantoCompilerVisitor;
+import canto.lang.AbstractNode;
+import canto.lang.NamedDefinition;
+import canto.lang.Site;
+import canto.parser.Node;
+import canto.parser.Token;
+import canto.runtime.DependencyTracker;
+
+/**
+ * The inputs a generated page depends on, with a hash of each.  The manifest
+ * is written next to the page's output file, with the extension ".deps", and
+ * lists
+ *
+ *   - the structure of the loaded source, i.e. the names of all the
+ *     definitions in it, so that adding or removing a definition anywhere
+ *     (which can change what a name refers to) causes a rebuild,
+ *   - each definition the page instantiated or took a kept value of, along
+ *     with every definition the kept value was computed from, with its
+ *     source file and a hash of its source tokens, and
+ *   - each file the page read via include_file or lines_from_file, with a
+ *     hash of its contents.
+ *
+ * A page is up to date if its output file exists and every input listed in
+ * its manifest has the same hash in the current source.
+ */
+public class DependencyManifest {
+
+    public static final String EXTENSION = ".deps";
+
+    private static final String HEADER = "# cantoc dependency manifest";
+    private static final String STRUCTURE = "structure";
+    private static final String DEF = "def";
+    private static final String FILE = "file";
+    private static final String MISSING = "-";
+
+    /**
+     * SourceIndex
+     *
+     * Hashes of the source tokens of every named definition in a set of
+     * parse trees, keyed by full name, along with the structure hash.  The
+     * index is built once per run and shared by all the pages.  The tokens
+     * are only available if the source was loaded with keepSource set.
+     */
+    public static class SourceIndex {
+        private Map<String, String> hashes = new HashMap<String, String>();
+        private Map<String, String> sources = new HashMap<String, String>();
+        private String structureHash;
+
+        public SourceIndex( Object[] sources, Node[] parseResults ) {
+            Map<String, StringBuffer> texts = new HashMap<String, StringBuffer>();
+            for ( int i = 0; i < parseResults.length; i++ ) {
+                if ( parseResults[ i ] instanceof AbstractNode ) {
+                    String sourceName = ( sources[ i ] == null ? "" : sources[ i ].toString() );
+                    DefinitionCollector collector = new DefinitionCollector( sourceName, texts );
+                    collector.visit( (AbstractNode)parseResults[ i ] );
+                    collector.traverse( (AbstractNode)parseResults[ i ] );
+                }
+            }
+
+            StringBuffer names = new StringBuffer();
+            Iterator<String> it = new TreeSet<String>( texts.keySet() ).iterator();
+            while ( it.hasNext() ) {
+                String name = it.next();
+                hashes.put( name, hash( texts.get( name ).toString() ) );
+                names.append( name );
+                names.append( '\n' );
+            }
+            structureHash = hash( names.toString() );
+        }
+
+        /** Returns the hash of the named definition, or null if there is no
+         *  definition by that name. */
+        public String getHash( String fullName ) {
+            return hashes.get( fullName );
+        }
+
+        public String getSource( String fullName ) {
+            return sources.get( fullName );
+        }
+
+        public String getStructureHash() {
+            return structureHash;
+        }
+
+        private class DefinitionCollector extends CantoCompilerVisitor {
+            private String sourceName;
+            private Map<String, StringBuffer> texts;
+
+            DefinitionCollector( String sourceName, Map<String, StringBuffer> texts ) {
+                this.sourceName = sourceName;
+                this.texts = texts;
+            }
+
+            public void visit( AbstractNode target ) {
+                if ( target instanceof NamedDefinition && !( target instanceof Site ) ) {
+                    String name = ( (NamedDefinition)target ).getFullName();
+                    if ( name != null ) {
+                        // definitions sharing a name (e.g. with different
+                        // parameters) are hashed together
+                        StringBuffer sb = texts.get( name );
+                        if ( sb == null ) {
+                            sb = new StringBuffer();
+                            texts.put( name, sb );
+                            sources.put( name, sourceName );
+                        }
+                        appendTokens( target, sb );
+                    }
+                }
+            }
+
+            /** Appends the kind and text of each source token of the node. */
+            private void appendTokens( AbstractNode node, StringBuffer sb ) {
+                Token last = node.getLastToken();
+                for ( Token t = node.getFirstToken(); t != null; t = t.next ) {
+                    sb.append( t.kind );
+                    sb.append( ' ' );
+                    sb.append( t.image );
+                    sb.append( '\n' );
+                    if ( t == last ) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the manifest file for the passed output file. */
+    public static File getManifestFile( File pageFile ) {
+        return new File( pageFile.getPath() + EXTENSION );
+    }
+
+    /**
+     * isUpToDate
+     *
+     * Returns true if the output file and its manifest both exist and none of
+     * the inputs listed in the manifest have changed.
+     */
+    public static boolean isUpToDate( File pageFile, SourceIndex index ) {
+        File manifestFile = getManifestFile( pageFile );
+        if ( !pageFile.exists() || !manifestFile.exists() ) {
+            return false;
+        }
+        try {
+            BufferedReader in = new BufferedReader( new FileReader( manifestFile ) );
+            try {
+                String line = in.readLine();
+                if ( line == null || !line.startsWith( HEADER ) ) {
+                    return false;
+                }
+                boolean hasStructure = false;
+                while ( ( line = in.readLine() ) != null ) {
+                    String[] fields = line.split( "\t" );
+                    if ( fields.length < 2 ) {
+                        continue;
+                    }
+                    if ( STRUCTURE.equals( fields[ 0 ] ) ) {
+                        if ( !fields[ 1 ].equals( index.getStructureHash() ) ) {
+                            return false;
+                        }
+                        hasStructure = true;
+                    } else if ( DEF.equals( fields[ 0 ] ) && fields.length > 2 ) {
+                        if ( !fields[ 1 ].equals( index.getHash( fields[ 2 ] ) ) ) {
+                            return false;
+                        }
+                    } else if ( FILE.equals( fields[ 0 ] ) && fields.length > 2 ) {
+                        if ( !fields[ 1 ].equals( hashFile( new File( fields[ 2 ] ) ) ) ) {
+                            return false;
+                        }
+                    } else {
+                        return false;
+                    }
+                }
+                return hasStructure;
+            } finally {
+                in.close();
+            }
+        } catch ( IOException ioe ) {
+            return false;
+        }
+    }
+
+    /**
+     * write
+     *
+     * Writes the manifest for a page, listing the inputs recorded by the
+     * passed tracker.  Definitions which are not in the index (such as
+     * definitions created at runtime) are left out.
+     */
+    public static void write( File pageFile, String pageName, DependencyTracker tracker, SourceIndex index ) throws IOException {
+        BufferedWriter out = new BufferedWriter( new FileWriter( getManifestFile( pageFile ) ) );
+        try {
+            out.write( HEADER + " for " + pageName );
+            out.newLine();
+            out.write( STRUCTURE + "\t" + index.getStructureHash() );
+            out.newLine();
+
+            SortedMap<String, NamedDefinition> defs = tracker.getDefinitions();
+            Iterator<String> it = defs.keySet().iterator();
+            while ( it.hasNext() ) {
+                String name = it.next();
+                String hash = index.getHash( name );
+                if ( hash != null ) {
+                    out.write( DEF + "\t" + hash + "\t" + name + "\t" + index.getSource( name ) );
+                    out.newLine();
+                }
+            }
+
+            Set<String> files = tracker.getFiles();
+            it = files.iterator();
+            while ( it.hasNext() ) {
+                String path = it.next();
+                out.write( FILE + "\t" + hashFile( new File( path ) ) + "\t" + path );
+                out.newLine();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String hashFile( File file ) {
+        if ( !file.exists() || file.isDirectory() ) {
+            return MISSING;
+        }
+        try {
+            return hash( Files.readAllBytes( file.toPath() ) );
+        } catch ( IOException ioe ) {
+            return MISSING;
+        }
+    }
+
+    private static String hash( String str ) {
+        return hash( str.getBytes( Charset.forName( "UTF-8" ) ) );
+    }
+
+    private static String hash( byte[] bytes ) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+            byte[] result = digest.digest( bytes );
+            StringBuffer sb = new StringBuffer( result.length * 2 );
+            for ( int i = 0; i < result.length; i++ ) {
+                int b = result[ i ] & 0xFF;
+                if ( b < 0x10 ) {
+                    sb.append( '0' );
+                }
+                sb.append( Integer.toHexString( b ) );
+            }
+            return sb.toString();
+        } catch ( NoSuchAlgorithmException nsae ) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException( nsae );
+        }
+    }
+}
@@ -14,6 +14,7 @@ import java.util.*;
 import canto.runtime.Context;
 import canto.runtime.CantoDebugger;
 import canto.runtime.CantoObjectWrapper;
+import canto.runtime.DependencyTracker;
 import canto.runtime.Holder;
 
 
@@ -446,6 +447,10 @@ abstract public class AbstractConstruction extends AbstractNode implements Const
                         if (data == null) {
                             data = holder.data;
                         }
+                        DependencyTracker.keptValueUsed(holder.def);
+                        if (holder.nominalDef != holder.def) {
+                            DependencyTracker.keptValueUsed(holder.nominalDef);
+                        }
                     }
                     
                     if (def != null && def.isIdentity() && defInKeep != null) {
@@ -466,8 +471,11 @@ abstract public class AbstractConstruction extends AbstractNode implements Const
                             data = context.getData(def, name, getArguments(), getIndexes());
                             if (data == null) {
                                 //cachevlog(" - - - no data in cache for " + name + "; must instantiate - - - ");
-                            } else if (debugger != null) {
-                                debugger.retrievedFromKeep(def.getFullName(), context, data);
+                            } else {
+                                DependencyTracker.keptValueUsed(def);
+                                if (debugger != null) {
+                                    debugger.retrievedFromKeep(def.getFullName(), context, data);
+                                }
                             }
                         }
                     }
@@ -492,7 +500,17 @@ abstract public class AbstractConstruction extends AbstractNode implements Const
                         }
                     }
                     
-                    data = generateData(context, def, debugger);
+                    // only values which may be kept need their inputs
+                    // recorded separately
+                    DependencyTracker computation = null;
+                    if ((cacheability & CACHE_STORABLE) == CACHE_STORABLE) {
+                        computation = DependencyTracker.beginComputation();
+                    }
+                    try {
+                        data = generateData(context, def, debugger);
+                    } finally {
+                        DependencyTracker.endComputation(computation);
+                    }
                     if ((cacheability & CACHE_STORABLE) == CACHE_STORABLE) {
                         if (data instanceof Definition) {
                             def = (Definition) data;
@@ -513,7 +531,7 @@ abstract public class AbstractConstruction extends AbstractNode implements Const
                         
                         // if an object wrapper is itself wrapped in a Value,
                         // unwrap it
-                        } else if (data instanceof Value) {
+                        } else if (data instanceof Value && !(data instanceof PendingValue)) {
                             Object val = ((Value) data).getValue();
                             if (val instanceof CantoObjectWrapper) {
                                 data = val;
@@ -554,6 +572,10 @@ abstract public class AbstractConstruction extends AbstractNode implements Const
                             }
                         }
                         //cachevlog(" - - - storing " + name + " in cache - - - ");
+                        DependencyTracker.recordKept(computation, nominalDef);
+                        if (def != nominalDef) {
+                            DependencyTracker.recordKept(computation, def);
+                        }
                         if (ri == null && this instanceof ResolvedInstance) {
                             ri = (ResolvedInstance) this;
                         }
@@ -575,7 +597,26 @@ abstract public class AbstractConstruction extends AbstractNode implements Const
     }
 
     public String getText(Context context) throws Redirection {
+        return getTextForData(context, getData(context));
+    }
+
+    /** Returns the text for this construction, as <code>getText</code> does,
+     *  unless its data is a PendingValue which is not done yet, in which case
+     *  the PendingValue is returned.  The text can be obtained later by
+     *  calling <code>getTextForData</code> with the joined value.
+     */
+    public Object getTextOrPending(Context context) throws Redirection {
         Object data = getData(context);
+        if (data instanceof PendingValue && !((PendingValue) data).isDone()) {
+            return data;
+        }
+        return getTextForData(context, data);
+    }
+
+    public String getTextForData(Context context, Object data) throws Redirection {
+        if (data instanceof PendingValue) {
+            data = ((PendingValue) data).join();
+        }
         if (data instanceof Construction) {
             return ((Construction) data).getText(context);
         } else if (data instanceof Map) {
@@ -619,6 +660,13 @@ abstract public class AbstractConstruction extends AbstractNode implements Const
         if (data instanceof ResolvedInstance) {
             data = ((ResolvedInstance) data).generateData();
         }
+        return valueOfData(data);
+    }
+
+    /** Returns the value of data generated by a construction, unwrapping
+     *  collections into the objects holding their elements.
+     */
+    static Value valueOfData(Object data) throws Redirection {
         if (data instanceof CollectionInstance) {
             data = ((CollectionInstance) data).getCollectionObject();
         }
@@ -177,6 +177,19 @@ abstract public class AbstractNode extends CantoCompilerVisitDestination impleme
         throw new UnsupportedOperationException("This node type does not support getContents()");
     }
 
+    /** Compacts this node once the tree containing it has been loaded and
+     *  linked.  Subclasses which hold state only needed while parsing or
+     *  linking override this to release or trim it.  If <code>keepSource</code>
+     *  is false, the tokens used to reconstruct the source text are released
+     *  as well.
+     */
+    void freeze(boolean keepSource) {
+        if (!keepSource) {
+            firstToken = null;
+            lastToken = null;
+        }
+    }
+
     protected void setChild(int n, AbstractNode child) {
         jjtAddChild(child, n);
     }
@@ -47,8 +47,36 @@ public class AddOperator extends ArithmeticOperator {
         return op1 + op2;
     }
 
+    /** String concatenation yields a ConcatValue once the result is long
+     *  enough to be worth it, so a string built up by repeated additions,
+     *  such as over the iterations of a for loop, is appended to rather than
+     *  copied at every step.
+     */
+    protected Value operateOnStrings(Value firstVal, Value secondVal) {
+        if (firstVal instanceof ConcatValue) {
+            return ((ConcatValue) firstVal).concat(String.valueOf(secondVal.getString()));
+        }
+        String str1 = firstVal.getString();
+        String str2 = secondVal.getString();
+        if (str1 == null || str2 == null || str1.length() + str2.length() < ConcatValue.MIN_LENGTH) {
+            return PrimitiveValue.valueOf(operate(str1, str2));
+        }
+        return new ConcatValue(str1, str2);
+    }
+
 
     public Object arrayOperate(Object op1, Object op2) {
+        // concatenate primitive arrays of the same type without boxing; if
+        // the types are mixed, box and fall through to the general case
+        if (PrimitiveArray.isPrimitiveData(op1) || PrimitiveArray.isPrimitiveData(op2)) {
+            Object resultArray = PrimitiveArray.concat(op1, op2);
+            if (resultArray != null) {
+                return resultArray;
+            }
+            op1 = PrimitiveArray.box(op1);
+            op2 = PrimitiveArray.box(op2);
+        }
+
         if (op1 instanceof List<?>) {
             List<?> list1 = (List<?>) op1;
             ArrayList<Object> resultList = null;
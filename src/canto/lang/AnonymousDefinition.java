@@ -459,6 +459,14 @@ public class AnonymousDefinition extends CantoStatement implements Definition {
         return fullName;
     }
 
+    /** Trims the list of parameter lists to its current size. */
+    void freeze(boolean keepSource) {
+        super.freeze(keepSource);
+        if (paramLists instanceof ArrayList<?>) {
+            ((ArrayList<ParameterList>) paramLists).trimToSize();
+        }
+    }
+
     public List<ParameterList> getParamLists() {
         return paramLists;
     }
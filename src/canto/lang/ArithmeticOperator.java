@@ -32,9 +32,32 @@ abstract public class ArithmeticOperator extends BinaryOperator {
     abstract public char operate(char op1, char op2);
     abstract public String operate(String op1, String op2);
 
-    /** Some arithmetic operators can operate on arrays */
+    /** Operates on the string values of the operands.  Subclasses may
+     *  override this to return a specialized value.
+     */
+    protected Value operateOnStrings(Value firstVal, Value secondVal) {
+        return PrimitiveValue.valueOf(operate(firstVal.getString(), secondVal.getString()));
+    }
+
+    /** Some arithmetic operators can operate on arrays.  The operands may be
+     *  Object arrays, Lists, or the Java primitive arrays (int[], long[],
+     *  double[] or boolean[]) backing primitive Canto arrays.  A primitive
+     *  array returned as the result is wrapped in a Canto array.
+     */
     abstract public Object arrayOperate(Object op1, Object op2);
 
+    /** Returns the data of an array operand.  For an array backed by a Java
+     *  primitive array this is a copy of the primitive array, so the elements
+     *  don't have to be boxed and instantiated.
+     */
+    private static Object getArrayOperand(CantoArray array) {
+        if (array instanceof PrimitiveArray) {
+            return ((PrimitiveArray) array).getPrimitiveArray();
+        } else {
+            return array.getArrayObject();
+        }
+    }
+
     public Value operate(ValueSource firstObj, ValueSource secondObj, Context context) throws Redirection {
         Type type1 = getValueSourceType(firstObj, context, true);
         Type type2 = getValueSourceType(secondObj, context, true);
@@ -45,12 +68,13 @@ abstract public class ArithmeticOperator extends BinaryOperator {
                 Value val = firstObj.getValue(context);
                 obj1 = val.getValue();
                 if (obj1 instanceof CantoArray) {
-                    obj1 = ((CantoArray) obj1).getArrayObject();
+                    obj1 = getArrayOperand((CantoArray) obj1);
                 }
                 if (obj1 == null) {
                     obj1 = new Object[0];
+                } else if (!PrimitiveArray.isPrimitiveData(obj1)) {
+                    obj1 = ArrayBuilder.instantiateElements(obj1, context);
                 }
-                obj1 = ArrayBuilder.instantiateElements(obj1, context);
 
             } else if (firstObj instanceof Value) {
                 obj1 = ((Value) firstObj).getValue();
@@ -67,12 +91,13 @@ abstract public class ArithmeticOperator extends BinaryOperator {
                 Value val = secondObj.getValue(context);
                 obj2 = val.getValue();
                 if (obj2 instanceof CantoArray) {
-                    obj2 = ((CantoArray) obj2).getArrayObject();
+                    obj2 = getArrayOperand((CantoArray) obj2);
                 }
                 if (obj2 == null) {
                     obj2 = new Object[0];
+                } else if (!PrimitiveArray.isPrimitiveData(obj2)) {
+                    obj2 = ArrayBuilder.instantiateElements(obj2, context);
                 }
-                obj2 = ArrayBuilder.instantiateElements(obj2, context);
 
             } else if (secondObj instanceof Value) {
                 obj2 = ((Value) secondObj).getValue();
@@ -85,7 +110,7 @@ abstract public class ArithmeticOperator extends BinaryOperator {
             }
             
             Object resultArray = arrayOperate(obj1, obj2);
-            return new PrimitiveValue(resultArray);
+            return new PrimitiveValue(PrimitiveArray.wrap(resultArray));
         } else {
             return operate(firstObj.getValue(context), new DeferredValue(secondObj, context));
         }
@@ -98,17 +123,18 @@ abstract public class ArithmeticOperator extends BinaryOperator {
 
         Object firstObj = firstVal.getValue();
         if (firstObj instanceof CantoArray) {
-            firstObj = ((CantoArray) firstObj).getArrayObject();
+            firstObj = getArrayOperand((CantoArray) firstObj);
         }
 
         Object secondObj = secondVal.getValue();
         if (secondObj instanceof CantoArray) {
-            secondObj = ((CantoArray) secondObj).getArrayObject();
+            secondObj = getArrayOperand((CantoArray) secondObj);
         }
 
-        if (firstObj instanceof List<?> || firstObj instanceof Object[] || secondObj instanceof List<?> || secondObj instanceof Object[]) {
+        if (firstObj instanceof List<?> || firstObj instanceof Object[] || secondObj instanceof List<?> || secondObj instanceof Object[]
+                || PrimitiveArray.isPrimitiveData(firstObj) || PrimitiveArray.isPrimitiveData(secondObj)) {
             Object resultArray = arrayOperate(firstObj, secondObj);
-            result = new PrimitiveValue(resultArray);
+            result = new PrimitiveValue(PrimitiveArray.wrap(resultArray));
 
         } else {
             Class<?> firstClass = firstVal.getValueClass();
@@ -117,31 +143,30 @@ abstract public class ArithmeticOperator extends BinaryOperator {
             switch (resultOrder) {
                 case Value.BOOLEAN:
                     boolean bool = operate(firstVal.getBoolean(), secondVal.getBoolean());
-                    result = new PrimitiveValue(bool);
+                    result = PrimitiveValue.valueOf(bool);
                     break;
                 case Value.BYTE:
                     byte b = operate(firstVal.getByte(), secondVal.getByte());
-                    result = new PrimitiveValue(b);
+                    result = PrimitiveValue.valueOf(b);
                     break;
                 case Value.CHAR:
                     char c = operate(firstVal.getChar(), secondVal.getChar());
-                    result = new PrimitiveValue(c);
+                    result = PrimitiveValue.valueOf(c);
                     break;
                 case Value.INT:
                     int n = operate(firstVal.getInt(), secondVal.getInt());
-                    result = new PrimitiveValue(n);
+                    result = PrimitiveValue.valueOf(n);
                     break;
                 case Value.LONG:
                     long ln = operate(firstVal.getLong(), secondVal.getLong());
-                    result = new PrimitiveValue(ln);
+                    result = PrimitiveValue.valueOf(ln);
                     break;
                 case Value.DOUBLE:
                     double d = operate(firstVal.getDouble(), secondVal.getDouble());
-                    result = new PrimitiveValue(d);
+                    result = PrimitiveValue.valueOf(d);
                     break;
                 default:
-                    String str = operate(firstVal.getString(), secondVal.getString());
-                    result = new PrimitiveValue(str, String.class);
+                    result = operateOnStrings(firstVal, secondVal);
                     break;
             }
         }
@@ -83,6 +83,34 @@ public class ArrayBuilder extends CollectionBuilder {
         return arrayInstance;
     }
 
+    /** Returns a primitive-backed copy of the passed array if the element type
+     *  is int, long, double or boolean and every element is a literal value;
+     *  otherwise returns the array itself.
+     */
+    static CantoArray selectImplementation(CantoArray array, Type elementType) {
+        int size = array.getSize();
+        if (size == 0 || array instanceof PrimitiveArray || elementType == null || !elementType.isPrimitive()) {
+            return array;
+        }
+        PrimitiveArray primitiveArray = PrimitiveArray.create(elementType.getTypeClass(null), size, array.isGrowable());
+        if (primitiveArray == null) {
+            return array;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!primitiveArray.isStorable(array.get(i))) {
+                return array;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (primitiveArray.isGrowable()) {
+                primitiveArray.add(array.get(i));
+            } else {
+                primitiveArray.set(i, array.get(i));
+            }
+        }
+        return primitiveArray;
+    }
+
     protected CollectionDefinition arrayDef = null;
 
     public ArrayBuilder(CollectionDefinition arrayDef) {
@@ -126,10 +154,14 @@ public class ArrayBuilder extends CollectionBuilder {
 }
 
 
-class FixedArray implements CantoArray {
+class FixedArray implements CantoArray, IndexedArray {
     private Object[] array = null;
 //    private Object[] arrayObj = null;
     private int size;
+    private ElementIndex index = null;
+
+    /** incremented whenever an element is set */
+    private int modCount = 0;
 
     public FixedArray(int size) {
         this.size = size;
@@ -190,18 +222,32 @@ class FixedArray implements CantoArray {
         }
         Object oldElement = array[n];
         array[n] = element;
+        modCount++;
         return oldElement;
     }
 
+    public boolean containsElementValue(Object member) {
+        if (array == null) {
+            return false;
+        }
+        index = ElementIndex.forArray(index, this, modCount);
+        return index.contains(this, member);
+    }
+
     public Iterator<Object> iterator() {
         return Arrays.asList(array).iterator();
     }
 }
 
-class GrowableArray implements CantoArray {
+class GrowableArray implements CantoArray, IndexedArray {
     private List<Object> array;
 //    private List<Object> arrayObj = null;
     private int initialSize;
+    private ElementIndex index = null;
+
+    /** incremented whenever an element is set or added */
+    private int modCount = 0;
+
     private final static Object[] EMPTY_ARRAY = new Object[0];
 
     public GrowableArray(int size) {
@@ -272,6 +318,7 @@ class GrowableArray implements CantoArray {
             init();
         }
         array.add(element);
+        modCount++;
         return true;
     }
 
@@ -280,6 +327,7 @@ class GrowableArray implements CantoArray {
             init();
         }
         array.addAll(list);
+        modCount++;
         return true;
     }
 
@@ -289,9 +337,18 @@ class GrowableArray implements CantoArray {
         }
         Object oldElement = array.get(n);
         array.set(n, element);
+        modCount++;
         return oldElement;
     }
 
+    public boolean containsElementValue(Object member) {
+        if (array == null) {
+            return false;
+        }
+        index = ElementIndex.forArray(index, this, modCount);
+        return index.contains(this, member);
+    }
+
     public Iterator<Object> iterator() {
     	if (array == null) {
     		init();
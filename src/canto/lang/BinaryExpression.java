@@ -9,6 +9,7 @@
 package canto.lang;
 
 import java.util.Iterator;
+import java.util.List;
 
 import canto.runtime.Context;
 
@@ -21,15 +22,116 @@ import canto.runtime.Context;
 
 public class BinaryExpression extends Expression {
 
+    /** The value type order (Value.INT, Value.LONG, Value.DOUBLE or
+     *  Value.BOOLEAN) of each operand, if the Resolver was able to prove
+     *  them; otherwise null, and the expression is evaluated generically.
+     */
+    private int[] operandOrders = null;
+
+    /** The type order of the result if operandOrders is not null */
+    private int resultOrder = Value.VOID;
+
     public BinaryExpression() {
         super();
     }
 
     private BinaryExpression(BinaryExpression expression) {
         super(expression);
+        operandOrders = expression.operandOrders;
+        resultOrder = expression.resultOrder;
+    }
+
+    /** Called by the Resolver once the operands have been resolved.  If every
+     *  operand is known to be an int, long or double, or every operand is
+     *  known to be a boolean, and the operators are arithmetic operators or a
+     *  single relational operator, this expression is evaluated directly on
+     *  primitives, skipping the generic type dispatch in the operators.
+     */
+    public void resolveOperandTypes() {
+        operandOrders = null;
+        resultOrder = Value.VOID;
+
+        int len = getNumChildren();
+        if (len < 3) {
+            return;
+        }
+        int numOperands = (len + 1) / 2;
+        int[] orders = new int[numOperands];
+        boolean relational = false;
+        for (int i = 0; i < len; i++) {
+            CantoNode child = getChild(i);
+            if (i % 2 == 1) {
+                if (child instanceof RelationalOperator && len == 3) {
+                    relational = true;
+                } else if (!(child instanceof ArithmeticOperator)) {
+                    return;
+                }
+            } else {
+                int order = getStaticOrder(child);
+                if (order == Value.VOID) {
+                    return;
+                }
+                orders[i / 2] = order;
+            }
+        }
+
+        int order = orders[0];
+        for (int i = 1; i < numOperands; i++) {
+            if ((order == Value.BOOLEAN) != (orders[i] == Value.BOOLEAN)) {
+                return;
+            }
+            order = Math.max(order, orders[i]);
+        }
+        operandOrders = orders;
+        resultOrder = (relational ? Value.BOOLEAN : order);
+    }
+
+    /** Returns the type order of a node if it is certain to produce an int,
+     *  long, double or boolean value, else VOID.
+     */
+    private static int getStaticOrder(CantoNode node) {
+        Class<?> c = null;
+        if (node instanceof PrimitiveValue) {
+            c = ((PrimitiveValue) node).getValueClass();
+
+        } else if (node instanceof BinaryExpression) {
+            return ((BinaryExpression) node).resultOrder;
+
+        } else if (node instanceof Instantiation) {
+            Instantiation instance = (Instantiation) node;
+            List<Index> indexes = instance.getIndexes();
+            if (indexes != null && indexes.size() > 0) {
+                return Value.VOID;
+            }
+            Definition def = instance.getResolvedDefinition();
+            if (def == null) {
+                return Value.VOID;
+            }
+            Type type = def.getType();
+            if (!(type instanceof PrimitiveType) || type.isArray() || type.isTable()) {
+                return Value.VOID;
+            }
+            c = type.getTypeClass(null);
+        }
+
+        if (c == Integer.TYPE || c == Integer.class) {
+            return Value.INT;
+        } else if (c == Long.TYPE || c == Long.class) {
+            return Value.LONG;
+        } else if (c == Double.TYPE || c == Double.class) {
+            return Value.DOUBLE;
+        } else if (c == Boolean.TYPE || c == Boolean.class) {
+            return Value.BOOLEAN;
+        } else {
+            return Value.VOID;
+        }
     }
 
     public Object generateData(Context context, Definition def) throws Redirection {
+        if (operandOrders != null) {
+            return generatePrimitive(context);
+        }
+
         // a binary expression can have multiple instances of a binary
         // operator, e.g. <code>a + b + c</code> is parsed into a single
         // BinaryExpression which owns three values and two instances of
@@ -60,6 +162,140 @@ public class BinaryExpression extends Expression {
 //        return val;
     }
 
+    /** Evaluates the expression on primitives, using the operand types proven
+     *  by resolveOperandTypes.  Each operand value is checked against its
+     *  expected type as it is obtained; on a mismatch, the rest of the
+     *  expression is evaluated generically, starting with the values already
+     *  obtained, so no operand is evaluated twice.
+     */
+    private Value generatePrimitive(Context context) throws Redirection {
+        int len = getNumChildren();
+        Value firstVal = getChildValue(context, 0);
+        int order = operandOrders[0];
+        if (firstVal == null || getTypeOrder(firstVal) != order) {
+            return continueGenerically(firstVal, null, 1, context);
+        }
+
+        int n = 0;
+        long ln = 0L;
+        double d = 0.0;
+        boolean bool = false;
+        switch (order) {
+            case Value.INT:
+                n = firstVal.getInt();
+                break;
+            case Value.LONG:
+                ln = firstVal.getLong();
+                break;
+            case Value.DOUBLE:
+                d = firstVal.getDouble();
+                break;
+            default:
+                bool = firstVal.getBoolean();
+                break;
+        }
+
+        for (int i = 1; i < len - 1; i += 2) {
+            BinaryOperator op = (BinaryOperator) getChild(i);
+            Value nextVal = getChildValue(context, i + 1);
+            int nextOrder = operandOrders[(i + 1) / 2];
+            if (nextVal == null || getTypeOrder(nextVal) != nextOrder) {
+                return continueGenerically(primitiveValue(order, n, ln, d, bool), nextVal, i, context);
+            }
+
+            // promote the accumulated value if necessary
+            int opOrder = Math.max(order, nextOrder);
+            if (opOrder > order) {
+                if (opOrder == Value.DOUBLE) {
+                    d = (order == Value.INT ? (double) n : (double) ln);
+                } else {
+                    ln = n;
+                }
+                order = opOrder;
+            }
+
+            if (op instanceof RelationalOperator) {
+                RelationalOperator relOp = (RelationalOperator) op;
+                switch (order) {
+                    case Value.INT:
+                        return PrimitiveValue.valueOf(relOp.operate(n, nextVal.getInt()));
+                    case Value.LONG:
+                        return PrimitiveValue.valueOf(relOp.operate(ln, nextVal.getLong()));
+                    case Value.DOUBLE:
+                        return PrimitiveValue.valueOf(relOp.operate(d, nextVal.getDouble()));
+                    default:
+                        return PrimitiveValue.valueOf(relOp.operate(bool, nextVal.getBoolean()));
+                }
+            }
+
+            ArithmeticOperator arithOp = (ArithmeticOperator) op;
+            switch (order) {
+                case Value.INT:
+                    n = arithOp.operate(n, nextVal.getInt());
+                    break;
+                case Value.LONG:
+                    ln = arithOp.operate(ln, nextVal.getLong());
+                    break;
+                case Value.DOUBLE:
+                    d = arithOp.operate(d, nextVal.getDouble());
+                    break;
+                default:
+                    bool = arithOp.operate(bool, nextVal.getBoolean());
+                    break;
+            }
+        }
+        return primitiveValue(order, n, ln, d, bool);
+    }
+
+    private static Value primitiveValue(int order, int n, long ln, double d, boolean bool) {
+        switch (order) {
+            case Value.INT:
+                return PrimitiveValue.valueOf(n);
+            case Value.LONG:
+                return PrimitiveValue.valueOf(ln);
+            case Value.DOUBLE:
+                return PrimitiveValue.valueOf(d);
+            default:
+                return PrimitiveValue.valueOf(bool);
+        }
+    }
+
+    private static int getTypeOrder(Value value) {
+        Class<?> c = value.getValueClass();
+        if (c == Integer.TYPE || c == Integer.class) {
+            return Value.INT;
+        } else if (c == Long.TYPE || c == Long.class) {
+            return Value.LONG;
+        } else if (c == Double.TYPE || c == Double.class) {
+            return Value.DOUBLE;
+        } else if (c == Boolean.TYPE || c == Boolean.class) {
+            return Value.BOOLEAN;
+        } else {
+            return Value.VOID;
+        }
+    }
+
+    /** Evaluates the rest of the expression through the operators, starting
+     *  with the operator at position i.  val is the value accumulated so far;
+     *  if nextVal is not null, it is the already obtained value of the operand
+     *  following that operator.
+     */
+    private Value continueGenerically(Value val, Value nextVal, int i, Context context) throws Redirection {
+        int len = getNumChildren();
+        if (val == null) {
+            val = getChildValue(context, 0);
+        }
+        if (nextVal != null) {
+            val = ((BinaryOperator) getChild(i)).operate(val, nextVal);
+            i += 2;
+        }
+        for (; i < len - 1; i += 2) {
+            BinaryOperator op = (BinaryOperator) getChild(i);
+            val = op.operate(val, (ValueSource) getChild(i + 1), context);
+        }
+        return val;
+    }
+
     public Type getType(Context context, boolean generate) {
         int len = getNumChildren();
         Type type = getChildType(context, generate, 0);
@@ -51,21 +51,21 @@ public class BitflipOperator extends UnaryOperator {
             int order = getTypeOrder(val.getValueClass());
             switch (order) {
                 case Value.BOOLEAN:
-                    result = new PrimitiveValue(!val.getBoolean());
+                    result = PrimitiveValue.valueOf(!val.getBoolean());
                     break;
                 case Value.BYTE:
                     byte b = (byte) ~val.getByte();
-                    result = new PrimitiveValue(b);
+                    result = PrimitiveValue.valueOf(b);
                     break;
                 case Value.CHAR:
                     char c = (char) ~val.getChar();
-                    result = new PrimitiveValue(c);
+                    result = PrimitiveValue.valueOf(c);
                     break;
                 case Value.INT:
-                    result = new PrimitiveValue(~val.getInt());
+                    result = PrimitiveValue.valueOf(~val.getInt());
                     break;
                 case Value.LONG:
-                    result = new PrimitiveValue(~val.getLong());
+                    result = PrimitiveValue.valueOf(~val.getLong());
                     break;
                 default:
                     throw new UnsupportedOperationException("bitflip operator only works on booleans and integral values");
@@ -189,23 +189,23 @@ abstract public class BitwiseOperator extends BinaryOperator {
         switch (resultOrder) {
             case Value.BOOLEAN:
                 boolean bool = operate(firstVal.getBoolean(), secondVal.getBoolean());
-                result = new PrimitiveValue(bool);
+                result = PrimitiveValue.valueOf(bool);
                 break;
             case Value.BYTE:
                 byte b = operate(firstVal.getByte(), secondVal.getByte());
-                result = new PrimitiveValue(b);
+                result = PrimitiveValue.valueOf(b);
                 break;
             case Value.CHAR:
                 char c = operate(firstVal.getChar(), secondVal.getChar());
-                result = new PrimitiveValue(c);
+                result = PrimitiveValue.valueOf(c);
                 break;
             case Value.INT:
                 int n = operate(firstVal.getInt(), secondVal.getInt());
-                result = new PrimitiveValue(n);
+                result = PrimitiveValue.valueOf(n);
                 break;
             case Value.LONG:
                 long ln = operate(firstVal.getLong(), secondVal.getLong());
-                result = new PrimitiveValue(ln);
+                result = PrimitiveValue.valueOf(ln);
                 break;
             default:
                 String optype = getClass().getName();
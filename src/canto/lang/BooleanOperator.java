@@ -25,7 +25,7 @@ abstract public class BooleanOperator extends BinaryOperator {
 
     public Value operate(Value firstVal, Value secondVal) {
         boolean bool = operate(firstVal.getBoolean(), secondVal);
-        return new PrimitiveValue(bool);
+        return PrimitiveValue.valueOf(bool);
     }
 
     /** Always returns boolean type */
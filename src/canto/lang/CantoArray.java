@@ -56,5 +56,11 @@ public interface CantoArray {
 
     public Object set(int n, Object element);
 
+    /** Returns an iterator over the elements.  An array backed by an external
+     *  source, such as a database query, may produce the elements on demand
+     *  rather than reading them all first; if the iterator holds resources
+     *  it should implement AutoCloseable, and loops which stop early close
+     *  it.
+     */
     public Iterator<Object> iterator();
 }
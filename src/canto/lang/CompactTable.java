@@ -0,0 +1,329 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * CompactTable.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The default backing for Canto tables: an insertion-ordered map with String
+ * keys, stored in parallel arrays of keys, values and hash codes, plus an
+ * open-addressing index of entry numbers.  There is no per-entry object, so
+ * a table takes a few words per entry rather than a HashMap node each, and
+ * iteration follows the order in which the entries were defined.
+ *
+ * Tables are mostly built once and then only read; <code>trimToSize</code>
+ * releases the spare capacity left over from building.
+ */
+public class CompactTable extends AbstractMap<String, Object> {
+
+    private static final int MIN_CAPACITY = 4;
+
+    /** Marks an entry which has been removed */
+    private static final Object REMOVED = new Object();
+
+    /** Stands in for the null key */
+    private static final Object NULL_KEY = new Object();
+
+    /** Index slot values: 0 is empty, DELETED is a removed entry, and
+     *  anything else is one more than an entry number.
+     */
+    private static final int DELETED = -1;
+
+    private Object[] keys;
+    private Object[] values;
+    private int[] hashes;
+    private int[] index;
+
+    /** number of entries used, including removed ones */
+    private int count = 0;
+
+    /** number of live entries */
+    private int size = 0;
+
+    private int modCount = 0;
+
+    public CompactTable() {
+        this(MIN_CAPACITY);
+    }
+
+    public CompactTable(int capacity) {
+        allocate(Math.max(capacity, MIN_CAPACITY));
+    }
+
+    public CompactTable(Map<String, ?> map) {
+        this(map.size());
+        putAll(map);
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        index = new int[indexSizeFor(capacity)];
+    }
+
+    /** The index has at least twice as many slots as there are entries, so
+     *  probe sequences stay short.
+     */
+    private static int indexSizeFor(int capacity) {
+        int n = 8;
+        while (n < capacity * 2) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static Object maskNull(Object key) {
+        return (key == null ? NULL_KEY : key);
+    }
+
+    /** Returns the entry number for the key, or -1 if it isn't present. */
+    private int find(Object key) {
+        Object k = maskNull(key);
+        int h = hash(k);
+        int mask = index.length - 1;
+        int slot = h & mask;
+        while (true) {
+            int n = index[slot];
+            if (n == 0) {
+                return -1;
+            } else if (n != DELETED) {
+                int e = n - 1;
+                if (hashes[e] == h && (keys[e] == k || k.equals(keys[e]))) {
+                    return e;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** Returns the index slot holding the passed entry number. */
+    private int findSlot(int e) {
+        int mask = index.length - 1;
+        int slot = hashes[e] & mask;
+        while (index[slot] != e + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insertIntoIndex(int e) {
+        int mask = index.length - 1;
+        int slot = hashes[e] & mask;
+        while (index[slot] > 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = e + 1;
+    }
+
+    /** Rebuilds the arrays with the passed capacity, dropping removed
+     *  entries and index tombstones.
+     */
+    private void rebuild(int capacity) {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        int oldCount = count;
+        allocate(capacity);
+        count = 0;
+        for (int i = 0; i < oldCount; i++) {
+            if (oldKeys[i] != REMOVED) {
+                keys[count] = oldKeys[i];
+                values[count] = oldValues[i];
+                hashes[count] = oldHashes[i];
+                insertIntoIndex(count);
+                count++;
+            }
+        }
+    }
+
+    /** Releases spare capacity.  Call this when a table is done being
+     *  built.
+     */
+    public void trimToSize() {
+        if (count > size || keys.length > Math.max(size, MIN_CAPACITY)) {
+            rebuild(Math.max(size, MIN_CAPACITY));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    public Object get(Object key) {
+        int e = find(key);
+        return (e >= 0 ? values[e] : null);
+    }
+
+    public Object put(String key, Object value) {
+        int e = find(key);
+        if (e >= 0) {
+            Object oldValue = values[e];
+            values[e] = value;
+            return oldValue;
+        }
+        if (count == keys.length) {
+            // reclaim removed entries if there are enough of them, else grow
+            rebuild(size < count / 2 ? Math.max(count, MIN_CAPACITY) : count * 2);
+        }
+        Object k = maskNull(key);
+        keys[count] = k;
+        values[count] = value;
+        hashes[count] = hash(k);
+        insertIntoIndex(count);
+        count++;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    public Object remove(Object key) {
+        int e = find(key);
+        if (e < 0) {
+            return null;
+        }
+        Object oldValue = values[e];
+        removeEntry(e);
+        return oldValue;
+    }
+
+    private void removeEntry(int e) {
+        index[findSlot(e)] = DELETED;
+        keys[e] = REMOVED;
+        values[e] = null;
+        size--;
+        modCount++;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0, count, null);
+        Arrays.fill(values, 0, count, null);
+        Arrays.fill(index, 0);
+        count = 0;
+        size = 0;
+        modCount++;
+    }
+
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next = 0;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        EntryIterator() {
+            skipRemoved();
+        }
+
+        private void skipRemoved() {
+            while (next < count && keys[next] == REMOVED) {
+                next++;
+            }
+        }
+
+        public boolean hasNext() {
+            return next < count;
+        }
+
+        public Map.Entry<String, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= count) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            skipRemoved();
+            return new Entry(last);
+        }
+
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeEntry(last);
+            expectedModCount = modCount;
+            last = -1;
+        }
+    }
+
+    /** A view of one entry; setValue writes through to the table. */
+    private class Entry implements Map.Entry<String, Object> {
+        private int e;
+
+        Entry(int e) {
+            this.e = e;
+        }
+
+        public String getKey() {
+            Object key = keys[e];
+            return (key == NULL_KEY ? null : (String) key);
+        }
+
+        public Object getValue() {
+            return values[e];
+        }
+
+        public Object setValue(Object value) {
+            Object oldValue = values[e];
+            values[e] = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry<?,?>)) {
+                return false;
+            }
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) obj;
+            Object key = getKey();
+            Object value = getValue();
+            return (key == null ? entry.getKey() == null : key.equals(entry.getKey()))
+                    && (value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+        }
+
+        public int hashCode() {
+            Object key = getKey();
+            Object value = getValue();
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
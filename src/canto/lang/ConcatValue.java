@@ -0,0 +1,81 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ConcatValue.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+/**
+ * A string value produced by concatenation, which can be extended cheaply.
+ *
+ * The characters are kept in a buffer which may be shared by several values,
+ * each of which sees the first <code>length</code> characters of it.  Adding
+ * to a value whose length is the length of the buffer -- the usual case when
+ * a string is accumulated, since the previous intermediate value is no longer
+ * used -- appends to the buffer in place.  Adding to any other value copies
+ * its part of the buffer first, so values never see each other's additions.
+ *
+ * The String is only produced, and then cached, when something asks for the
+ * value, e.g. for output, a comparison or an external method.
+ */
+class ConcatValue extends PrimitiveValue {
+
+    /** Concatenations shorter than this are done directly */
+    static final int MIN_LENGTH = 64;
+
+    private final StringBuilder buffer;
+    private final int length;
+    private volatile String str = null;
+
+    ConcatValue(String first, String second) {
+        super(null, String.class);
+        buffer = new StringBuilder((first.length() + second.length()) * 2);
+        buffer.append(first);
+        buffer.append(second);
+        length = buffer.length();
+    }
+
+    private ConcatValue(StringBuilder buffer, int length) {
+        super(null, String.class);
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /** Returns a value consisting of this value followed by the passed
+     *  string.
+     */
+    ConcatValue concat(String next) {
+        synchronized (buffer) {
+            if (buffer.length() == length) {
+                buffer.append(next);
+                return new ConcatValue(buffer, buffer.length());
+            }
+        }
+
+        // the buffer has been extended past this value, so start a new one
+        StringBuilder sb = new StringBuilder((length + next.length()) * 2);
+        synchronized (buffer) {
+            sb.append(buffer, 0, length);
+        }
+        sb.append(next);
+        return new ConcatValue(sb, sb.length());
+    }
+
+    public Object getValue() {
+        return getString();
+    }
+
+    public String getString() {
+        String s = str;
+        if (s == null) {
+            synchronized (buffer) {
+                s = buffer.substring(0, length);
+            }
+            str = s;
+        }
+        return s;
+    }
+}
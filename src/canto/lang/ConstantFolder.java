@@ -0,0 +1,172 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ConstantFolder.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import canto.runtime.*;
+
+/**
+ * Folds constant expressions.  Run after the Resolver, this visitor replaces
+ * each expression whose operands are all literals with a single literal
+ * holding its value, so the expression is not evaluated every time it is
+ * instantiated.  This covers binary operator chains such as
+ * <code>2 * 60 * 1000</code> or a concatenation of string literals, the
+ * negate, bitflip and logical not operators applied to a literal, and choice
+ * expressions with a literal condition, which are replaced by the chosen
+ * branch.
+ *
+ * Values are computed by the expression's own operators, so the result is
+ * exactly what evaluating the expression would produce.  An expression is
+ * left alone if its value would not have the type the operator reports for
+ * it via getResultType, or if evaluating it throws an exception (for example,
+ * integer division by zero), which is left to happen at runtime.
+ *
+ * Only expressions that are the children of other expressions or the
+ * contents of a statement (such as the value of a definition) are replaced.
+ * Operands that are static constants rather than literals are not folded,
+ * since their values are only available once a context exists.
+ */
+public class ConstantFolder extends CantoVisitor {
+
+    public ConstantFolder() {}
+
+    public Object handleNode(CantoNode node, Object data) {
+        // fold the children first, so nested constant expressions collapse
+        // from the inside out
+        data = super.handleNode(node, data);
+
+        if (node instanceof Expression || node instanceof CantoStatement) {
+            AbstractNode parent = (AbstractNode) node;
+            int n = parent.getNumChildren();
+            for (int i = 0; i < n; i++) {
+                CantoNode child = parent.getChild(i);
+                if (node instanceof CantoStatement && child != ((CantoStatement) node).getContents()) {
+                    continue;
+                }
+                if (child instanceof Expression) {
+                    AbstractNode folded = fold((Expression) child);
+                    if (folded != null) {
+                        replaceChild(parent, i, (AbstractNode) child, folded);
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    private static void replaceChild(AbstractNode parent, int n, AbstractNode oldChild, AbstractNode newChild) {
+        newChild.jjtSetParent(parent);
+        if (newChild.getOwner() == null) {
+            newChild.setOwner(oldChild.getOwner());
+        }
+        parent.setChild(n, newChild);
+        if (parent instanceof CantoStatement) {
+            ((CantoStatement) parent).setContents(newChild);
+        }
+    }
+
+    /** Returns the node the passed expression folds to, or null if it can't
+     *  be folded.
+     */
+    static AbstractNode fold(Expression expression) {
+        try {
+            if (expression instanceof BinaryExpression) {
+                return foldBinary((BinaryExpression) expression);
+            } else if (expression instanceof UnaryExpression) {
+                return foldUnary((UnaryExpression) expression);
+            } else if (expression instanceof ChoiceExpression) {
+                return foldChoice((ChoiceExpression) expression);
+            }
+        } catch (RuntimeException e) {
+            CantoLogger.vlog("Not folding " + expression.toString("") + ": " + e);
+        }
+        return null;
+    }
+
+    private static PrimitiveValue foldBinary(BinaryExpression expression) {
+        int len = expression.getNumChildren();
+        if (len < 3 || !isLiteral(expression.getChild(0))) {
+            return null;
+        }
+        for (int i = 1; i < len - 1; i += 2) {
+            if (!(expression.getChild(i) instanceof BinaryOperator) || !isLiteral(expression.getChild(i + 1))) {
+                return null;
+            }
+        }
+
+        PrimitiveValue val = (PrimitiveValue) expression.getChild(0);
+        for (int i = 1; i < len - 1; i += 2) {
+            BinaryOperator op = (BinaryOperator) expression.getChild(i);
+            PrimitiveValue nextVal = (PrimitiveValue) expression.getChild(i + 1);
+            Value result = op.operate(val, nextVal);
+            Type resultType = op.getResultType(val.getType(), nextVal.getType(), null);
+            if (!isLiteral(result) || !hasType(result, resultType)) {
+                return null;
+            }
+            val = (PrimitiveValue) result;
+        }
+        return copyOf(val);
+    }
+
+    private static PrimitiveValue foldUnary(UnaryExpression expression) {
+        if (expression.getNumChildren() != 2) {
+            return null;
+        }
+        CantoNode op = expression.getChild(0);
+        CantoNode operand = expression.getChild(1);
+        if (!(op instanceof NegateOperator || op instanceof BitflipOperator || op instanceof LogicalNotOperator) || !isLiteral(operand)) {
+            return null;
+        }
+        PrimitiveValue val = (PrimitiveValue) operand;
+        Value result = ((UnaryOperator) op).operate(val);
+        if (!isLiteral(result) || !hasType(result, ((UnaryOperator) op).getResultType(val.getType()))) {
+            return null;
+        }
+        return copyOf((PrimitiveValue) result);
+    }
+
+    /** Returns a new literal with the same value.  The operators may return
+     *  shared canonical values, which can't be placed in the tree.
+     */
+    private static PrimitiveValue copyOf(PrimitiveValue val) {
+        return new PrimitiveValue(val.getValue(), val.getValueClass());
+    }
+
+    private static AbstractNode foldChoice(ChoiceExpression expression) {
+        if (expression.getNumChildren() != 3 || !isLiteral(expression.getChild(0))) {
+            return null;
+        }
+        boolean test = ((PrimitiveValue) expression.getChild(0)).getBoolean();
+        return (AbstractNode) expression.getChild(test ? 1 : 2);
+    }
+
+    /** Returns true if the node is a literal with a string, boolean, character
+     *  or numeric value.
+     */
+    private static boolean isLiteral(Object node) {
+        if (!(node instanceof PrimitiveValue)) {
+            return false;
+        }
+        Object obj = ((PrimitiveValue) node).getValue();
+        return (obj instanceof String || obj instanceof Boolean || obj instanceof Character || obj instanceof Number);
+    }
+
+    /** Returns true if the value is of the passed type, as far as operators
+     *  are concerned, or if the type is the default type, which makes no
+     *  promise about the value.
+     */
+    private static boolean hasType(Value value, Type type) {
+        if (type == null) {
+            return false;
+        } else if (type == DefaultType.TYPE) {
+            return true;
+        }
+        Class<?> typeClass = type.getTypeClass(null);
+        return (typeClass != null && AbstractOperator.getTypeOrder(typeClass) == AbstractOperator.getTypeOrder(value.getValueClass()));
+    }
+}
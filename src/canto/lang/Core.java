@@ -20,15 +20,49 @@ public class Core extends Site {
 
     private static Core originalCore = null;
     
+    /** The frozen core image shared by every overlay core in this JVM. */
+    private static Core sharedImage = null;
+
+    /** Returns the frozen core image shared by all overlay cores, or null if
+     *  no image has been established yet.
+     */
+    public static synchronized Core getSharedImage() {
+        return sharedImage;
+    }
+
+    /** Establishes the passed core as the image shared by all overlay cores
+     *  created from now on.  The core is frozen if it is not already.
+     */
+    public static synchronized void setSharedImage(Core image) {
+        if (image != null) {
+            image.freeze();
+        }
+        sharedImage = image;
+    }
+
+    /** Creates a new empty core suitable for loading a core image.  Unlike
+     *  <code>new Core(true)</code>, the new core does not become the original
+     *  core copied by later cores.
+     */
+    public static Core createImage() {
+        return new Core(true, false);
+    }
+
     private Map<String, Site> siteTable = null;
     private Map<String, DefinitionTable> defTableTable = null;
     private Map<String, Map<String, Object>> globalKeepTable = null;
+    private Core image = null;
+    private boolean frozen = false;
     
     public Core() {
         this(false);
     }
     
     public Core(boolean fromScratch) {
+        this(fromScratch, true);
+    }
+
+    private Core(boolean fromScratch, boolean canBeOriginal) {
         super("core");
         
         // unless fromScratch is true, only allow one Core to be constructed from
@@ -47,10 +81,51 @@ public class Core extends Site {
             siteTable.put("core", this);
             setGlobalKeep(new HashMap<String, Object>());
             globalKeepTable.put("core", getGlobalKeep());
-            originalCore = this;
+            if (canBeOriginal) {
+                originalCore = this;
+            }
         }
     }
 
+    /** Constructs a core which is an overlay on the passed frozen core image.
+     *  Core definitions are looked up in the image, which is shared and never
+     *  modified, while sites, site definition tables, global keeps and any
+     *  definitions added after loading live in tables belonging to this core
+     *  alone.
+     */
+    public Core(Core image) {
+        super("core");
+        if (!image.isFrozen()) {
+            throw new IllegalArgumentException("Core image must be frozen before it can be shared");
+        }
+        this.image = image;
+        siteTable = new HashMap<String, Site>();
+        defTableTable = new HashMap<String, DefinitionTable>();
+        globalKeepTable = new HashMap<String, Map<String, Object>>();
+        setOverlayDefinitionTable(image.getDefinitionTable());
+        siteTable.put("core", this);
+        setGlobalKeep(new HashMap<String, Object>());
+        globalKeepTable.put("core", getGlobalKeep());
+    }
+
+    /** Returns the frozen image this core overlays, or null if this core
+     *  holds its own core definitions.
+     */
+    public Core getImage() {
+        return image;
+    }
+
+    /** Marks this core as read-only.  Once frozen, definitions can no longer
+     *  be added to it.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
     /** Returns an empty string.  */
     public String getFullName() {
         return "";
@@ -0,0 +1,167 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ElementIndex.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A hash index of the values of the elements in an array, used by the
+ * <code>in</code> operator.
+ *
+ * Arrays implementing IndexedArray keep an index and build it the first time
+ * membership is tested.  An index records the array's modification count and
+ * size when it was built, and is rebuilt when either has changed.  Code that
+ * writes directly to the Java array or list backing a Canto array (such as
+ * the array utilities in canto.runtime.Array, or a keep into an array) calls
+ * noteDirectWrite, which makes every index built before the write be rebuilt
+ * before it is used again.  Arrays that are small, or that contain elements
+ * whose values depend on the context (instantiations, expressions and the
+ * like), are scanned instead.
+ */
+final class ElementIndex {
+
+    /** Arrays smaller than this are scanned rather than indexed */
+    static final int MIN_INDEXED_SIZE = 16;
+
+    /** Returned by staticValue for an element whose value is not fixed */
+    private static final Object DYNAMIC = new Object();
+
+    /** Incremented whenever an array's backing store is written to directly */
+    private static volatile int directWrites = 0;
+
+    /** Notes that an element of the Java array or list backing some Canto
+     *  array has been set, added or removed without going through the Canto
+     *  array, so indexes built before now can't be trusted.
+     */
+    static void noteDirectWrite() {
+        directWrites++;
+    }
+
+    /** Returns an index for the array, reusing the passed index if it is
+     *  still current.
+     */
+    static ElementIndex forArray(ElementIndex index, CantoArray array) {
+        return forArray(index, array, 0);
+    }
+
+    /** Returns an index for the array, reusing the passed index if it was
+     *  built at the passed modification count and no backing store has been
+     *  written to directly since.
+     */
+    static ElementIndex forArray(ElementIndex index, CantoArray array, int modCount) {
+        int size = array.getSize();
+        int writes = directWrites;
+        if (index != null && index.size == size && index.modCount == modCount && index.writes == writes) {
+            return index;
+        }
+        return new ElementIndex(array, size, modCount, writes);
+    }
+
+    /** Returns true if the passed object equals one of the elements or the
+     *  value of one of the elements, by scanning.
+     */
+    static boolean scan(Iterator<?> elements, Object member) {
+        if (member == null) {
+            return false;
+        }
+        while (elements.hasNext()) {
+            Object element = elements.next();
+            if (element == null) {
+                continue;
+            } else if (element.equals(member)) {
+                return true;
+            }
+            Object value = staticValue(element);
+            if (value == DYNAMIC) {
+                if (element instanceof Value && member.equals(((Value) element).getValue())) {
+                    return true;
+                }
+            } else if (member.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the value of an element if it does not depend on the context,
+     *  else DYNAMIC.
+     */
+    private static Object staticValue(Object element) {
+        if (element instanceof ElementDefinition) {
+            element = ((ElementDefinition) element).getContents();
+            if (!(element instanceof Value)) {
+                return DYNAMIC;
+            }
+        }
+        if (element instanceof ValueGenerator) {
+            return DYNAMIC;
+        } else if (element instanceof Value) {
+            return ((Value) element).getValue();
+        } else if (element instanceof CantoNode) {
+            return DYNAMIC;
+        } else {
+            return element;
+        }
+    }
+
+    private final int size;
+    private final int modCount;
+    private final int writes;
+
+    /** the element values, or null if the array is to be scanned */
+    private final Set<Object> values;
+
+    private ElementIndex(CantoArray array, int size, int modCount, int writes) {
+        this.size = size;
+        this.modCount = modCount;
+        this.writes = writes;
+        this.values = (size < MIN_INDEXED_SIZE ? null : buildIndex(array.iterator(), size));
+    }
+
+    private static Set<Object> buildIndex(Iterator<?> elements, int size) {
+        Set<Object> values = new HashSet<Object>(size * 4 / 3 + 1);
+        while (elements.hasNext()) {
+            Object element = elements.next();
+            if (element == null) {
+                continue;
+            }
+            Object value = staticValue(element);
+            if (value == DYNAMIC) {
+                return null;
+            } else if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /** Returns true if the passed object equals the value of one of the
+     *  elements of the array this index was built for.
+     */
+    boolean contains(CantoArray array, Object member) {
+        if (values == null) {
+            return scan(array.iterator(), member);
+        } else {
+            return member != null && values.contains(member);
+        }
+    }
+}
+
+/**
+ * An array which tests for membership using an ElementIndex.
+ */
+interface IndexedArray {
+
+    /** Returns true if the passed object equals one of the elements of the
+     *  array or the value of one of the elements.
+     */
+    boolean containsElementValue(Object member);
+}
@@ -31,7 +31,7 @@ public class EqualsOperator extends RelationalOperator {
             if (op2 instanceof List<?>) {
                 List<?> list2 = (List<?>) op2;
                 if (list2.size() != size) {
-                    return new PrimitiveValue(false);
+                    return PrimitiveValue.valueOf(false);
                 }
                 for (int i = 0; i < size; i++) {
                     Object obj1 = list1.get(i);
@@ -47,7 +47,7 @@ public class EqualsOperator extends RelationalOperator {
             } else if (op2 instanceof Object[]) {
                 Object[] array2 = (Object[]) op2;
                 if (array2.length != size) {
-                    return new PrimitiveValue(false);
+                    return PrimitiveValue.valueOf(false);
                 }
                 for (int i = 0; i < size; i++) {
                     Object obj1 = list1.get(i);
@@ -62,9 +62,9 @@ public class EqualsOperator extends RelationalOperator {
 
             } else {
                 // one is an array and one isn't
-                return new PrimitiveValue(false);
+                return PrimitiveValue.valueOf(false);
             }
-            return new PrimitiveValue(true);
+            return PrimitiveValue.valueOf(true);
 
         } else if (op1 instanceof Object[]) {
             Object[] array1 = (Object[]) op1;
@@ -72,7 +72,7 @@ public class EqualsOperator extends RelationalOperator {
             if (op2 instanceof List<?>) {
                 List<?> list2 = (List<?>) op2;
                 if (list2.size() != size) {
-                    return new PrimitiveValue(false);
+                    return PrimitiveValue.valueOf(false);
                 }
                 for (int i = 0; i < size; i++) {
                     Object obj1 = array1[i];
@@ -88,7 +88,7 @@ public class EqualsOperator extends RelationalOperator {
             } else if (op2 instanceof Object[]) {
                 Object[] array2 = (Object[]) op2;
                 if (array2.length != size) {
-                    return new PrimitiveValue(false);
+                    return PrimitiveValue.valueOf(false);
                 }
                 for (int i = 0; i < size; i++) {
                     Object obj1 = array1[i];
@@ -103,16 +103,16 @@ public class EqualsOperator extends RelationalOperator {
 
             } else {
                 // one is an array and one isn't
-                return new PrimitiveValue(false);
+                return PrimitiveValue.valueOf(false);
             }
-            return new PrimitiveValue(true);
+            return PrimitiveValue.valueOf(true);
 
         } else if (op1 instanceof Map && op2 instanceof Map) {
             Map<?,?> map1 = (Map<?,?>) op1;
             Map<?,?> map2 = (Map<?,?>) op2;
             size = map1.size();
             if (map2.size() != size) {
-                return new PrimitiveValue(false);
+                return PrimitiveValue.valueOf(false);
             }
 
             for (Object key: map1.keySet()) {
@@ -125,10 +125,10 @@ public class EqualsOperator extends RelationalOperator {
                     return result;
                 }
             }
-            return new PrimitiveValue(true);
+            return PrimitiveValue.valueOf(true);
 
         } else {
-            return new PrimitiveValue(false);
+            return PrimitiveValue.valueOf(false);
         }
     }
 
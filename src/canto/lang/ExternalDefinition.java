@@ -8,8 +8,15 @@
 
 package canto.lang;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
 import canto.runtime.*;
 
@@ -33,6 +40,67 @@ public class ExternalDefinition extends ComplexDefinition {
      */
     private static class Unusable {}
     private static class Bogus {}
+
+    /**
+     * Cache of method and constructor lookups, keyed by class, method name
+     * (null for constructors), argument classes and, for constructors, the
+     * types of the definitions passed as arguments.  Lookups that fail are
+     * cached too, as UNRESOLVED.  The cache is cleared when a site is
+     * reloaded.
+     */
+    private static Map<ResolutionKey, Object> resolutions = new ConcurrentHashMap<ResolutionKey, Object>();
+    private static final Object UNRESOLVED = new Object();
+
+    private static final class ResolutionKey {
+        private final Class<?> c;
+        private final String name;
+        private final Class<?>[] params;
+        private final String[] paramDefTypes;
+        private final int hash;
+
+        ResolutionKey(Class<?> c, String name, Class<?>[] params) {
+            this(c, name, params, null);
+        }
+
+        ResolutionKey(Class<?> c, String name, Class<?>[] params, Definition[] paramDefs) {
+            this.c = c;
+            this.name = name;
+            this.params = (params == null ? null : params.clone());
+            this.paramDefTypes = getTypeNames(paramDefs);
+            this.hash = ((c.hashCode() * 31 + (name == null ? 0 : name.hashCode())) * 31 + Arrays.hashCode(params)) * 31 + Arrays.hashCode(paramDefTypes);
+        }
+
+        private static String[] getTypeNames(Definition[] defs) {
+            if (defs == null) {
+                return null;
+            }
+            String[] names = new String[defs.length];
+            for (int i = 0; i < defs.length; i++) {
+                Type type = (defs[i] == null ? null : defs[i].getType());
+                names[i] = (type == null ? null : type.getName());
+            }
+            return names;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ResolutionKey)) {
+                return false;
+            }
+            ResolutionKey key = (ResolutionKey) obj;
+            return (c == key.c && (name == null ? key.name == null : name.equals(key.name)) && Arrays.equals(params, key.params)
+                    && Arrays.equals(paramDefTypes, key.paramDefTypes));
+        }
+    }
+
+    /** Clears the cached method and constructor lookups. */
+    public static void clearResolutionCache() {
+        resolutions.clear();
+        MethodInvoker.clearInvokers();
+    }
     
     
     /**
@@ -498,10 +566,7 @@ public class ExternalDefinition extends ComplexDefinition {
         }
         
         try {
-            method = clazz.getMethod(name, params);
-
-        } catch (NoSuchMethodException nsme) {
-            method = getClosestMethod(name, params, clazz);
+            method = findMethod(name, params, clazz);
             if (method != null) {
                 // unfortunate that this causes a clone of the paramTypes array
                 Class<?>[] mParams = method.getParameterTypes();
@@ -644,6 +709,48 @@ public class ExternalDefinition extends ComplexDefinition {
                  Map.class.isAssignableFrom(clazz));
     }
     
+    /** Returns the public method with the passed name and parameter classes,
+     *  or if there is none, the closest match as determined by
+     *  <code>getClosestMethod</code>, or null if nothing matches.  Results are
+     *  cached.
+     */
+    static Method findMethod(String name, Class<?>[] params, Class<?> c) {
+        ResolutionKey key = new ResolutionKey(c, name, params);
+        Object result = resolutions.get(key);
+        if (result == null) {
+            Method method;
+            try {
+                method = c.getMethod(name, params);
+            } catch (NoSuchMethodException nsme) {
+                method = getClosestMethod(name, params, c);
+            }
+            result = (method == null ? UNRESOLVED : method);
+            resolutions.put(key, result);
+        }
+        return (result == UNRESOLVED ? null : (Method) result);
+    }
+
+    /** Returns the public constructor with the passed parameter classes, or
+     *  if there is none, the closest match as determined by
+     *  <code>getClosestConstructor</code> for the passed classes and argument
+     *  definitions, or null if nothing matches.  Results are cached.
+     */
+    static Constructor<?> findConstructor(Class<?> c, Class<?>[] params, Definition[] paramDefs) {
+        ResolutionKey key = new ResolutionKey(c, null, params, paramDefs);
+        Object result = resolutions.get(key);
+        if (result == null) {
+            Constructor<?> constructor;
+            try {
+                constructor = c.getConstructor(params);
+            } catch (NoSuchMethodException nsme) {
+                constructor = getClosestConstructor(c, params, paramDefs);
+            }
+            result = (constructor == null ? UNRESOLVED : constructor);
+            resolutions.put(key, result);
+        }
+        return (result == UNRESOLVED ? null : (Constructor<?>) result);
+    }
+
     static Constructor<?> getClosestConstructor(Class<?> c, Class<?>[] params, Definition[] paramDefs) {
         Constructor<?>[] constructors = c.getConstructors();
         Constructor<?> closest = null;
@@ -1154,13 +1261,9 @@ class ExternalConstruction extends AbstractConstruction implements ValueGenerato
                 }
             }
             Class<?> instanceClass = def.getInstanceClass(context);
-            try {
-                constructor = instanceClass.getConstructor(params);
-            } catch (NoSuchMethodException nsme) {
-                constructor = ExternalDefinition.getClosestConstructor(instanceClass, params, paramDefs);
-                if (constructor == null) {
-                    vlog("No constructor found for class " + instanceClass.getName());
-                }
+            constructor = ExternalDefinition.findConstructor(instanceClass, params, paramDefs);
+            if (constructor == null) {
+                vlog("No constructor found for class " + instanceClass.getName());
             }
 
         } catch (Exception e) {
@@ -1398,6 +1501,211 @@ class MethodDefinition extends ExternalDefinition {
 }
 
 
+/**
+ * Invokes an external method through a MethodHandle rather than by
+ * reflection.  The handle is adapted once to the generic type
+ * <code>(Object, Object[])Object</code>, so every call is an
+ * <code>invokeExact</code> with no further adaptation.  Invokers are shared by
+ * all the call sites of a method.
+ *
+ * When a method is called on an object whose class does not derive from the
+ * method's declaring class, the method has to be looked up again in the
+ * object's class.  Each invoker caches these lookups by receiver class,
+ * including failed ones; the most recent receiver class is checked first.
+ */
+final class MethodInvoker {
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+    private static Map<Method, MethodInvoker> invokers = new ConcurrentHashMap<Method, MethodInvoker>();
+
+    static void clearInvokers() {
+        invokers.clear();
+    }
+
+    /** Returns the shared invoker for the passed method. */
+    static MethodInvoker getInvoker(Method method) {
+        MethodInvoker invoker = invokers.get(method);
+        if (invoker == null) {
+            invoker = new MethodInvoker(method);
+            MethodInvoker prev = invokers.putIfAbsent(method, invoker);
+            if (prev != null) {
+                invoker = prev;
+            }
+        }
+        return invoker;
+    }
+
+    /** A receiver class and the invoker for the method in that class, or null
+     *  if the class has no such method.
+     */
+    private static final class ReceiverEntry {
+        final Class<?> receiverClass;
+        final MethodInvoker invoker;
+
+        ReceiverEntry(Class<?> receiverClass, MethodInvoker invoker) {
+            this.receiverClass = receiverClass;
+            this.invoker = invoker;
+        }
+    }
+
+    private final Method method;
+    private final MethodHandle handle;
+    private volatile ReceiverEntry lastReceiver = null;
+    private Map<Class<?>, ReceiverEntry> receivers = null;
+
+    private MethodInvoker(Method method) {
+        this.method = method;
+        this.handle = createHandle(method);
+    }
+
+    /** Returns a handle for the method adapted to the generic type, or null if
+     *  the method is not accessible via a handle, in which case calls fall
+     *  back on reflection.
+     */
+    private static MethodHandle createHandle(Method method) {
+        try {
+            MethodHandle mh = lookup.unreflect(method).asFixedArity();
+            if (Modifier.isStatic(method.getModifiers())) {
+                mh = MethodHandles.dropArguments(mh, 0, Object.class);
+            }
+            mh = mh.asSpreader(Object[].class, method.getParameterTypes().length);
+            return mh.asType(GENERIC_TYPE);
+        } catch (Exception e) {
+            CantoLogger.vlog("Unable to create method handle for " + method + ": " + e);
+            return null;
+        }
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    /** Returns the invoker to use for a receiver of the passed class.  This is
+     *  this invoker if the class derives from the method's declaring class,
+     *  else the invoker for the method of the same name and closest matching
+     *  parameters in the receiver's class, or null if there is no such method.
+     */
+    MethodInvoker forReceiver(Class<?> receiverClass) {
+        if (receiverClass == null || method.getDeclaringClass().isAssignableFrom(receiverClass)) {
+            return this;
+        }
+        ReceiverEntry entry = lastReceiver;
+        if (entry != null && entry.receiverClass == receiverClass) {
+            return entry.invoker;
+        }
+
+        synchronized (this) {
+            if (receivers == null) {
+                receivers = new HashMap<Class<?>, ReceiverEntry>(4);
+            }
+            entry = receivers.get(receiverClass);
+            if (entry == null) {
+                Method runtimeMethod = ExternalDefinition.findMethod(method.getName(), method.getParameterTypes(), receiverClass);
+                entry = new ReceiverEntry(receiverClass, (runtimeMethod == null ? null : getInvoker(runtimeMethod)));
+                receivers.put(receiverClass, entry);
+            }
+        }
+        lastReceiver = entry;
+        return entry.invoker;
+    }
+
+    /** Calls the method.  As with <code>Method.invoke</code>, an exception
+     *  thrown by the method itself is wrapped in an InvocationTargetException,
+     *  while arguments or a receiver the method can't accept cause an
+     *  IllegalArgumentException.
+     */
+    Object invoke(Object instance, Object[] args) throws IllegalAccessException, InvocationTargetException {
+        if (handle == null) {
+            return method.invoke(instance, args);
+        }
+        try {
+            return (Object) handle.invokeExact(instance, (args == null ? NO_ARGS : args));
+        } catch (WrongMethodTypeException wmte) {
+            throw wrapOrReject(instance, args, wmte);
+        } catch (ClassCastException cce) {
+            throw wrapOrReject(instance, args, cce);
+        } catch (NullPointerException npe) {
+            throw wrapOrReject(instance, args, npe);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /** The handle reports a failure to adapt the receiver or arguments with
+     *  the same exceptions the method itself might throw.  They are told
+     *  apart by checking the arguments, which is only done once a call has
+     *  failed.  Throws an IllegalArgumentException if the arguments are at
+     *  fault, else returns the exception wrapped as thrown by the method.
+     */
+    private InvocationTargetException wrapOrReject(Object instance, Object[] args, RuntimeException e) {
+        String problem = checkArguments(instance, args);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem + " calling " + method, e);
+        }
+        return new InvocationTargetException(e);
+    }
+
+    /** Returns a description of what keeps the passed receiver and arguments
+     *  from being passed to the method, or null if they can be.
+     */
+    private String checkArguments(Object instance, Object[] args) {
+        if (!Modifier.isStatic(method.getModifiers())) {
+            if (instance == null) {
+                return "null receiver";
+            } else if (!method.getDeclaringClass().isInstance(instance)) {
+                return "receiver of wrong class " + instance.getClass().getName();
+            }
+        }
+        Class<?>[] paramTypes = method.getParameterTypes();
+        int numArgs = (args == null ? 0 : args.length);
+        if (numArgs != paramTypes.length) {
+            return "wrong number of arguments (" + numArgs + " for " + paramTypes.length + ")";
+        }
+        for (int i = 0; i < numArgs; i++) {
+            Class<?> type = paramTypes[i];
+            Object arg = args[i];
+            if (type.isPrimitive()) {
+                if (arg == null) {
+                    return "null argument " + i + " for " + type.getName() + " parameter";
+                } else if (!isUnboxable(arg.getClass(), type)) {
+                    return "argument " + i + " of class " + arg.getClass().getName() + " for " + type.getName() + " parameter";
+                }
+            } else if (arg != null && !type.isInstance(arg)) {
+                return "argument " + i + " of class " + arg.getClass().getName() + " for " + type.getName() + " parameter";
+            }
+        }
+        return null;
+    }
+
+    private static final Class<?>[] WIDENING_ORDER = { Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class };
+    private static final Class<?>[] PRIMITIVE_ORDER = { Byte.TYPE, Short.TYPE, Integer.TYPE, Long.TYPE, Float.TYPE, Double.TYPE };
+
+    /** Returns true if a value of the passed wrapper class can be unboxed and
+     *  widened to the passed primitive type, as a method handle does.
+     */
+    private static boolean isUnboxable(Class<?> wrapperClass, Class<?> type) {
+        if (type == Boolean.TYPE) {
+            return (wrapperClass == Boolean.class);
+        } else if (wrapperClass == Character.class) {
+            return (type == Character.TYPE || type == Integer.TYPE || type == Long.TYPE || type == Float.TYPE || type == Double.TYPE);
+        }
+        int from = -1;
+        int to = -1;
+        for (int i = 0; i < WIDENING_ORDER.length; i++) {
+            if (WIDENING_ORDER[i] == wrapperClass) {
+                from = i;
+            }
+            if (PRIMITIVE_ORDER[i] == type) {
+                to = i;
+            }
+        }
+        return (from >= 0 && to >= from);
+    }
+}
+
+
 class MethodConstruction extends ExternalConstruction {
 
     // context-specific fields
@@ -1630,34 +1938,25 @@ class MethodConstruction extends ExternalConstruction {
         // for a definition, but should be called on the object created by
         // by the definition.  See if that's the case here, and if so, 
         // dynamically discover the proper method and call it.
-        Method runtimeMethod = method;
-        Class<?> clazz = method.getDeclaringClass();
+        MethodInvoker invoker = MethodInvoker.getInvoker(method);
         Class<?>[] params = method.getParameterTypes();
         int numParams = params.length;
         int numArgs = argObjects == null ? 0 : argObjects.length;
         
         if (instance != null) {
-            Class<?> runtimeClazz = instance.getClass();
-            if (!clazz.isAssignableFrom(runtimeClazz)) {
-                String name = method.getName();
-
-                try {
-                    runtimeMethod = runtimeClazz.getMethod(name, params);
-    
-                } catch (NoSuchMethodException nsme) {
-                    runtimeMethod = ExternalDefinition.getClosestMethod(name, params, runtimeClazz);
-                    if (runtimeMethod == null) {
-                        String message = "Unable to find method " + name + " in class " + instance.getClass().getName();
-                        log(message);
-                        throw new Redirection(Redirection.STANDARD_ERROR, message);
-                    }
-    
-                } catch (Exception e) {
-                    String message = "Exception finding method " + name + " in class " + instance.getClass().getName() + ": " + e;
+            try {
+                invoker = invoker.forReceiver(instance.getClass());
+                if (invoker == null) {
+                    String message = "Unable to find method " + method.getName() + " in class " + instance.getClass().getName();
                     log(message);
-                    e.printStackTrace();
                     throw new Redirection(Redirection.STANDARD_ERROR, message);
                 }
+    
+            } catch (Exception e) {
+                String message = "Exception finding method " + method.getName() + " in class " + instance.getClass().getName() + ": " + e;
+                log(message);
+                e.printStackTrace();
+                throw new Redirection(Redirection.STANDARD_ERROR, message);
             }
         }
         
@@ -1710,7 +2009,14 @@ class MethodConstruction extends ExternalConstruction {
 //        }
 
         try {
-            return runtimeMethod.invoke(instance, args);
+            Object result = invoker.invoke(instance, args);
+
+            // an extern that returns a future has started some work in the
+            // background; don't wait for it until the value is used
+            if (result instanceof Future<?>) {
+                return new PendingValue((Future<?>) result, method.getName());
+            }
+            return result;
 
         } catch (InvocationTargetException ite) {
             Throwable t = ite.getTargetException();
@@ -1735,11 +2041,164 @@ class MethodConstruction extends ExternalConstruction {
 
 
 
+/**
+ * Reads an external field through a VarHandle rather than by reflection.
+ * The handle is resolved once per field and shared by all the definitions
+ * of that field.  Besides the generic getter, which returns the value as an
+ * object, there are getters that return primitive values without boxing
+ * them, for fields whose type can be widened to int, long, double or boolean.
+ */
+final class FieldAccessor {
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+    private static Map<Field, FieldAccessor> accessors = new ConcurrentHashMap<Field, FieldAccessor>();
+
+    /** Returns the shared accessor for the passed field. */
+    static FieldAccessor getAccessor(Field field) {
+        FieldAccessor accessor = accessors.get(field);
+        if (accessor == null) {
+            accessor = new FieldAccessor(field);
+            FieldAccessor prev = accessors.putIfAbsent(field, accessor);
+            if (prev != null) {
+                accessor = prev;
+            }
+        }
+        return accessor;
+    }
+
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle intGetter;
+    private final MethodHandle longGetter;
+    private final MethodHandle doubleGetter;
+    private final MethodHandle booleanGetter;
+
+    private FieldAccessor(Field field) {
+        this.field = field;
+
+        MethodHandle mh = null;
+        try {
+            VarHandle vh = lookup.unreflectVarHandle(field);
+            mh = vh.toMethodHandle(VarHandle.AccessMode.GET);
+            if (Modifier.isStatic(field.getModifiers())) {
+                mh = MethodHandles.dropArguments(mh, 0, Object.class);
+            } else {
+                mh = mh.asType(mh.type().changeParameterType(0, Object.class));
+            }
+        } catch (Exception e) {
+            CantoLogger.vlog("Unable to create var handle for " + field + ": " + e);
+            mh = null;
+        }
+
+        Class<?> type = field.getType();
+        if (mh != null) {
+            getter = mh.asType(GENERIC_TYPE);
+            // bytes are left to the generic path, which treats them as
+            // unsigned, and chars and floats are too, so that they keep
+            // their own value classes
+            intGetter = (type == Integer.TYPE || type == Short.TYPE) ? mh.asType(MethodType.methodType(Integer.TYPE, Object.class)) : null;
+            longGetter = (type == Long.TYPE) ? mh.asType(MethodType.methodType(Long.TYPE, Object.class)) : null;
+            doubleGetter = (type == Double.TYPE) ? mh.asType(MethodType.methodType(Double.TYPE, Object.class)) : null;
+            booleanGetter = (type == Boolean.TYPE) ? mh.asType(MethodType.methodType(Boolean.TYPE, Object.class)) : null;
+        } else {
+            getter = null;
+            intGetter = null;
+            longGetter = null;
+            doubleGetter = null;
+            booleanGetter = null;
+        }
+    }
+
+    Field getField() {
+        return field;
+    }
+
+    /** Returns the value of the field in the passed instance as data for a
+     *  construction.  An int, short, long, double or boolean field is read
+     *  without boxing and returned as a PrimitiveValue, which for common
+     *  ints and booleans is a shared instance; other fields are returned as
+     *  the object get returns.
+     */
+    Object getData(Object instance) throws Exception {
+        if (intGetter != null) {
+            return PrimitiveValue.valueOf(getInt(instance));
+        } else if (longGetter != null) {
+            return PrimitiveValue.valueOf(getLong(instance));
+        } else if (doubleGetter != null) {
+            return PrimitiveValue.valueOf(getDouble(instance));
+        } else if (booleanGetter != null) {
+            return PrimitiveValue.valueOf(getBoolean(instance));
+        } else {
+            return get(instance);
+        }
+    }
+
+    /** Returns the value of the field in the passed instance, which is ignored
+     *  for static fields.
+     */
+    Object get(Object instance) throws Exception {
+        if (getter == null) {
+            return field.get(instance);
+        }
+        try {
+            return (Object) getter.invokeExact(instance);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    int getInt(Object instance) throws Exception {
+        try {
+            return (int) intGetter.invokeExact(instance);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    long getLong(Object instance) throws Exception {
+        try {
+            return (long) longGetter.invokeExact(instance);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    double getDouble(Object instance) throws Exception {
+        try {
+            return (double) doubleGetter.invokeExact(instance);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    boolean getBoolean(Object instance) throws Exception {
+        try {
+            return (boolean) booleanGetter.invokeExact(instance);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+}
+
+
 class FieldDefinition extends ExternalDefinition {
     protected Field field;
+    protected FieldAccessor accessor;
  
     public FieldDefinition(ExternalDefinition owner, Field field) {
         this.field = field;
+        this.accessor = FieldAccessor.getAccessor(field);
         setOwner(owner);
         setObject(owner.getContents());
         setName(new NameNode(field.getName()));
@@ -1757,22 +2216,24 @@ class FieldDefinition extends ExternalDefinition {
     }
     
     public class FieldConstruction extends AbstractConstruction {
+        private Object getInstance(Context context) throws Redirection {
+            Object object = getObject();
+            if (object instanceof Value) {
+                object = ((Value) object).getValue();
+            } else if (object instanceof ValueGenerator) {
+                object = ((ValueGenerator) object).getData(context);
+            }
+
+            if (object instanceof Class<?>) {
+                return null;
+            } else {
+                return object;
+            }
+        }
+
         public Object generateData(Context context, Definition def) throws Redirection {
             try {
-                Object object = getObject();
-                if (object instanceof Value) {
-                    object = ((Value) object).getValue();
-                } else if (object instanceof ValueGenerator) {
-                    object = ((ValueGenerator) object).getData(context);
-                }
-
-                Object instance;
-                if (object instanceof Class<?>) {
-                    instance = null;
-                } else {
-                    instance = object;
-                }
-                return field.get(instance);
+                return accessor.getData(getInstance(context));
             } catch (Exception e) {
                 log("Exception generating data via external field: " + e);
                 throw new Redirection(Redirection.SERVER_ERROR_STATUS, Redirection.STANDARD_ERROR_PAGE, e.toString());
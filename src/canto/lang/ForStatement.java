@@ -10,8 +10,15 @@ package canto.lang;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.stream.BaseStream;
 
 import canto.runtime.Context;
+import canto.runtime.CantoLogger;
 import canto.runtime.CantoObjectWrapper;
 
 /**
@@ -22,6 +29,11 @@ import canto.runtime.CantoObjectWrapper;
 
 public class ForStatement extends AbstractConstruction implements ConstructionContainer, ConstructionGenerator {
 
+    /** The number of iterations evaluated together in a concurrent loop */
+    private static final int CHUNK_SIZE = 32;
+
+    private static ForkJoinPool loopPool = null;
+
     private IteratorValues vals;
     private Block body;
 
@@ -105,6 +117,79 @@ public class ForStatement extends AbstractConstruction implements ConstructionCo
             int loopIx = context.getLoopIndex();
             context.resetLoopIndex();
             if (it != null) {
+                try {
+                    while (it.hasNext()) {
+                        context.nextLoopIndex();
+                        int n = pushParams(context, it.next());
+                        if (until != null) {
+                            if (valueOf(until, context).getBoolean()) {
+                                popParams(context, n);
+                                break;
+                            }
+                        }
+                        if (where != null) {
+                            if (!valueOf(where, context).getBoolean()) {
+                                popParams(context, n);
+                                continue;
+                            }
+                        }
+                        if (body instanceof ConstructionGenerator) {
+                            List<Construction> bodyConstructions = ((ConstructionGenerator) body).generateConstructions(context.clone(false));
+                            constructions.addAll(bodyConstructions);
+
+                        } else {
+                            Object data = body.getData(context);
+                            //if (data instanceof Value && !(data instanceof ResolvedInstance)) {
+                            //    data = ((Value) data).getValue();
+                            //}
+                            if (data != null) {
+                                if (data instanceof Construction) {
+                                    constructions.add((Construction) data);
+                                } else {
+                                    constructions.add(getConstructionForElement(data, context));
+                                }
+                            }
+                        }
+                        popParams(context, n);
+                    }
+                } finally {
+                    closeIterator(it);
+                }
+                context.setLoopIndex(loopIx);
+            }
+        } catch (Redirection r) {
+            ;
+        }
+
+        ((ArrayList<Construction>) constructions).trimToSize();
+        return constructions;
+    }
+
+    public Object generateData(Context context, Definition def) throws Redirection {
+        StringBuffer sb = null;
+        Object data = null;
+
+        // get an iterator
+        Iterator<Construction> it = vals.iterator(context);
+        ValueSource until = vals.getUntil();
+        ValueSource where = vals.getWhere();
+        if (it != null && isParallel() && isParallelEnabled(context) && !reusesElements(it) && ForkJoinTask.getPool() != getLoopPool()) {
+            try {
+                data = generateDataConcurrently(context, it, until, where);
+            } finally {
+                closeIterator(it);
+            }
+            context.resetLoopIndex();
+            return data;
+
+        } else if (it != null) {
+            // iterations here are evaluated one at a time, so a range loop
+            // can update one counter in place instead of allocating a value
+            // per iteration
+            if (it instanceof RangeIterator) {
+                ((RangeIterator) it).reuseElements();
+            }
+            try {
                 while (it.hasNext()) {
                     context.nextLoopIndex();
                     int n = pushParams(context, it.next());
@@ -120,73 +205,186 @@ public class ForStatement extends AbstractConstruction implements ConstructionCo
                             continue;
                         }
                     }
-                    if (body instanceof ConstructionGenerator) {
-                        List<Construction> bodyConstructions = ((ConstructionGenerator) body).generateConstructions(context.clone(false));
-                        constructions.addAll(bodyConstructions);
-
-                    } else {
-                        Object data = body.getData(context);
-                        //if (data instanceof Value && !(data instanceof ResolvedInstance)) {
-                        //    data = ((Value) data).getValue();
-                        //}
-                        if (data != null) {
-                            if (data instanceof Construction) {
-                                constructions.add((Construction) data);
-                            } else {
-                                constructions.add(getConstructionForElement(data, context));
+                    Object nextData = body.getData(context);
+                    if (nextData != null) {
+                        if (data == null) {
+                            data = nextData;
+                        } else {
+                    	    if (sb == null) {
+                                sb = new StringBuffer(getTextForData(data));
                             }
+                            sb.append(getTextForData(nextData));
                         }
                     }
                     popParams(context, n);
                 }
-                context.setLoopIndex(loopIx);
+            } finally {
+                closeIterator(it);
             }
-        } catch (Redirection r) {
-            ;
+            context.resetLoopIndex();
         }
+        if (sb != null) {
+            return sb.toString();
+        } else {
+            return data;
+        }
+    }
+    
+    /** Returns true if the body of the loop is a concurrent block, i.e.
+     *  enclosed in <code>[++ ++]</code>, in which case the iterations are
+     *  independent of each other and may be evaluated in parallel.  They
+     *  are only evaluated in parallel if the site handling the request has
+     *  turned on parallel loops by defining <code>parallel_loops</code> as
+     *  true; otherwise the loop is evaluated sequentially, as before.
+     */
+    public boolean isParallel() {
+        return (body instanceof ConcurrentCantoBlock);
+    }
 
-        ((ArrayList<Construction>) constructions).trimToSize();
-        return constructions;
+    /** Returns true if the site at the root of the passed context allows
+     *  loops to be evaluated in parallel.
+     */
+    private static boolean isParallelEnabled(Context context) {
+        Context.Entry rootEntry = context.getRootEntry();
+        if (rootEntry == null || rootEntry.def == null) {
+            return false;
+        }
+        Site site = rootEntry.def.getSite();
+        return (site != null && site.isParallelLoops());
     }
 
-    public Object generateData(Context context, Definition def) throws Redirection {
-        StringBuffer sb = null;
-        Object data = null;
+    /** Returns the pool that evaluates the chunks of parallel loops, creating
+     *  it the first time it is needed.  Loops have a pool of their own so they
+     *  don't compete with, or get starved by, other users of the common pool.
+     */
+    private static synchronized ForkJoinPool getLoopPool() {
+        if (loopPool == null) {
+            loopPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return loopPool;
+    }
 
-        // get an iterator
-        Iterator<Construction> it = vals.iterator(context);
-        ValueSource until = vals.getUntil();
-        ValueSource where = vals.getWhere();
-        if (it != null) {
-            while (it.hasNext()) {
-                context.nextLoopIndex();
-                int n = pushParams(context, it.next());
-                if (until != null) {
-                    if (valueOf(until, context).getBoolean()) {
-                        popParams(context, n);
+    /** Evaluates the loop with the body of each iteration evaluated in
+     *  parallel.  The iterator and the where and until clauses are evaluated
+     *  on this thread, in order, so the loop stops where it would have stopped
+     *  sequentially.  The accepted elements are grouped into chunks of
+     *  CHUNK_SIZE, and each chunk is evaluated in its own copy of the context
+     *  on the loop pool.  If a chunk fails, the chunks still pending are
+     *  cancelled.  The copies share the keeps of the
+     *  original context, which are synchronized on write, so keeps written
+     *  by the body are seen as they would be by concurrent instantiations.
+     *  The results are concatenated in the original order.  This is not
+     *  used for iterators that reuse their elements, since the buffered
+     *  elements would all show the last one read.
+     */
+    private Object generateDataConcurrently(Context context, Iterator<Construction> it, ValueSource until, ValueSource where) throws Redirection {
+        List<Future<Object>> chunks = new ArrayList<Future<Object>>();
+        boolean completed = false;
+        try {
+            Object data = generateChunks(context, it, until, where, chunks);
+            completed = true;
+            return data;
+        } finally {
+            // if any chunk failed, or the iterator or a where or until clause
+            // did, the chunks still pending are abandoned
+            if (!completed) {
+                cancelChunks(chunks);
+            }
+        }
+    }
+
+    private Object generateChunks(Context context, Iterator<Construction> it, ValueSource until, ValueSource where, List<Future<Object>> chunks) throws Redirection {
+        List<Construction> elements = new ArrayList<Construction>(CHUNK_SIZE);
+        List<Integer> loopIndexes = new ArrayList<Integer>(CHUNK_SIZE);
+        while (it.hasNext()) {
+            int loopIx = context.nextLoopIndex();
+            Construction element = it.next();
+            if (until != null || where != null) {
+                int n = pushParams(context, element);
+                try {
+                    if (until != null && valueOf(until, context).getBoolean()) {
                         break;
                     }
-                }
-                if (where != null) {
-                    if (!valueOf(where, context).getBoolean()) {
-                        popParams(context, n);
+                    if (where != null && !valueOf(where, context).getBoolean()) {
                         continue;
                     }
+                } finally {
+                    popParams(context, n);
+                }
+            }
+            elements.add(element);
+            loopIndexes.add(loopIx);
+            if (elements.size() == CHUNK_SIZE) {
+                chunks.add(submitChunk(context, elements, loopIndexes));
+                elements = new ArrayList<Construction>(CHUNK_SIZE);
+                loopIndexes = new ArrayList<Integer>(CHUNK_SIZE);
+            }
+        }
+        if (elements.size() > 0) {
+            chunks.add(submitChunk(context, elements, loopIndexes));
+        }
+
+        StringBuffer sb = null;
+        Object data = null;
+        Iterator<Future<Object>> chunkIt = chunks.iterator();
+        while (chunkIt.hasNext()) {
+            Object nextData = joinChunk(chunkIt.next());
+            if (nextData != null) {
+                if (data == null) {
+                    data = nextData;
+                } else {
+                    if (sb == null) {
+                        sb = new StringBuffer(getTextForData(data));
+                    }
+                    sb.append(getTextForData(nextData));
                 }
-                Object nextData = body.getData(context);
+            }
+        }
+        if (sb != null) {
+            return sb.toString();
+        } else {
+            return data;
+        }
+    }
+
+    private Future<Object> submitChunk(Context context, final List<Construction> elements, final List<Integer> loopIndexes) {
+        final Context chunkContext;
+        synchronized (context) {
+            chunkContext = (Context) context.clone();
+        }
+        return getLoopPool().submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                try {
+                    return generateChunk(chunkContext, elements, loopIndexes);
+                } catch (Redirection r) {
+                    // Redirection isn't an Exception, so pass it through wrapped
+                    throw new ExecutionException(r);
+                }
+            }
+        });
+    }
+
+    private Object generateChunk(Context chunkContext, List<Construction> elements, List<Integer> loopIndexes) throws Redirection {
+        StringBuffer sb = null;
+        Object data = null;
+        for (int i = 0; i < elements.size(); i++) {
+            chunkContext.setLoopIndex(loopIndexes.get(i).intValue());
+            int n = pushParams(chunkContext, elements.get(i));
+            try {
+                Object nextData = body.getData(chunkContext);
                 if (nextData != null) {
                     if (data == null) {
                         data = nextData;
                     } else {
-                	    if (sb == null) {
+                        if (sb == null) {
                             sb = new StringBuffer(getTextForData(data));
                         }
                         sb.append(getTextForData(nextData));
                     }
                 }
-                popParams(context, n);
+            } finally {
+                popParams(chunkContext, n);
             }
-            context.resetLoopIndex();
         }
         if (sb != null) {
             return sb.toString();
@@ -194,7 +392,34 @@ public class ForStatement extends AbstractConstruction implements ConstructionCo
             return data;
         }
     }
-    
+
+    private static void cancelChunks(List<Future<Object>> chunks) {
+        Iterator<Future<Object>> it = chunks.iterator();
+        while (it.hasNext()) {
+            it.next().cancel(true);
+        }
+    }
+
+    private Object joinChunk(Future<Object> chunk) throws Redirection {
+        try {
+            return chunk.get();
+        } catch (ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof ExecutionException && t.getCause() != null) {
+                t = t.getCause();
+            }
+            if (t instanceof Redirection) {
+                throw (Redirection) t;
+            }
+            String message = "Exception in concurrent for statement: " + t;
+            log(message);
+            throw new Redirection(Redirection.SERVER_ERROR_STATUS, Redirection.STANDARD_ERROR, message);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new Redirection(Redirection.STANDARD_ERROR, "Interrupted waiting for concurrent for statement");
+        }
+    }
+
     private String getTextForData(Object data) throws Redirection {
         if (data instanceof CantoObjectWrapper) {
             data = ((CantoObjectWrapper) data).getData();
@@ -240,6 +465,28 @@ public class ForStatement extends AbstractConstruction implements ConstructionCo
         }
     }
 
+    /** Returns true if the passed iterator may return the same element
+     *  object each time, updated in place, so that its elements can't be
+     *  buffered, as the parallel evaluation of a loop does.
+     */
+    static boolean reusesElements(Iterator<?> it) {
+        return (it instanceof ReusingIterator && ((ReusingIterator) it).reusesElements());
+    }
+
+    /** Releases the source of the iterator, if it holds one.  This is called
+     *  whether the loop runs to the end or stops early, so that an iterator
+     *  producing elements on demand stops producing them.
+     */
+    static void closeIterator(Iterator<?> it) {
+        if (it instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) it).close();
+            } catch (Exception e) {
+                CantoLogger.log("Exception closing for statement iterator: " + e);
+            }
+        }
+    }
+
     public String toString(String prefix) {
         StringBuffer sb = new StringBuffer(prefix);
         sb.append("for ");
@@ -415,7 +662,11 @@ public class ForStatement extends AbstractConstruction implements ConstructionCo
                     if (data == null && def instanceof CollectionDefinition) {
 
                         // push the collection definition on the stack, because getting
-                        // the iterator may trigger the instantiation of the array
+                        // the iterator may trigger the instantiation of the array.
+                        // An array whose data is a CantoArray, such as a query
+                        // result, wraps it as is, so its elements are still read
+                        // on demand and the iterator is closed with the loop;
+                        // arrays defined by their elements are built in full.
 
                         ArgumentList args = instance.getArguments();
                         List<Index> indexes = instance.getIndexes();
@@ -440,6 +691,8 @@ public class ForStatement extends AbstractConstruction implements ConstructionCo
                         	it = new EmptyIterator<Construction>();
                         } else if (data instanceof Iterator<?>) {
                             it = new ConstructionObjectIterator((Iterator<?>) data);
+                        } else if (data instanceof BaseStream<?,?>) {
+                            it = new ConstructionObjectIterator((BaseStream<?,?>) data);
                         } else if (data instanceof Map<?,?>) {
                             @SuppressWarnings("unchecked")
                             Collection<Construction> values = ((Map<String, Construction>) data).values();
@@ -473,7 +726,11 @@ public class ForStatement extends AbstractConstruction implements ConstructionCo
                     Value toValue = (to != null ? valueOf(to, context) : null);
                     Value throughValue = (through != null ? valueOf(through, context) : null);
                     Value byValue = (by != null ? valueOf(by, context) : null);
-                    it = new FromIterator(fromValue, toValue, throughValue, byValue, context);
+                    if (RangeIterator.isIntegral(fromValue) && RangeIterator.isIntegral(toValue) && RangeIterator.isIntegral(throughValue) && RangeIterator.isIntegral(byValue)) {
+                        it = new RangeIterator(fromValue, toValue, throughValue, byValue);
+                    } else {
+                        it = new FromIterator(fromValue, toValue, throughValue, byValue, context);
+                    }
 
                 } else {
                     it = new InfiniteIterator();
@@ -534,11 +791,24 @@ public class ForStatement extends AbstractConstruction implements ConstructionCo
     }
 }
 
-class ConstructionObjectIterator implements Iterator<Construction> {
+/** Wraps an iterator over arbitrary objects, converting each object to a
+ *  construction as it is retrieved.  If the source is a stream or a closeable
+ *  iterator, closing this iterator closes the source.
+ */
+class ConstructionObjectIterator implements Iterator<Construction>, AutoCloseable, ReusingIterator {
     private Iterator<?> it;
+    private AutoCloseable source = null;
     
     public ConstructionObjectIterator(Iterator<?> it) {
         this.it = it;
+        if (it instanceof AutoCloseable) {
+            source = (AutoCloseable) it;
+        }
+    }
+
+    public ConstructionObjectIterator(BaseStream<?,?> stream) {
+        this.it = stream.iterator();
+        source = stream;
     }
 
     public boolean hasNext() {
@@ -553,6 +823,15 @@ class ConstructionObjectIterator implements Iterator<Construction> {
         throw new UnsupportedOperationException("ConstructionObjectIterator doesn't support remove");
     }
 
+    public boolean reusesElements() {
+        return ForStatement.reusesElements(it);
+    }
+
+    public void close() throws Exception {
+        if (source != null) {
+            source.close();
+        }
+    }
 }
 
 class ConstructionArrayIterator implements Iterator<Construction> {
@@ -587,9 +866,9 @@ class ConstructionArrayIterator implements Iterator<Construction> {
 
 class FromIterator implements Iterator<Construction> {
 
-    static final Value plusOne = new PrimitiveValue(1);
-    static final Value minusOne = new PrimitiveValue(-1);
-    static final Value zero = new PrimitiveValue(0);
+    static final Value plusOne = PrimitiveValue.valueOf(1);
+    static final Value minusOne = PrimitiveValue.valueOf(-1);
+    static final Value zero = PrimitiveValue.valueOf(0);
 
     private Construction value;
     private Value toValue;
@@ -695,6 +974,188 @@ class FromIterator implements Iterator<Construction> {
     }
 }
 
+/** Iterator for <code>from</code> loops whose bounds and step are all ints or
+ *  longs.  The counter is kept in a primitive field and compared and stepped
+ *  directly, rather than through operator objects and intermediate values.
+ *  The values are ints unless the starting value or the step is a long.
+ */
+class RangeIterator implements Iterator<Construction>, ReusingIterator {
+
+    /** Returns true if the value is null or an int or long. */
+    static boolean isIntegral(Value value) {
+        if (value == null) {
+            return true;
+        }
+        Class<?> c = value.getValueClass();
+        return (c == Integer.TYPE || c == Long.TYPE || c == Integer.class || c == Long.class);
+    }
+
+    private static boolean isLong(Value value) {
+        if (value == null) {
+            return false;
+        }
+        Class<?> c = value.getValueClass();
+        return (c == Long.TYPE || c == Long.class);
+    }
+
+    private long counter;
+    private long limit;
+    private long step;
+    private boolean bounded;
+    private boolean inclusive;
+    private boolean longValues;
+    private LoopCounter reusedCounter = null;
+
+    public RangeIterator(Value fromValue, Value toValue, Value throughValue, Value byValue) {
+        counter = fromValue.getLong();
+        longValues = isLong(fromValue) || isLong(byValue);
+        if (toValue != null) {
+            limit = toValue.getLong();
+            bounded = true;
+            inclusive = false;
+        } else if (throughValue != null) {
+            limit = throughValue.getLong();
+            bounded = true;
+            inclusive = true;
+        } else {
+            bounded = false;
+        }
+
+        if (byValue != null) {
+            step = byValue.getLong();
+        } else if (bounded) {
+            // from without by steps toward the limit
+            step = (counter < limit ? 1 : (counter > limit ? -1 : 0));
+        } else {
+            step = 1;
+        }
+    }
+
+    public boolean hasNext() {
+        if (!bounded) {
+            return true;
+        } else if (step > 0) {
+            return (inclusive ? counter <= limit : counter < limit);
+        } else {    // going down or not going anywhere
+            return (inclusive ? counter >= limit : counter > limit);
+        }
+    }
+
+    public Construction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        long n = counter;
+        counter += step;
+        if (reusedCounter != null) {
+            reusedCounter.set(n);
+            return reusedCounter;
+        } else if (longValues) {
+            return PrimitiveValue.valueOf(n);
+        } else {
+            return PrimitiveValue.valueOf((int) n);
+        }
+    }
+
+    /** Makes this iterator return one counter, updated in place, instead of
+     *  a new value for each element.  Only for loops which finish with each
+     *  element before reading the next.
+     */
+    void reuseElements() {
+        if (reusedCounter == null) {
+            reusedCounter = new LoopCounter(longValues);
+        }
+    }
+
+    public boolean reusesElements() {
+        return (reusedCounter != null);
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("RangeIterator doesn't support remove");
+    }
+}
+
+/** The value of a range loop's parameter, updated in place as the loop
+ *  advances, so that the loop doesn't allocate a value per iteration.  The
+ *  typed getters read the counter directly.  Anything that holds on to the
+ *  value past the current iteration gets it through <code>detach</code>,
+ *  which makes one unchanging copy per iteration, and only when asked.
+ */
+class LoopCounter extends PrimitiveValue {
+    private long counter = 0L;
+    private boolean longValue;
+    private PrimitiveValue detached = null;
+
+    LoopCounter(boolean longValue) {
+        this.longValue = longValue;
+    }
+
+    void set(long n) {
+        counter = n;
+        detached = null;
+    }
+
+    public PrimitiveValue detach() {
+        if (detached == null) {
+            detached = (longValue ? PrimitiveValue.valueOf(counter) : PrimitiveValue.valueOf((int) counter));
+        }
+        return detached;
+    }
+
+    public Object getValue() {
+        return detach().getValue();
+    }
+
+    public Class<?> getValueClass() {
+        return (longValue ? Long.TYPE : Integer.TYPE);
+    }
+
+    public String getString() {
+        return (longValue ? Long.toString(counter) : Integer.toString((int) counter));
+    }
+
+    public boolean getBoolean() {
+        return ((int) counter != 0);
+    }
+
+    public int getInt() {
+        return (int) counter;
+    }
+
+    public long getLong() {
+        return (longValue ? counter : (long) (int) counter);
+    }
+
+    public double getDouble() {
+        return (double) getLong();
+    }
+
+    public String getString(Context context) throws Redirection {
+        return getString();
+    }
+
+    public int getInt(Context context) throws Redirection {
+        return getInt();
+    }
+
+    public long getLong(Context context) throws Redirection {
+        return getLong();
+    }
+
+    public double getDouble(Context context) throws Redirection {
+        return getDouble();
+    }
+
+    protected void setValueAndClass(Object value, Class<?> valueClass) {
+        throw new UnsupportedOperationException("Loop counters cannot be modified");
+    }
+
+    public void setOwner(Definition owner) {}
+
+    public void jjtSetParent(canto.parser.Node n) {}
+}
+
 class InfiniteIterator implements Iterator<Construction> {
     public boolean hasNext() {
         return true;
@@ -723,7 +1184,7 @@ class EmptyIterator<E> implements Iterator<E> {
     }
 }
 
-class CombinedIterator implements Iterator<Construction> {
+class CombinedIterator implements Iterator<Construction>, AutoCloseable, ReusingIterator {
 
     private Iterator<Construction> it1;
     private Iterator<Construction> it2;
@@ -745,6 +1206,15 @@ class CombinedIterator implements Iterator<Construction> {
         it1.remove();
         it2.remove();
     }
+
+    public boolean reusesElements() {
+        return ForStatement.reusesElements(it1) || ForStatement.reusesElements(it2);
+    }
+
+    public void close() {
+        ForStatement.closeIterator(it1);
+        ForStatement.closeIterator(it2);
+    }
 }
 
 class Combo extends ArgumentList implements Construction {
@@ -8,7 +8,6 @@
 
 package canto.lang;
 
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -19,14 +18,34 @@ import java.util.Arrays;
 /**
  * In operator.  Returns true if the first operand is a member of the
  * second operand.  If the second operand is not a collection, returns
- * false.
+ * false.  Canto arrays are tested against a hash index of their element
+ * values, built on first use and kept with the array (see ElementIndex).
  *
  * @author Michael St. Hippolyte
  * @version $Revision: 1.1 $
  */
 public class InOperator extends BinaryOperator {
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    /** If the second operand is an instance of a Canto array, tests the
+     *  first operand against the array itself, so the array's element index
+     *  is used, rather than against the Java array or list backing it.
+     */
+    public Value operate(ValueSource firstObj, ValueSource secondObj, Context context) throws Redirection {
+        if (!(secondObj instanceof Instantiation) || secondObj instanceof Value) {
+            return super.operate(firstObj, secondObj, context);
+        }
+        Value firstVal = firstObj.getValue(context);
+        Object data = ((Instantiation) secondObj).getData(context);
+        if (data instanceof ResolvedInstance) {
+            data = ((ResolvedInstance) data).generateData();
+        }
+        if (data instanceof IndexedArray) {
+            return PrimitiveValue.valueOf(((IndexedArray) data).containsElementValue(firstVal.getValue()));
+        }
+        return operate(firstVal, AbstractConstruction.valueOfData(data));
+    }
+
+    @SuppressWarnings("rawtypes")
     public Value operate(Value firstVal, Value secondVal) {
         
         Object memberObj = firstVal.getValue();
@@ -39,28 +58,22 @@ public class InOperator extends BinaryOperator {
         } else if (collectionObj instanceof Map) {
             isIn = ((Map) collectionObj).containsValue(memberObj);
 
-        } else {
-            List<?> list = null;
-            Class clazz = collectionObj.getClass();
-            if (clazz.isArray()) {
-                list = Arrays.asList(collectionObj);
-            } else if (collectionObj instanceof List) {
-                list = ((List<?>) collectionObj);
-            }
-            
-            if (list != null) {
-                Iterator<Object> it = (Iterator<Object>) list.iterator();
-                while (it.hasNext() && !isIn) {
-                    Object element = it.next();
-                    if (element.equals(memberObj)) {
-                        isIn = true;
-                    } else if (element instanceof Value && memberObj.equals(((Value) element).getValue())) {
-                        isIn = true;    
-                    }
-                }
-            }
+        } else if (collectionObj instanceof IndexedArray) {
+            isIn = ((IndexedArray) collectionObj).containsElementValue(memberObj);
+
+        } else if (collectionObj instanceof CantoArray) {
+            isIn = ElementIndex.scan(((CantoArray) collectionObj).iterator(), memberObj);
+
+        } else if (collectionObj instanceof Object[]) {
+            isIn = ElementIndex.scan(Arrays.asList((Object[]) collectionObj).iterator(), memberObj);
+
+        } else if (PrimitiveArray.isPrimitiveData(collectionObj)) {
+            isIn = ElementIndex.scan(((CantoArray) PrimitiveArray.wrap(collectionObj)).iterator(), memberObj);
+
+        } else if (collectionObj instanceof List) {
+            isIn = ElementIndex.scan(((List<?>) collectionObj).iterator(), memberObj);
         }
-        return new PrimitiveValue(isIn);
+        return PrimitiveValue.valueOf(isIn);
     }
 
     /** Always returns boolean type */
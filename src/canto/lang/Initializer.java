@@ -19,6 +19,9 @@ public class Initializer extends CantoVisitor {
     private Site site;
     private boolean allowOverwrite = false;
 
+    /** table for definitions generated under definitions in a frozen site */
+    private DefinitionTable overlayTable = null;
+
     public Initializer(Core core) {
         this.core = core;
         site = core;
@@ -119,7 +122,7 @@ public class Initializer extends CantoVisitor {
             
             } else if (node instanceof NamedDefinition) {
                 subdef = (NamedDefinition) node;
-                subdef.setDefinitionTable(def.getDefinitionTable());
+                subdef.setDefinitionTable(getWritableTable(def));
                 if (def.isGlobal() && subdef.getDurability() == Definition.IN_CONTEXT) {
                     subdef.setDurability(Definition.GLOBAL);
                 }
@@ -144,7 +147,11 @@ public class Initializer extends CantoVisitor {
                 // sites automatically overwrite because that's how multifile sites
                 // get handled
                 boolean overwrite = allowOverwrite || (subdef instanceof Site);
-                def.addDefinition(subdef, overwrite);
+                if (overlayTable != null && def.getDefinitionTable() == site.getDefinitionTable()) {
+                    overlayTable.addDefinition(subdef, overwrite);
+                } else {
+                    def.addDefinition(subdef, overwrite);
+                }
             }
         
             
@@ -158,4 +165,20 @@ public class Initializer extends CantoVisitor {
 
         return data;
     }
+
+    /** Returns the table that definitions owned by the passed definition
+     *  should go in.  Normally this is the owner's table, but if the site is
+     *  frozen (as the shared core image is), definitions generated at runtime
+     *  go in a table of their own layered over the site's table.
+     */
+    private DefinitionTable getWritableTable(NamedDefinition def) {
+        DefinitionTable defTable = def.getDefinitionTable();
+        if (site.isFrozen() && defTable == site.getDefinitionTable()) {
+            if (overlayTable == null) {
+                overlayTable = site.createOverlayDefinitionTable(defTable);
+            }
+            defTable = overlayTable;
+        }
+        return defTable;
+    }
 }
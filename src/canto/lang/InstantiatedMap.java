@@ -111,7 +111,7 @@ public class InstantiatedMap implements Map<String, Object> {
     
     public void putElement(String key, Object element) {
         if (xmap == null) {
-            xmap = new HashMap<String,Object>(map.size());
+            xmap = new CompactTable(map.size());
         }
         xmap.put(key, element);
     }
@@ -143,7 +143,7 @@ public class InstantiatedMap implements Map<String, Object> {
 
     public Object put(String key, Object value) {
         if (xmap == null) {
-            xmap = new HashMap<String,Object>(map.size());
+            xmap = new CompactTable(map.size());
         }
         Object oldVal = xmap.put(key, value);  // TODO: should be element for value
         if (map.get(key) == null) {
@@ -271,7 +271,7 @@ public class InstantiatedMap implements Map<String, Object> {
             if (xsize == 0) {
                 
             }
-            vmap = new HashMap<String,Object>(map.size() + xsize);
+            vmap = new CompactTable(map.size() + xsize);
         }
     }    
 
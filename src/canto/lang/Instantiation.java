@@ -279,6 +279,26 @@ public class Instantiation extends AbstractConstruction implements ValueGenerato
         return kind;
     }
     
+    /** Returns the definition this instantiation refers to, if it could be
+     *  determined by <code>resolve</code> without a context; otherwise returns
+     *  null.  A class definition may still be overridden in a subclass, so
+     *  callers must not rely on this for anything but a hint.
+     */
+    public Definition getResolvedDefinition() {
+        if (kind == STATICALLY_RESOLVED && reference instanceof Definition) {
+            return (Definition) reference;
+        } else if (kind == LOCAL || kind == EXPLICITLY_RESOLVED || kind == CLASS_RESOLVED || kind == EXTERNALLY_RESOLVED) {
+            if (localDef != null) {
+                return localDef;
+            } else if (explicitDef != null) {
+                return explicitDef;
+            } else {
+                return classDef;
+            }
+        }
+        return null;
+    }
+
     public void setKind(int kind) {
         this.kind = kind;
         isParam = (kind == PARAMETER || kind == FOR_PARAMETER || kind == CONTAINER_PARAMETER);
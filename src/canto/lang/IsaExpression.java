@@ -30,7 +30,7 @@ public class IsaExpression extends Expression {
     public Object generateData(Context context, Definition def) throws Redirection {
         Object child = getChild(0);
         Type type = (Type) getChild(1);
-        return new PrimitiveValue(type.isInstance(child, context));
+        return PrimitiveValue.valueOf(type.isInstance(child, context));
     }
 
     /** Always returns boolean type */
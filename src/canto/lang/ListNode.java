@@ -75,6 +75,14 @@ public class ListNode<E> extends AbstractNode implements List<E> {
         return copy;
     }
 
+    /** Trims the wrapped list to its current size. */
+    void freeze(boolean keepSource) {
+        super.freeze(keepSource);
+        if (list instanceof ArrayList<?>) {
+            ((ArrayList<E>) list).trimToSize();
+        }
+    }
+
     /** Insert items into this list.  The wrapped list is replaced with a new
      *  ArrayList combining the contents of the passed list and the current list.
      */
@@ -18,7 +18,7 @@ public class LogicalNotOperator extends UnaryOperator {
 
     public Value operate(Value val) {
         boolean result = !val.getBoolean();
-        return new PrimitiveValue(result);
+        return PrimitiveValue.valueOf(result);
     }
 
     /** Always returns boolean type */
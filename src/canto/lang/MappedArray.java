@@ -126,6 +126,7 @@ public class MappedArray implements Map {
             oldValue = list.get(k);
             list.set(k, value);
         }
+        ElementIndex.noteDirectWrite();
         
         return oldValue;
     }
@@ -146,6 +147,7 @@ public class MappedArray implements Map {
             array = Array.newInstance(componentType, 0);
         } else {
             list.clear();
+            ElementIndex.noteDirectWrite();
         }
     }
 
@@ -53,6 +53,24 @@ public class NameNode extends AbstractNode implements Name {
         parts = cachedName.split("\\.");
     }
     
+    /** Interns the name and its parts, so that identical names throughout the
+     *  loaded code share one String.
+     */
+    void freeze(boolean keepSource) {
+        super.freeze(keepSource);
+        if (name != null) {
+            name = name.intern();
+        }
+        if (cachedName != null) {
+            cachedName = cachedName.intern();
+        }
+        if (parts != null) {
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = parts[i].intern();
+            }
+        }
+    }
+
     /** Returns <code>true</code> */
     public boolean isPrimitive() {
         return true;
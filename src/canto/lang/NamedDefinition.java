@@ -2098,6 +2098,14 @@ public class NamedDefinition extends AnonymousDefinition {
     }
 
 
+    /** Trims the keep list to its current size. */
+    void freeze(boolean keepSource) {
+        super.freeze(keepSource);
+        if (keeps instanceof ArrayList<?>) {
+            ((ArrayList<KeepStatement>) keeps).trimToSize();
+        }
+    }
+
     public void addKeep(KeepStatement keep) {
         if (keeps == null) {
             keeps = Context.newArrayList(1, KeepStatement.class);
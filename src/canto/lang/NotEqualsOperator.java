@@ -30,7 +30,7 @@ public class NotEqualsOperator extends RelationalOperator {
             if (op2 instanceof List<?>) {
                 List<?> list2 = (List<?>) op2;
                 if (list2.size() != size) {
-                    return new PrimitiveValue(true);
+                    return PrimitiveValue.valueOf(true);
                 }
                 for (int i = 0; i < size; i++) {
                     Object obj1 = list1.get(i);
@@ -46,7 +46,7 @@ public class NotEqualsOperator extends RelationalOperator {
             } else if (op2 instanceof Object[]) {
                 Object[] array2 = (Object[]) op2;
                 if (array2.length != size) {
-                    return new PrimitiveValue(true);
+                    return PrimitiveValue.valueOf(true);
                 }
                 for (int i = 0; i < size; i++) {
                     Object obj1 = list1.get(i);
@@ -61,9 +61,9 @@ public class NotEqualsOperator extends RelationalOperator {
 
             } else {
                 // one is an array and one isn't
-                return new PrimitiveValue(true);
+                return PrimitiveValue.valueOf(true);
             }
-            return new PrimitiveValue(false);
+            return PrimitiveValue.valueOf(false);
 
         } else if (op1 instanceof Object[]) {
             Object[] array1 = (Object[]) op1;
@@ -71,7 +71,7 @@ public class NotEqualsOperator extends RelationalOperator {
             if (op2 instanceof List<?>) {
                 List<?> list2 = (List<?>) op2;
                 if (list2.size() != size) {
-                    return new PrimitiveValue(true);
+                    return PrimitiveValue.valueOf(true);
                 }
                 for (int i = 0; i < size; i++) {
                     Object obj1 = array1[i];
@@ -87,7 +87,7 @@ public class NotEqualsOperator extends RelationalOperator {
             } else if (op2 instanceof Object[]) {
                 Object[] array2 = (Object[]) op2;
                 if (array2.length != size) {
-                    return new PrimitiveValue(true);
+                    return PrimitiveValue.valueOf(true);
                 }
                 for (int i = 0; i < size; i++) {
                     Object obj1 = array1[i];
@@ -102,16 +102,16 @@ public class NotEqualsOperator extends RelationalOperator {
 
             } else {
                 // one is a table and one isn't
-                return new PrimitiveValue(true);
+                return PrimitiveValue.valueOf(true);
             }
-            return new PrimitiveValue(false);
+            return PrimitiveValue.valueOf(false);
 
         } else if (op1 instanceof Map && op2 instanceof Map) {
             Map<?,?> map1 = (Map<?,?>) op1;
             Map<?,?> map2 = (Map<?,?>) op2;
             size = map1.size();
             if (map2.size() != size) {
-                return new PrimitiveValue(true);
+                return PrimitiveValue.valueOf(true);
             }
 
             for (Object key: map1.keySet()) {
@@ -124,10 +124,10 @@ public class NotEqualsOperator extends RelationalOperator {
                     return result;
                 }
             }
-            return new PrimitiveValue(false);
+            return PrimitiveValue.valueOf(false);
 
         } else {
-            return new PrimitiveValue(true);
+            return PrimitiveValue.valueOf(true);
         }
     }
 
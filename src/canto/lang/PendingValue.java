@@ -0,0 +1,198 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * PendingValue.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import canto.runtime.CantoLogger;
+import canto.runtime.Context;
+
+/**
+ * A value which is still being computed, wrapping the Future returned by
+ * an external method.  The computation proceeds in the background while
+ * the rest of the page is constructed, and is only waited for when the value
+ * is first used, i.e. when any of the Value methods is called.  So several
+ * slow external calls on one page overlap rather than add up.
+ *
+ * Tasks which the external method returns without starting are run on a
+ * pool of threads of their own, since they typically block on I/O, rather
+ * than on the common pool used for concurrent loops.
+ *
+ * A failure in the background computation is reported when the value is
+ * used, by <code>join</code> as a Redirection, or by the Value methods as a
+ * FailureException wrapping the Redirection, which the context rethrows.
+ * Catch blocks around the original call don't see it.
+ */
+public class PendingValue implements Value {
+
+    /** The most threads running external tasks at once; when all are busy,
+     *  the thread starting a task runs it itself. */
+    private static final int MAX_THREADS = 64;
+
+    private static ExecutorService executor = null;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory factory = new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "canto-extern-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+            executor = new ThreadPoolExecutor(0, MAX_THREADS, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                                              factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
+
+    /** Thrown by the Value methods when the computation failed. */
+    public static class FailureException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Redirection redirection;
+
+        public FailureException(Redirection redirection) {
+            super(redirection.getMessage());
+            this.redirection = redirection;
+        }
+
+        public Redirection getRedirection() {
+            return redirection;
+        }
+    }
+
+    private Future<?> future;
+    private String description;
+    private volatile PrimitiveValue resolved = null;
+
+    /** Wraps the passed future.  If it is a task that hasn't been started,
+     *  starts it.
+     */
+    public PendingValue(Future<?> future, String description) {
+        this.future = future;
+        this.description = description;
+        if (future instanceof RunnableFuture<?> && !future.isDone()) {
+            getExecutor().execute((RunnableFuture<?>) future);
+        }
+    }
+
+    /** Returns true if the value is available without waiting. */
+    public boolean isDone() {
+        return resolved != null || future.isDone();
+    }
+
+    /** Waits if necessary for the computation to complete and returns its
+     *  result.
+     */
+    public Object join() throws Redirection {
+        PrimitiveValue value = resolved;
+        if (value == null) {
+            value = resolve();
+        }
+        return value.getValue();
+    }
+
+    private synchronized PrimitiveValue resolve() throws Redirection {
+        if (resolved == null) {
+            try {
+                Object result = future.get();
+                while (result instanceof Future<?>) {
+                    result = ((Future<?>) result).get();
+                }
+                resolved = new PrimitiveValue(result);
+
+            } catch (ExecutionException ee) {
+                Throwable t = ee.getCause();
+                if (t instanceof Redirection) {
+                    throw (Redirection) t;
+                }
+                String message = "Exception in external method " + description + ": " + t;
+                CantoLogger.log(message);
+                throw new Redirection(Redirection.SERVER_ERROR_STATUS, Redirection.STANDARD_ERROR, message);
+
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new Redirection(Redirection.STANDARD_ERROR, "Interrupted waiting for external method " + description);
+
+            } catch (Exception e) {
+                String message = "Exception waiting for external method " + description + ": " + e;
+                CantoLogger.log(message);
+                throw new Redirection(Redirection.SERVER_ERROR_STATUS, Redirection.STANDARD_ERROR, message);
+            }
+        }
+        return resolved;
+    }
+
+    private PrimitiveValue getResolved() {
+        PrimitiveValue value = resolved;
+        if (value == null) {
+            try {
+                value = resolve();
+            } catch (Redirection r) {
+                throw new FailureException(r);
+            }
+        }
+        return value;
+    }
+
+    public String getString() {
+        return getResolved().getString();
+    }
+
+    public boolean getBoolean() {
+        return getResolved().getBoolean();
+    }
+
+    public byte getByte() {
+        return getResolved().getByte();
+    }
+
+    public char getChar() {
+        return getResolved().getChar();
+    }
+
+    public int getInt() {
+        return getResolved().getInt();
+    }
+
+    public long getLong() {
+        return getResolved().getLong();
+    }
+
+    public double getDouble() {
+        return getResolved().getDouble();
+    }
+
+    public Object getValue() {
+        return getResolved().getValue();
+    }
+
+    public Class<?> getValueClass() {
+        return getResolved().getValueClass();
+    }
+
+    public Value getValue(Context context) throws Redirection {
+        join();
+        return resolved;
+    }
+
+    public String toString() {
+        return getString();
+    }
+}
@@ -0,0 +1,672 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * PrimitiveArray.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import canto.runtime.Context;
+
+/**
+ * Base class for arrays whose elements are stored in a Java primitive array
+ * (int[], long[], double[] or boolean[]) rather than as a PrimitiveValue
+ * object per element.  ArrayBuilder selects one of these for an array whose
+ * element type is int, long, double or boolean and whose elements are all
+ * literal values.
+ *
+ * The typed getters read elements without boxing, and are what code that
+ * knows it has a primitive array should use.  The generic CantoArray methods
+ * return elements as PrimitiveValues, so code that doesn't know about
+ * primitive arrays sees the same elements as it would in a FixedArray or
+ * GrowableArray.  Values are obtained through PrimitiveValue.valueOf, so
+ * common ints and booleans are shared rather than allocated on every read.
+ */
+abstract class PrimitiveArray implements CantoArray, IndexedArray {
+
+    /** Returns a new primitive array for elements of the passed class, or
+     *  null if the class is not one of the supported primitive types.  A
+     *  growable array starts out empty; a fixed array has the passed size,
+     *  with every element zero or false.
+     */
+    static PrimitiveArray create(Class<?> elementClass, int capacity, boolean growable) {
+        int size = (growable ? 0 : capacity);
+        if (elementClass == Integer.TYPE) {
+            return new IntArray(new int[capacity], size, growable);
+        } else if (elementClass == Long.TYPE) {
+            return new LongArray(new long[capacity], size, growable);
+        } else if (elementClass == Double.TYPE) {
+            return new DoubleArray(new double[capacity], size, growable);
+        } else if (elementClass == Boolean.TYPE) {
+            return new BooleanArray(new boolean[capacity], size, growable);
+        } else {
+            return null;
+        }
+    }
+
+    /** If the passed object is an int[], long[], double[] or boolean[], wraps
+     *  it in a fixed PrimitiveArray; otherwise returns the object unchanged.
+     *  The Java array is not copied, so it must belong to the caller, e.g.
+     *  the result of an array operation.
+     */
+    static Object wrap(Object data) {
+        if (data instanceof int[]) {
+            int[] ints = (int[]) data;
+            return new IntArray(ints, ints.length, false);
+        } else if (data instanceof long[]) {
+            long[] longs = (long[]) data;
+            return new LongArray(longs, longs.length, false);
+        } else if (data instanceof double[]) {
+            double[] doubles = (double[]) data;
+            return new DoubleArray(doubles, doubles.length, false);
+        } else if (data instanceof boolean[]) {
+            boolean[] booleans = (boolean[]) data;
+            return new BooleanArray(booleans, booleans.length, false);
+        } else {
+            return data;
+        }
+    }
+
+    /** If the passed object is an int[], long[], double[] or boolean[], wraps
+     *  a copy of it in a fixed PrimitiveArray; otherwise returns the object
+     *  unchanged.  This is for Java arrays that came from somewhere else,
+     *  such as an external method, which may go on using them.
+     */
+    static Object wrapCopy(Object data) {
+        if (data instanceof int[]) {
+            return wrap(((int[]) data).clone());
+        } else if (data instanceof long[]) {
+            return wrap(((long[]) data).clone());
+        } else if (data instanceof double[]) {
+            return wrap(((double[]) data).clone());
+        } else if (data instanceof boolean[]) {
+            return wrap(((boolean[]) data).clone());
+        } else {
+            return data;
+        }
+    }
+
+    /** Returns true if the passed object is a Java array of one of the
+     *  supported primitive types.
+     */
+    static boolean isPrimitiveData(Object data) {
+        return (data instanceof int[] || data instanceof long[] || data instanceof double[] || data instanceof boolean[]);
+    }
+
+    /** If the passed object is a Java array of one of the supported primitive
+     *  types, returns an Object array containing its elements boxed;
+     *  otherwise returns the object unchanged.
+     */
+    static Object box(Object data) {
+        if (isPrimitiveData(data)) {
+            PrimitiveArray array = (PrimitiveArray) wrap(data);
+            Object[] boxed = new Object[array.size];
+            for (int i = 0; i < boxed.length; i++) {
+                boxed[i] = array.getValue(i).getValue();
+            }
+            return boxed;
+        } else {
+            return data;
+        }
+    }
+
+    /** Concatenates two operands at least one of which is a Java primitive
+     *  array, without boxing.  The other operand may be an array of the same
+     *  type or a single boxed value of the corresponding type.  Returns null
+     *  if the operands aren't compatible in this way.
+     */
+    static Object concat(Object op1, Object op2) {
+        if (op1 instanceof int[] || op2 instanceof int[]) {
+            int[] a = (op1 instanceof int[] ? (int[]) op1 : op1 instanceof Integer ? new int[] { ((Integer) op1).intValue() } : null);
+            int[] b = (op2 instanceof int[] ? (int[]) op2 : op2 instanceof Integer ? new int[] { ((Integer) op2).intValue() } : null);
+            if (a != null && b != null) {
+                int[] result = new int[a.length + b.length];
+                System.arraycopy(a, 0, result, 0, a.length);
+                System.arraycopy(b, 0, result, a.length, b.length);
+                return result;
+            }
+        } else if (op1 instanceof long[] || op2 instanceof long[]) {
+            long[] a = (op1 instanceof long[] ? (long[]) op1 : op1 instanceof Long ? new long[] { ((Long) op1).longValue() } : null);
+            long[] b = (op2 instanceof long[] ? (long[]) op2 : op2 instanceof Long ? new long[] { ((Long) op2).longValue() } : null);
+            if (a != null && b != null) {
+                long[] result = new long[a.length + b.length];
+                System.arraycopy(a, 0, result, 0, a.length);
+                System.arraycopy(b, 0, result, a.length, b.length);
+                return result;
+            }
+        } else if (op1 instanceof double[] || op2 instanceof double[]) {
+            double[] a = (op1 instanceof double[] ? (double[]) op1 : op1 instanceof Double ? new double[] { ((Double) op1).doubleValue() } : null);
+            double[] b = (op2 instanceof double[] ? (double[]) op2 : op2 instanceof Double ? new double[] { ((Double) op2).doubleValue() } : null);
+            if (a != null && b != null) {
+                double[] result = new double[a.length + b.length];
+                System.arraycopy(a, 0, result, 0, a.length);
+                System.arraycopy(b, 0, result, a.length, b.length);
+                return result;
+            }
+        } else if (op1 instanceof boolean[] || op2 instanceof boolean[]) {
+            boolean[] a = (op1 instanceof boolean[] ? (boolean[]) op1 : op1 instanceof Boolean ? new boolean[] { ((Boolean) op1).booleanValue() } : null);
+            boolean[] b = (op2 instanceof boolean[] ? (boolean[]) op2 : op2 instanceof Boolean ? new boolean[] { ((Boolean) op2).booleanValue() } : null);
+            if (a != null && b != null) {
+                boolean[] result = new boolean[a.length + b.length];
+                System.arraycopy(a, 0, result, 0, a.length);
+                System.arraycopy(b, 0, result, a.length, b.length);
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the passed element as a Java object if it is a literal value
+     *  (a PrimitiveValue or a Number or Boolean), else null.
+     */
+    static Object getLiteral(Object element) {
+        if (element instanceof PrimitiveValue) {
+            return ((PrimitiveValue) element).getValue();
+        } else if (element instanceof Number || element instanceof Boolean) {
+            return element;
+        } else {
+            return null;
+        }
+    }
+
+
+    protected int size;
+    private boolean growable;
+    private ElementIndex index = null;
+
+    /** a view of the elements as values, for getArrayObject on a growable
+     *  array */
+    private List<Object> valueList = null;
+
+    protected PrimitiveArray(int size, boolean growable) {
+        this.size = size;
+        this.growable = growable;
+    }
+
+    /** Returns the primitive type of the elements, e.g. Integer.TYPE. */
+    abstract public Class<?> getElementClass();
+
+    /** Returns true if the passed element can be stored in this array without
+     *  losing anything, i.e. it is a literal value of the element type rather
+     *  than some other kind of value or something which has to be computed
+     *  in a context.
+     */
+    abstract public boolean isStorable(Object element);
+
+    /** Returns a copy of the elements as a Java primitive array exactly as
+     *  long as this array.
+     */
+    abstract public Object getPrimitiveArray();
+
+    /** Returns the nth element as an int, without boxing. */
+    abstract public int getInt(int n);
+
+    /** Returns the nth element as a long, without boxing. */
+    abstract public long getLong(int n);
+
+    /** Returns the nth element as a double, without boxing. */
+    abstract public double getDouble(int n);
+
+    /** Returns the nth element as a boolean, without boxing. */
+    abstract public boolean getBoolean(int n);
+
+    /** Returns the nth element wrapped in a PrimitiveValue. */
+    abstract protected Value getValue(int n);
+
+    /** Stores the passed value at position n, which must be within the
+     *  current capacity.
+     */
+    abstract protected void setValue(int n, Object element);
+
+    /** Makes sure the backing array can hold at least the passed number of
+     *  elements.
+     */
+    abstract protected void ensureCapacity(int capacity);
+
+    /** Returns a FixedArray or GrowableArray holding the same elements, for
+     *  when an element has to be stored that a primitive array can't hold.
+     */
+    CantoArray toGenericArray() {
+        if (growable) {
+            return new GrowableArray(getValueList());
+        } else {
+            return new FixedArray(getValueArray());
+        }
+    }
+
+    protected void checkIndex(int n) {
+        if (n < 0 || n >= size) {
+            throw new ArrayIndexOutOfBoundsException(n);
+        }
+    }
+
+    private Object[] getValueArray() {
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = getValue(i);
+        }
+        return values;
+    }
+
+    private List<Object> getValueList() {
+        List<Object> values = new ArrayList<Object>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(getValue(i));
+        }
+        return values;
+    }
+
+    /** Returns the elements as PrimitiveValues, in an Object array or a List
+     *  depending on whether the array is fixed or growable.  The Object array
+     *  is a copy, built on every call, so code that reads elements repeatedly
+     *  should use get or the typed getters instead.  The List is a view of
+     *  this array; elements set or added through it must be storable.
+     */
+    public Object getArrayObject() {
+        if (growable) {
+            if (valueList == null) {
+                valueList = new ValueList();
+            }
+            return valueList;
+        } else {
+            return getValueArray();
+        }
+    }
+
+    /** A list view of a growable primitive array. */
+    private class ValueList extends AbstractList<Object> {
+        public Object get(int n) {
+            return PrimitiveArray.this.get(n);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Object set(int n, Object element) {
+            return PrimitiveArray.this.set(n, element);
+        }
+
+        public void add(int n, Object element) {
+            if (n != size) {
+                throw new UnsupportedOperationException("Elements can only be added to the end of a primitive array");
+            }
+            PrimitiveArray.this.add(element);
+        }
+    }
+
+    /** The elements of a primitive array are already values, so this just
+     *  returns them boxed.
+     */
+    public Object instantiateArray(Context context) throws Redirection {
+        if (growable) {
+            List<Object> list = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(getValue(i).getValue());
+            }
+            return list;
+        } else {
+            Object[] boxed = new Object[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = getValue(i).getValue();
+            }
+            return boxed;
+        }
+    }
+
+    public Object get(int n) {
+        checkIndex(n);
+        return getValue(n);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isGrowable() {
+        return growable;
+    }
+
+    /** Adds an element to the end of a growable array.  Returns false for a
+     *  fixed array.  Throws an IllegalArgumentException if the element is
+     *  not storable.
+     */
+    public boolean add(Object element) {
+        if (!growable) {
+            return false;
+        }
+        if (!isStorable(element)) {
+            throw new IllegalArgumentException("Element cannot be stored in a primitive array: " + element);
+        }
+        ensureCapacity(size + 1);
+        setValue(size, element);
+        size++;
+        index = null;
+        return true;
+    }
+
+    public boolean addAll(List<Object> list) {
+        if (!growable) {
+            return false;
+        }
+        ensureCapacity(size + list.size());
+        Iterator<Object> it = list.iterator();
+        while (it.hasNext()) {
+            add(it.next());
+        }
+        return true;
+    }
+
+    public Object set(int n, Object element) {
+        checkIndex(n);
+        if (!isStorable(element)) {
+            throw new IllegalArgumentException("Element cannot be stored in a primitive array: " + element);
+        }
+        Value oldElement = getValue(n);
+        setValue(n, element);
+        index = null;
+        return oldElement;
+    }
+
+    /** Small arrays are scanned with the typed getters, so testing them for
+     *  membership boxes nothing; larger ones use an ElementIndex.
+     */
+    public boolean containsElementValue(Object member) {
+        if (size < ElementIndex.MIN_INDEXED_SIZE) {
+            return scan(member);
+        }
+        index = ElementIndex.forArray(index, this);
+        return index.contains(this, member);
+    }
+
+    /** Returns true if the passed object is a boxed value of the element type
+     *  equal to one of the elements.
+     */
+    private boolean scan(Object member) {
+        Class<?> elementClass = getElementClass();
+        if (elementClass == Integer.TYPE && member instanceof Integer) {
+            int n = ((Integer) member).intValue();
+            for (int i = 0; i < size; i++) {
+                if (getInt(i) == n) {
+                    return true;
+                }
+            }
+        } else if (elementClass == Long.TYPE && member instanceof Long) {
+            long ln = ((Long) member).longValue();
+            for (int i = 0; i < size; i++) {
+                if (getLong(i) == ln) {
+                    return true;
+                }
+            }
+        } else if (elementClass == Double.TYPE && member instanceof Double) {
+            // compare as Double.equals does, so the result matches the index
+            long bits = Double.doubleToLongBits(((Double) member).doubleValue());
+            for (int i = 0; i < size; i++) {
+                if (Double.doubleToLongBits(getDouble(i)) == bits) {
+                    return true;
+                }
+            }
+        } else if (elementClass == Boolean.TYPE && member instanceof Boolean) {
+            boolean bool = ((Boolean) member).booleanValue();
+            for (int i = 0; i < size; i++) {
+                if (getBoolean(i) == bool) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public Iterator<Object> iterator() {
+        return new Iterator<Object>() {
+            private int ix = 0;
+
+            public boolean hasNext() {
+                return ix < size;
+            }
+
+            public Object next() {
+                if (ix >= size) {
+                    throw new NoSuchElementException();
+                }
+                return getValue(ix++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove not supported in array iterators");
+            }
+        };
+    }
+}
+
+class IntArray extends PrimitiveArray {
+    private int[] array;
+
+    IntArray(int[] array, int size, boolean growable) {
+        super(size, growable);
+        this.array = array;
+    }
+
+    public Class<?> getElementClass() {
+        return Integer.TYPE;
+    }
+
+    public boolean isStorable(Object element) {
+        return (getLiteral(element) instanceof Integer);
+    }
+
+    public Object getPrimitiveArray() {
+        int[] copy = new int[size];
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+
+    public int getInt(int n) {
+        checkIndex(n);
+        return array[n];
+    }
+
+    public long getLong(int n) {
+        return getInt(n);
+    }
+
+    public double getDouble(int n) {
+        return getInt(n);
+    }
+
+    public boolean getBoolean(int n) {
+        return getInt(n) != 0;
+    }
+
+    protected Value getValue(int n) {
+        return PrimitiveValue.valueOf(array[n]);
+    }
+
+    protected void setValue(int n, Object element) {
+        array[n] = ((Integer) getLiteral(element)).intValue();
+    }
+
+    protected void ensureCapacity(int capacity) {
+        if (capacity > array.length) {
+            int[] newArray = new int[Math.max(capacity, array.length * 2)];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+        }
+    }
+}
+
+class LongArray extends PrimitiveArray {
+    private long[] array;
+
+    LongArray(long[] array, int size, boolean growable) {
+        super(size, growable);
+        this.array = array;
+    }
+
+    public Class<?> getElementClass() {
+        return Long.TYPE;
+    }
+
+    public boolean isStorable(Object element) {
+        return (getLiteral(element) instanceof Long);
+    }
+
+    public Object getPrimitiveArray() {
+        long[] copy = new long[size];
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+
+    public int getInt(int n) {
+        return (int) getLong(n);
+    }
+
+    public long getLong(int n) {
+        checkIndex(n);
+        return array[n];
+    }
+
+    public double getDouble(int n) {
+        return getLong(n);
+    }
+
+    public boolean getBoolean(int n) {
+        return getLong(n) != 0L;
+    }
+
+    protected Value getValue(int n) {
+        return PrimitiveValue.valueOf(array[n]);
+    }
+
+    protected void setValue(int n, Object element) {
+        array[n] = ((Long) getLiteral(element)).longValue();
+    }
+
+    protected void ensureCapacity(int capacity) {
+        if (capacity > array.length) {
+            long[] newArray = new long[Math.max(capacity, array.length * 2)];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+        }
+    }
+}
+
+class DoubleArray extends PrimitiveArray {
+    private double[] array;
+
+    DoubleArray(double[] array, int size, boolean growable) {
+        super(size, growable);
+        this.array = array;
+    }
+
+    public Class<?> getElementClass() {
+        return Double.TYPE;
+    }
+
+    public boolean isStorable(Object element) {
+        return (getLiteral(element) instanceof Double);
+    }
+
+    public Object getPrimitiveArray() {
+        double[] copy = new double[size];
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+
+    public int getInt(int n) {
+        return (int) getDouble(n);
+    }
+
+    public long getLong(int n) {
+        return (long) getDouble(n);
+    }
+
+    public double getDouble(int n) {
+        checkIndex(n);
+        return array[n];
+    }
+
+    public boolean getBoolean(int n) {
+        return getDouble(n) != 0.0;
+    }
+
+    protected Value getValue(int n) {
+        return PrimitiveValue.valueOf(array[n]);
+    }
+
+    protected void setValue(int n, Object element) {
+        array[n] = ((Double) getLiteral(element)).doubleValue();
+    }
+
+    protected void ensureCapacity(int capacity) {
+        if (capacity > array.length) {
+            double[] newArray = new double[Math.max(capacity, array.length * 2)];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+        }
+    }
+}
+
+class BooleanArray extends PrimitiveArray {
+    private boolean[] array;
+
+    BooleanArray(boolean[] array, int size, boolean growable) {
+        super(size, growable);
+        this.array = array;
+    }
+
+    public Class<?> getElementClass() {
+        return Boolean.TYPE;
+    }
+
+    public boolean isStorable(Object element) {
+        return (getLiteral(element) instanceof Boolean);
+    }
+
+    public Object getPrimitiveArray() {
+        boolean[] copy = new boolean[size];
+        System.arraycopy(array, 0, copy, 0, size);
+        return copy;
+    }
+
+    public int getInt(int n) {
+        return getBoolean(n) ? 1 : 0;
+    }
+
+    public long getLong(int n) {
+        return getInt(n);
+    }
+
+    public double getDouble(int n) {
+        return getInt(n);
+    }
+
+    public boolean getBoolean(int n) {
+        checkIndex(n);
+        return array[n];
+    }
+
+    protected Value getValue(int n) {
+        return PrimitiveValue.valueOf(array[n]);
+    }
+
+    protected void setValue(int n, Object element) {
+        array[n] = ((Boolean) getLiteral(element)).booleanValue();
+    }
+
+    protected void ensureCapacity(int capacity) {
+        if (capacity > array.length) {
+            boolean[] newArray = new boolean[Math.max(capacity, array.length * 2)];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+        }
+    }
+}
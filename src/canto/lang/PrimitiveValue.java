@@ -29,6 +29,68 @@ import java.lang.reflect.Array;
 
 public class PrimitiveValue extends AbstractNode implements Construction, Value {
 
+    // Canonical instances.  These are shared, so they must never be modified
+    // or adopted into a tree; see SharedValue.
+
+    public final static PrimitiveValue TRUE = new SharedValue(Boolean.TRUE, Boolean.TYPE);
+    public final static PrimitiveValue FALSE = new SharedValue(Boolean.FALSE, Boolean.TYPE);
+    public final static PrimitiveValue EMPTY_STRING = new SharedValue("", String.class);
+
+    private final static int MIN_CACHED_INT = -128;
+    private final static int MAX_CACHED_INT = 1023;
+    private final static PrimitiveValue[] CACHED_INTS = new PrimitiveValue[MAX_CACHED_INT - MIN_CACHED_INT + 1];
+    static {
+        for (int i = 0; i < CACHED_INTS.length; i++) {
+            CACHED_INTS[i] = new SharedValue(Integer.valueOf(i + MIN_CACHED_INT), Integer.TYPE);
+        }
+    }
+
+    /** Returns the canonical value for a boolean. */
+    public static PrimitiveValue valueOf(boolean booleanValue) {
+        return (booleanValue ? TRUE : FALSE);
+    }
+
+    public static PrimitiveValue valueOf(byte byteValue) {
+        return new PrimitiveValue(byteValue);
+    }
+
+    public static PrimitiveValue valueOf(char charValue) {
+        return new PrimitiveValue(charValue);
+    }
+
+    /** Returns a value for an int, which is a shared instance if the int is
+     *  between -128 and 1023.
+     */
+    public static PrimitiveValue valueOf(int intValue) {
+        if (intValue >= MIN_CACHED_INT && intValue <= MAX_CACHED_INT) {
+            return CACHED_INTS[intValue - MIN_CACHED_INT];
+        } else {
+            return new PrimitiveValue(intValue);
+        }
+    }
+
+    /** Returns a value for a long.  Longs are not cached, since a long value
+     *  has a different type than an int with the same magnitude.
+     */
+    public static PrimitiveValue valueOf(long longValue) {
+        return new PrimitiveValue(longValue);
+    }
+
+    public static PrimitiveValue valueOf(double doubleValue) {
+        return new PrimitiveValue(doubleValue);
+    }
+
+    /** Returns a string value, which is the shared instance for the empty
+     *  string.
+     */
+    public static PrimitiveValue valueOf(String str) {
+        if (str != null && str.length() == 0) {
+            return EMPTY_STRING;
+        } else {
+            return new PrimitiveValue(str, String.class);
+        }
+    }
+
     private Object value;
     private Class<?> nativeClass;
 
@@ -70,34 +132,34 @@ public class PrimitiveValue extends AbstractNode implements Construction, Value
             nativeClass = Void.TYPE;
         } else if (valueClass.equals(Boolean.class) || valueClass.equals(Boolean.TYPE)) {
             if (!(obj instanceof Boolean)) {
-                value = new Boolean(getBooleanFor(obj));
+                value = Boolean.valueOf(getBooleanFor(obj));
             }
             nativeClass = Boolean.TYPE;
         } else if (valueClass.equals(Byte.class) || valueClass.equals(Byte.TYPE)) {
             if (!(obj instanceof Byte)) {
-                value = new Byte(getByteFor(obj));
+                value = Byte.valueOf(getByteFor(obj));
             }
             nativeClass = Byte.TYPE;
         } else if (valueClass.equals(Character.class) || valueClass.equals(Character.TYPE)) {
             if (!(obj instanceof Character)) {
-                value = new Character(getCharFor(obj));
+                value = Character.valueOf(getCharFor(obj));
             }
             nativeClass = Character.TYPE;
         } else if (valueClass.equals(Double.class) || valueClass.equals(Float.class)
                     || valueClass.equals(Double.TYPE) || valueClass.equals(Float.TYPE)) {
             if (!(obj instanceof Double) && !(obj instanceof Float)) {
-                value = new Double(getDoubleFor(obj));
+                value = Double.valueOf(getDoubleFor(obj));
             }
             nativeClass = Double.TYPE;
         } else if (valueClass.equals(Integer.class) || valueClass.equals(Short.class)
                     || valueClass.equals(Integer.TYPE) || valueClass.equals(Short.TYPE)) {
             if (!(obj instanceof Integer) && !(obj instanceof Short)) {
-                value = new Integer(getIntFor(obj));
+                value = Integer.valueOf(getIntFor(obj));
             }
             nativeClass = Integer.TYPE;
         } else if (valueClass.equals(Long.class) || valueClass.equals(Long.TYPE)) {
             if (!(obj instanceof Long)) {
-                value = new Long(getLongFor(obj));
+                value = Long.valueOf(getLongFor(obj));
             }
             nativeClass = Long.TYPE;
         
@@ -115,32 +177,32 @@ public class PrimitiveValue extends AbstractNode implements Construction, Value
     }
 
     public PrimitiveValue(boolean booleanValue) {
-        value = new Boolean(booleanValue);
+        value = Boolean.valueOf(booleanValue);
         nativeClass = Boolean.TYPE;
     }
 
     public PrimitiveValue(byte byteValue) {
-        value = new Byte(byteValue);
+        value = Byte.valueOf(byteValue);
         nativeClass = Byte.TYPE;
     }
 
     public PrimitiveValue(char charValue) {
-        value = new Character(charValue);
+        value = Character.valueOf(charValue);
         nativeClass = Character.TYPE;
     }
 
     public PrimitiveValue(int intValue) {
-        value = new Integer(intValue);
+        value = Integer.valueOf(intValue);
         nativeClass = Integer.TYPE;
     }
 
     public PrimitiveValue(long longValue) {
-        value = new Long(longValue);
+        value = Long.valueOf(longValue);
         nativeClass = Long.TYPE;
     }
 
     public PrimitiveValue(double doubleValue) {
-        value = new Double(doubleValue);
+        value = Double.valueOf(doubleValue);
         nativeClass = Double.TYPE;
     }
 
@@ -190,6 +252,14 @@ public class PrimitiveValue extends AbstractNode implements Construction, Value
         nativeClass = valueClass;
     }
 
+    /** Returns a value that won't change, for holding on to.  This is the
+     *  value itself, except for values which are updated in place, such as
+     *  the counter of a range loop.
+     */
+    public PrimitiveValue detach() {
+        return this;
+    }
+
     /** ValueSource interface method; returns this Value. **/
     public Value getValue(Context context) throws Redirection {
         return this;
@@ -361,7 +431,7 @@ public class PrimitiveValue extends AbstractNode implements Construction, Value
     public Type getType() {
         // doesn't handle multidimensional objects yet
         List<Dim> dims = null;
-        Dim dim = Dim.createForObject(value);
+        Dim dim = Dim.createForObject(getValue());
         if (dim != null) {
             dims = new ArrayList<Dim>(1);
             dims.add(dim);
@@ -582,27 +652,45 @@ public class PrimitiveValue extends AbstractNode implements Construction, Value
     }
 
     public String getString(Context context) throws Redirection {
-        return getStringFor(value);
+        return getStringFor(getValue());
     }
 
     public byte getByte(Context context) throws Redirection {
-        return (byte) getIntFor(value);
+        return (byte) getIntFor(getValue());
     }
 
     public char getChar(Context context) throws Redirection {
-        return getCharFor(value);
+        return getCharFor(getValue());
     }
 
     public int getInt(Context context) throws Redirection {
-        return getIntFor(value);
+        return getIntFor(getValue());
     }
 
     public long getLong(Context context) throws Redirection {
-        return getLongFor(value);
+        return getLongFor(getValue());
     }
 
     public double getDouble(Context context) throws Redirection {
-        return getDoubleFor(value);
+        return getDoubleFor(getValue());
     }
 
+    /** A shared, canonical value.  Its value can't be changed, and it can't
+     *  be given an owner or a parent, since it may appear in any number of
+     *  places at once; attempts to set either are ignored, so it stays
+     *  unowned, as values produced at runtime generally are.
+     */
+    private static class SharedValue extends PrimitiveValue {
+        SharedValue(Object value, Class<?> valueClass) {
+            super(value, valueClass);
+        }
+
+        protected void setValueAndClass(Object value, Class<?> valueClass) {
+            throw new UnsupportedOperationException("Shared values cannot be modified");
+        }
+
+        public void setOwner(Definition owner) {}
+
+        public void jjtSetParent(canto.parser.Node n) {}
+    }
 }
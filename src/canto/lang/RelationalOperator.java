@@ -77,7 +77,7 @@ abstract public class RelationalOperator extends BinaryOperator {
     }
     
     public Value operate(Value firstVal, Value secondVal) {
-        return new PrimitiveValue(getBoolean(firstVal, secondVal));
+        return PrimitiveValue.valueOf(getBoolean(firstVal, secondVal));
     }
 
     /** Relational operators always return a boolean result **/
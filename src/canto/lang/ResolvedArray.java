@@ -13,7 +13,7 @@ import java.util.List;
 
 import canto.runtime.Context;
 
-public class ResolvedArray extends ResolvedCollection {
+public class ResolvedArray extends ResolvedCollection implements IndexedArray {
 
     private CollectionDefinition collectionDef = null;
     protected CantoArray array = null;
@@ -56,6 +56,8 @@ public class ResolvedArray extends ResolvedCollection {
             array = new FixedArray((Object[]) arrayData);
         } else if (arrayData instanceof List<?>) {
             array = new GrowableArray((List<?>) arrayData);
+        } else if (PrimitiveArray.isPrimitiveData(arrayData)) {
+            array = (CantoArray) PrimitiveArray.wrapCopy(arrayData);
         } else if (arrayData instanceof ResolvedArray) {
             array = ((ResolvedArray) arrayData).getArray();
         } else if (arrayData != null) {
@@ -138,6 +140,7 @@ public class ResolvedArray extends ResolvedCollection {
                         }
                     }
                 }
+                array = ArrayBuilder.selectImplementation(array, collectionDef.getElementType());
                 if (collectionDef.isDynamic()) {
                     array = new DynamicArray(array, context);
                 }
@@ -231,7 +234,12 @@ public class ResolvedArray extends ResolvedCollection {
         }
     }
 
-    public class ArrayConstructionIterator implements Iterator<Construction> {
+    /** Iterates over the elements as constructions.  If the array is backed
+     *  by a source which produces its elements on demand, such as a query
+     *  result, they are read as the iterator advances, and closing this
+     *  iterator closes the underlying one.
+     */
+    public class ArrayConstructionIterator implements Iterator<Construction>, AutoCloseable, ReusingIterator {
         int ix = 0;
         Iterator<Object> it;
 
@@ -251,6 +259,14 @@ public class ResolvedArray extends ResolvedCollection {
         public void remove() {
             throw new UnsupportedOperationException("remove not supported in array iterators");
         }
+
+        public boolean reusesElements() {
+            return ForStatement.reusesElements(it);
+        }
+
+        public void close() {
+            ForStatement.closeIterator(it);
+        }
     }
 
 
@@ -404,14 +420,100 @@ public class ResolvedArray extends ResolvedCollection {
         return array.isGrowable();
     }
 
+    /** Notes that the Java array or list backing a Canto array has been
+     *  written to directly, rather than through the Canto array, so that
+     *  membership tests don't rely on element indexes built before.
+     */
+    public static void noteDirectWrite() {
+        ElementIndex.noteDirectWrite();
+    }
+
+    /** Returns true if the passed object equals one of the elements of the
+     *  array or the value of one of the elements.  The test uses the hash
+     *  index kept by the underlying array, which is rebuilt whenever the
+     *  array has been modified.
+     */
+    public boolean containsElementValue(Object member) {
+        if (array instanceof IndexedArray) {
+            return ((IndexedArray) array).containsElementValue(member);
+        } else if (array != null) {
+            return ElementIndex.scan(array.iterator(), member);
+        } else {
+            return false;
+        }
+    }
+
     public void add(Object element) {
+        if (array instanceof PrimitiveArray) {
+            if (((PrimitiveArray) array).isStorable(element)) {
+                array.add(element);
+                return;
+            }
+            array = ((PrimitiveArray) array).toGenericArray();
+        }
         array.add(getElementDefinition(element));
     }
 
     public void set(int n, Object element) {
+        if (array instanceof PrimitiveArray) {
+            if (((PrimitiveArray) array).isStorable(element)) {
+                array.set(n, element);
+                return;
+            }
+            array = ((PrimitiveArray) array).toGenericArray();
+        }
         array.set(n, getElementDefinition(element));
     }
 
+    /** Returns the nth element as an int.  If the array is backed by a Java
+     *  primitive array, the element is read directly, without boxing.
+     */
+    public int getInt(int n) throws Redirection {
+        if (array instanceof PrimitiveArray) {
+            return ((PrimitiveArray) array).getInt(n);
+        }
+        return getElementValue(n).getInt();
+    }
+
+    /** Returns the nth element as a long, without boxing if possible. */
+    public long getLong(int n) throws Redirection {
+        if (array instanceof PrimitiveArray) {
+            return ((PrimitiveArray) array).getLong(n);
+        }
+        return getElementValue(n).getLong();
+    }
+
+    /** Returns the nth element as a double, without boxing if possible. */
+    public double getDouble(int n) throws Redirection {
+        if (array instanceof PrimitiveArray) {
+            return ((PrimitiveArray) array).getDouble(n);
+        }
+        return getElementValue(n).getDouble();
+    }
+
+    /** Returns the nth element as a boolean, without boxing if possible. */
+    public boolean getBoolean(int n) throws Redirection {
+        if (array instanceof PrimitiveArray) {
+            return ((PrimitiveArray) array).getBoolean(n);
+        }
+        return getElementValue(n).getBoolean();
+    }
+
+    private Value getElementValue(int n) throws Redirection {
+        Context context = getResolutionContext();
+        Object element = array.get(n);
+        if (element instanceof ElementDefinition) {
+            element = ((ElementDefinition) element).getElement(context);
+        }
+        if (element instanceof Value) {
+            return (Value) element;
+        } else if (element instanceof ValueSource) {
+            return ((ValueSource) element).getValue(context);
+        } else {
+            return new PrimitiveValue(element);
+        }
+    }
+
     public String getText(Context context) throws Redirection {
         StringBuffer sb = new StringBuffer();
         
@@ -8,7 +8,6 @@
 
 package canto.lang;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -111,8 +110,10 @@ public class ResolvedTable extends ResolvedCollection {
                     }
 
                     // for now just handle one dimension
-                    table = new HashMap<String, Object>(size);
-                    addElements(context, elements, table);
+                    CompactTable compactTable = new CompactTable(size);
+                    addElements(context, elements, compactTable);
+                    compactTable.trimToSize();
+                    table = compactTable;
 
                 // table is aliased or externally defined
                 } else if (contents instanceof ValueGenerator) {
@@ -147,7 +148,7 @@ public class ResolvedTable extends ResolvedCollection {
                 }
 
             } else {
-                table = new HashMap<String, Object>();
+                table = new CompactTable();
             }
             return table;
         } finally {
@@ -37,6 +37,11 @@ public class Resolver extends CantoVisitor {
             keep.createInstances();
         } else if (node instanceof Instantiation) {
             ((Instantiation) node).resolve(data);
+        } else if (node instanceof BinaryExpression) {
+            // resolve the operands first
+            super.handleNode(node, data);
+            ((BinaryExpression) node).resolveOperandTypes();
+            return data;
         } else if (node instanceof Type) {
             ((Type) node).resolve();
         } else if (node instanceof NamedDefinition) {
@@ -0,0 +1,25 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ReusingIterator.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.lang;
+
+/**
+ * Interface for iterators which may return the same object from every call
+ * to <code>next</code>, updated in place to show the current element, or
+ * which wrap an iterator that does.  An element from such an iterator is
+ * only good until the next one is read, so the elements can't be held,
+ * for example to be evaluated in parallel.
+ */
+
+public interface ReusingIterator {
+
+    /** Returns true if the elements returned by this iterator are only good
+     *  until the next element is read.
+     */
+    public boolean reusesElements();
+}
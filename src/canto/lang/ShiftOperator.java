@@ -35,19 +35,19 @@ abstract public class ShiftOperator extends BinaryOperator {
             // convert into an int and mask off high bytes in order to 
             // avoid extended sign bit problems
             byte b = (byte) operate(firstVal.getInt() & 0xFF, amount);
-            result = new PrimitiveValue(b);
+            result = PrimitiveValue.valueOf(b);
         } else if (type == Character.TYPE) {
             char c = operate(firstVal.getChar(), amount);
-            result = new PrimitiveValue(c);
+            result = PrimitiveValue.valueOf(c);
         } else if (type == Short.TYPE || type == Integer.TYPE) {
             int n = operate(firstVal.getInt(), amount);
-            result = new PrimitiveValue(n);
+            result = PrimitiveValue.valueOf(n);
         } else if (type == Long.TYPE) {
             long ln = operate(firstVal.getLong(), amount);
-            result = new PrimitiveValue(ln);
+            result = PrimitiveValue.valueOf(ln);
         } else if (type == String.class) {
             String str = operate(firstVal.getString(), amount);
-            result = new PrimitiveValue(str, String.class);
+            result = PrimitiveValue.valueOf(str);
         } else {
             throw new UnsupportedOperationException("Invalid operand type for shift operation");
         }
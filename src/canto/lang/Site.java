@@ -29,6 +29,7 @@ public class Site extends ComplexDefinition {
     protected Core core = null;
     protected site_config siteConfig = null;
     protected Map<String, Object> globalKeep = null;
+    protected boolean parallelLoops = false;
 
     public Site() {
         super();
@@ -52,6 +53,28 @@ public class Site extends ComplexDefinition {
         setDefinitionTable(defTable);
         return defTable;
     }
+
+    /** Gives this site a new definition table layered over the passed table,
+     *  which is shared and never modified through this site.
+     */
+    public DefinitionTable setOverlayDefinitionTable(DefinitionTable baseTable) {
+        DefinitionTable defTable = createOverlayDefinitionTable(baseTable);
+        setDefinitionTable(defTable);
+        return defTable;
+    }
+
+    /** Returns a new definition table layered over the passed table, which
+     *  is never modified through the new table.  Definitions may be added to
+     *  the new table even if this site is frozen.
+     */
+    public DefinitionTable createOverlayDefinitionTable(DefinitionTable baseTable) {
+        return new OverlayDefinitionHash((DefinitionHash) baseTable);
+    }
+
+    /** Returns true if definitions may no longer be added to this site. */
+    public boolean isFrozen() {
+        return false;
+    }
     
     /** Returns the name of the site.  */
     public String getFullName() {
@@ -88,6 +111,17 @@ public class Site extends ComplexDefinition {
     }
     
     
+    /** Trims the adopt and extern lists to their current sizes. */
+    void freeze(boolean keepSource) {
+        super.freeze(keepSource);
+        if (adopts instanceof ArrayList<?>) {
+            ((ArrayList<Name>) adopts).trimToSize();
+        }
+        if (externs instanceof ArrayList<?>) {
+            ((ArrayList<ExternStatement>) externs).trimToSize();
+        }
+    }
+
     public site_config getSiteConfig() {
         return siteConfig;
     }
@@ -103,6 +137,18 @@ public class Site extends ComplexDefinition {
     public Map<String, Object> getGlobalKeep() {
         return globalKeep;
     }
+
+    /** Returns true if for statements with a concurrent body, i.e. enclosed
+     *  in <code>[++ ++]</code>, may evaluate their iterations in parallel when
+     *  a request for this site is being handled.  False by default.
+     */
+    public boolean isParallelLoops() {
+        return parallelLoops;
+    }
+
+    public void setParallelLoops(boolean parallelLoops) {
+        this.parallelLoops = parallelLoops;
+    }
     
     /** Add a site's content to this site */
     synchronized void addContents(Site site) {
@@ -436,7 +482,22 @@ public class Site extends ComplexDefinition {
             super();
         }
 
+        /** Returns true if definitions may not be added to this table. */
+        boolean isReadOnly() {
+            return isFrozen();
+        }
+
+        /** Returns the entry for the passed key, which the caller may modify
+         *  in place, or null if there is none.
+         */
+        Definition getEntryForUpdate(String key) {
+            return get(key);
+        }
+
         public void addDefinition(Definition def, boolean replace) throws DuplicateDefinitionException {
+            if (isReadOnly()) {
+                throw new UnsupportedOperationException("Attempt to add definition " + def.getFullName() + " to frozen site " + getName());
+            }
         	String fullName = def.getFullName();
             if (fullName == null || fullName.length() == 0) {
                 throw new IllegalArgumentException("Attempt to add unnamed definition");
@@ -458,7 +519,7 @@ public class Site extends ComplexDefinition {
                 ownerName = owner.getFullName();
             }
  
-            Definition entry = (replace ? null : (Definition) get(key));
+            Definition entry = (replace ? null : getEntryForUpdate(key));
             if (entry != null) {
  
                 if (entry instanceof SubcollectionDefinition) {
@@ -723,5 +784,80 @@ public class Site extends ComplexDefinition {
             return def;
         }
     }
-}
 
+    /** A definition table layered over a shared base table.  Lookups that
+     *  fail in this table fall through to the base table; additions are made
+     *  to this table only.
+     */
+    class OverlayDefinitionHash extends DefinitionHash {
+
+        private static final long serialVersionUID = 1L;
+
+        private DefinitionHash baseTable;
+
+        public OverlayDefinitionHash(DefinitionHash baseTable) {
+            super();
+            this.baseTable = baseTable;
+        }
+
+        public Definition get(Object key) {
+            Definition def = super.get(key);
+            if (def == null) {
+                def = baseTable.get(key);
+            }
+            return def;
+        }
+
+        public boolean containsKey(Object key) {
+            return super.containsKey(key) || baseTable.containsKey(key);
+        }
+
+        boolean isReadOnly() {
+            return false;
+        }
+
+        /** Returns the entry for the passed key.  A subcollection found in
+         *  the base table is copied into this table first, so that additions
+         *  to it are not made to the shared base.
+         */
+        Definition getEntryForUpdate(String key) {
+            Definition entry = super.get(key);
+            if (entry == null) {
+                entry = baseTable.get(key);
+                if (entry instanceof SubcollectionDefinition) {
+                    entry = ((SubcollectionDefinition) entry).copy();
+                    put(key, entry);
+                }
+            }
+            return entry;
+        }
+
+        public Collection values() {
+            Collection defs = super.values();
+            Iterator<Map.Entry<String, Definition>> it = baseTable.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Definition> entry = it.next();
+                if (!super.containsKey(entry.getKey())) {
+                    Object value = entry.getValue();
+                    if (value instanceof List) {
+                        defs.addAll((List) value);
+                    } else {
+                        defs.add(value);
+                    }
+                }
+            }
+            return defs;
+        }
+
+        public int size() {
+            int n = super.size();
+            Iterator<String> it = baseTable.keySet().iterator();
+            while (it.hasNext()) {
+                if (!super.containsKey(it.next())) {
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import canto.runtime.CantoServer;
 import canto.runtime.CantoVisitor;
 import canto.runtime.CantoLogger;
 import canto.runtime.SiteBuilder;
+import canto.runtime.StartupProfiler;
 import cantocore.CoreSource;
 
 /**
@@ -40,12 +41,96 @@ public class SiteLoader {
         public boolean configurable = true;
         public boolean allowUnresolvedInstances = false;
         public int errorThreshhold = Context.EVERYTHING;
+        /** If true, loaded trees are compacted after linking. */
+        public boolean freeze = true;
+        /** If false, the freeze pass also releases the source tokens, after
+         *  which node source listings and toString are no longer available.
+         */
+        public boolean keepSource = true;
+
+        /** Returns a new set of options with the same settings as this one. */
+        public LoadOptions copy() {
+            LoadOptions options = new LoadOptions();
+            options.multiThreaded = multiThreaded;
+            options.autoLoadCore = autoLoadCore;
+            options.configurable = configurable;
+            options.allowUnresolvedInstances = allowUnresolvedInstances;
+            options.errorThreshhold = errorThreshhold;
+            options.freeze = freeze;
+            options.keepSource = keepSource;
+            return options;
+        }
     }
     
     public static LoadOptions getDefaultLoadOptions() {
         return new LoadOptions();
     }
 
+    /** The modification times of the core source files when the shared core
+     *  image was loaded.
+     */
+    private static long[] coreImageStamps = null;
+
+    /** Returns the frozen core image shared by every site in this JVM, loading
+     *  and linking the core source files the first time it is called, and
+     *  again whenever any of them has changed since the image was loaded, so
+     *  that sites loaded or reloaded after an edit to the core see it.  Sites
+     *  already loaded keep the image they were loaded with.  Returns null if
+     *  the core could not be loaded without errors.
+     */
+    public static Core getCoreImage() {
+        synchronized (Core.class) {
+            Core image = Core.getSharedImage();
+            long[] stamps = getCoreStamps();
+            if (image != null && !Arrays.equals(stamps, coreImageStamps)) {
+                log("Core source has changed; discarding shared core image");
+                image = null;
+            }
+            if (image == null) {
+                log("Loading shared core image");
+                image = Core.createImage();
+                LoadOptions options = getDefaultLoadOptions();
+                options.autoLoadCore = true;
+                options.configurable = false;
+                SiteLoader loader = new SiteLoader(image, null, null, null, false, options);
+                loader.load();
+                Exception[] exceptions = loader.getExceptions();
+                for (int i = 0; i < exceptions.length; i++) {
+                    if (exceptions[i] != null) {
+                        log("Unable to load shared core image: " + exceptions[i]);
+                        return null;
+                    }
+                }
+                Core.setSharedImage(image);
+                coreImageStamps = stamps;
+                log("Shared core image loaded with " + image.getNumDefinitions() + " definitions");
+            }
+            return image;
+        }
+    }
+
+    /** Returns the modification time of each core source file, or zero for
+     *  a file whose time can't be determined.
+     */
+    private static long[] getCoreStamps() {
+        String[] corePaths = CoreSource.getCorePaths();
+        long[] stamps = new long[corePaths.length];
+        for (int i = 0; i < corePaths.length; i++) {
+            URL url = CoreSource.class.getResource(corePaths[i]);
+            if (url != null) {
+                try {
+                    URLConnection connection = url.openConnection();
+                    connection.setUseCaches(false);
+                    stamps[i] = connection.getLastModified();
+                    connection.getInputStream().close();
+                } catch (IOException ioe) {
+                    stamps[i] = 0L;
+                }
+            }
+        }
+        return stamps;
+    }
+
     
     private static final long LOAD_SLEEP = 200L;
 
@@ -68,6 +153,8 @@ public class SiteLoader {
     private boolean multiThreaded;
     private boolean loadCore;
     private boolean configurable;
+    private boolean freeze;
+    private boolean keepSource;
     private String filter;
     private Object[] sources = null;
     private Node[] parseResults = null;
@@ -83,6 +170,8 @@ public class SiteLoader {
         this.multiThreaded = options.multiThreaded;
         this.loadCore = options.autoLoadCore;
         this.configurable = options.configurable;
+        this.freeze = options.freeze;
+        this.keepSource = options.keepSource;
     }
 
     public SiteLoader(Core core, String siteName, String src, boolean isUrl) {
@@ -96,6 +185,8 @@ public class SiteLoader {
         this.multiThreaded = false;
         this.loadCore = true;
         this.configurable = false;
+        this.freeze = true;
+        this.keepSource = true;
     }
 
     /** Load the Canto source code for this site.  The loading occurs in three
@@ -110,6 +201,8 @@ public class SiteLoader {
      *  from the cantocore directory in the classpath.</li>
      */
     public void load() {
+        StartupProfiler profiler = StartupProfiler.getProfiler();
+        StartupProfiler.Phase loadPhase = profiler.start(StartupProfiler.LOAD, siteName, null);
         URL url = null;
 
     	// if the loadCore flag is set, load core canto files useing the loader
@@ -151,6 +244,7 @@ public class SiteLoader {
                 url = new URL(null, externalUrl);
             } catch (MalformedURLException murl) {
                 log("Bad URL");
+                profiler.stop(loadPhase);
                 return;
             }
         } else if (configurable) {
@@ -268,6 +362,13 @@ public class SiteLoader {
 
         // everything is loaded, now link
         link(loaders);
+
+        // and compact the linked trees
+        if (freeze) {
+            StartupProfiler.Phase freezePhase = profiler.start(StartupProfiler.FREEZE, siteName, null);
+            int numNodes = freeze(loaders);
+            profiler.stop(freezePhase, numNodes, 0);
+        }
         
         synchronized (loadedFiles) {
             int size = loaders.size();
@@ -290,6 +391,7 @@ public class SiteLoader {
                 exceptions[i] = e;
             }
         }
+        profiler.stop(loadPhase, 0, core.getNumDefinitions(), loaders.size());
     }
 
     private String getProperty(String name, Site site, Context context) {
@@ -565,16 +667,93 @@ public class SiteLoader {
     }
 
     private void link(List<CantoSourceLoader> loaders) {
+        StartupProfiler profiler = StartupProfiler.getProfiler();
         for (int i = 0; i < loaders.size(); i++) {
             CantoSourceLoader loader = loaders.get(i);
             Node parseResult = loader.getParseResult();
             if (parseResult != null) {
                 log("--- LINK PASS ---");
+                StartupProfiler.Phase linkPhase = profiler.start(StartupProfiler.LINK, siteName, loader.getSourceName());
                 parseResult.jjtAccept(new Linker(), null);
+                profiler.stop(linkPhase, parseResult);
             }
         }
     }
     
+    private int freeze(List<CantoSourceLoader> loaders) {
+        Freezer freezer = new Freezer(keepSource);
+        long tokenBytes = 0L;
+        for (int i = 0; i < loaders.size(); i++) {
+            Node parseResult = loaders.get(i).getParseResult();
+            if (parseResult != null) {
+                if (!keepSource) {
+                    tokenBytes += Freezer.estimateTokenBytes((AbstractNode) parseResult);
+                }
+                parseResult.jjtAccept(freezer, null);
+            }
+        }
+        if (keepSource) {
+            log("--- FREEZE PASS --- " + freezer.getNumNodes() + " nodes compacted, source tokens kept");
+        } else {
+            log("--- FREEZE PASS --- " + freezer.getNumNodes() + " nodes compacted, about " + tokenBytes + " bytes of source tokens released");
+        }
+        return freezer.getNumNodes();
+    }
+
+    /** Visitor which compacts the nodes of a tree after it has been loaded and
+     *  linked.  Lists built while parsing are trimmed to size and names are
+     *  interned; only when source is not kept are the source tokens, by far
+     *  the largest parse-only state, released.
+     */
+    public static class Freezer extends CantoVisitor {
+
+        /** Rough heap cost of a token apart from its image: the object header,
+         *  the kind and position ints and the next and special token links.
+         */
+        private static final int TOKEN_BYTES = 48;
+
+        /** Rough heap cost of a String apart from its characters. */
+        private static final int STRING_BYTES = 40;
+
+        /** Estimates the heap held by the source tokens of the passed tree,
+         *  including the comments attached to them.  Only an estimate, since
+         *  the exact sizes depend on the JVM.
+         */
+        public static long estimateTokenBytes(AbstractNode node) {
+            long bytes = 0L;
+            Token last = node.getLastToken();
+            for (Token t = node.getFirstToken(); t != null; t = t.next) {
+                for (Token st = t; st != null; st = st.specialToken) {
+                    bytes += TOKEN_BYTES;
+                    if (st.image != null) {
+                        bytes += STRING_BYTES + 2 * st.image.length();
+                    }
+                }
+                if (t == last) {
+                    break;
+                }
+            }
+            return bytes;
+        }
+
+        private boolean keepSource;
+        private int numNodes = 0;
+
+        public Freezer(boolean keepSource) {
+            this.keepSource = keepSource;
+        }
+
+        public Object handleNode(CantoNode node, Object data) {
+            ((AbstractNode) node).freeze(keepSource);
+            numNodes++;
+            return super.handleNode(node, data);
+        }
+
+        public int getNumNodes() {
+            return numNodes;
+        }
+    }
+
     public static class LinkException extends RuntimeException {
         private static final long serialVersionUID = 1L;
 
@@ -794,10 +973,16 @@ public class SiteLoader {
         public void run() {
 
             SiteBuilder siteBuilder = new SiteBuilder(core);
+            StartupProfiler profiler = StartupProfiler.getProfiler();
             try {
+                StartupProfiler.Phase parsePhase = profiler.start(StartupProfiler.PARSE, siteName, getSourceName());
                 CantoParser parser = getCantoParser();
                 Node parseResult = parser.parse(getSourceName());
+                profiler.stop(parsePhase, parseResult);
+
+                StartupProfiler.Phase buildPhase = profiler.start(StartupProfiler.BUILD, siteName, getSourceName());
                 siteBuilder.build(parseResult, actions);
+                profiler.stop(buildPhase, parsePhase.getNumNodes(), parsePhase.getNumDefinitions());
                 exception = siteBuilder.getException();
                 this.parseResult = parseResult;
 
@@ -44,6 +44,21 @@ public class SubcollectionDefinition extends CollectionDefinition {
 //        additions = proto.additions;
 //    }
 
+    /** Returns a new subcollection with the same owner, name, supercollection,
+     *  overrides and additions as this one, which can be added to without
+     *  affecting this one.
+     */
+    SubcollectionDefinition copy() {
+        SubcollectionDefinition copy = new SubcollectionDefinition(supercollection);
+        copy.setOwner(getOwner());
+        copy.setName(getNameNode());
+        copy.overrides.putAll(overrides);
+        if (additions != null) {
+            copy.additions.addAll(additions);
+        }
+        return copy;
+    }
+
     void setSupercollection(CollectionDefinition supercollection) {
         this.supercollection = supercollection;
     }
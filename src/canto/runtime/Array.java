@@ -16,8 +16,10 @@ import canto.lang.Core;
 import canto.lang.Construction;
 import canto.lang.Definition;
 import canto.lang.CantoArray;
+import canto.lang.ConstantFolder;
 import canto.lang.Initializer;
 import canto.lang.Redirection;
+import canto.lang.ResolvedArray;
 import canto.lang.Resolver;
 import canto.lang.Site;
 import canto.lang.Validater;
@@ -68,6 +70,7 @@ public class Array {
                 List<Object> list = (List<Object>) arrayObject;
                 list.set(index, element);
             }
+            ResolvedArray.noteDirectWrite();
         } else {
             throw new UnsupportedOperationException("Cannot set an element in a null array");
         }
@@ -78,6 +81,7 @@ public class Array {
         if (arrayObject != null && arrayObject instanceof List<?>) {
             List<Object> list = (List<Object>) arrayObject;
             list.add(element);
+            ResolvedArray.noteDirectWrite();
         } else {
             throw new UnsupportedOperationException("Cannot append to a null or fixed array");
         }
@@ -88,6 +92,7 @@ public class Array {
         if (arrayObject != null && arrayObject instanceof List<?>) {
             List<Object> list = (List<Object>) arrayObject;
             list.remove(element);
+            ResolvedArray.noteDirectWrite();
         } else {
             throw new UnsupportedOperationException("Cannot remove element from a null or fixed array");
         }
@@ -159,6 +164,7 @@ public class Array {
             Core core = site.getCore();
             collectionDef.jjtAccept(new Initializer(core, site, true), owner);
             collectionDef.jjtAccept(new Resolver(), null);
+            collectionDef.jjtAccept(new ConstantFolder(), null);
             Validater validater = new Validater();
             collectionDef.jjtAccept(validater, null);
             String problems = validater.spoolProblems();
@@ -227,6 +227,16 @@ public class CantoDomain implements canto_domain {
     }
 
     public boolean load(String domainPath, String filter, boolean recursive, Core sharedCore, SiteLoader.LoadOptions options) {
+        if (sharedCore == null && options.autoLoadCore) {
+            // overlay the core image shared by every site in the JVM rather
+            // than parsing and holding a private copy of the core
+            Core image = SiteLoader.getCoreImage();
+            if (image != null) {
+                sharedCore = new Core(image);
+                options = options.copy();
+                options.autoLoadCore = false;
+            }
+        }
         if (sharedCore == null) {
             sharedCore = new Core(true);
         }
@@ -242,6 +252,11 @@ public class CantoDomain implements canto_domain {
     }
 
     private synchronized boolean reload(SiteLoader loader, Core core) {
+        StartupProfiler profiler = StartupProfiler.getProfiler();
+        profiler.clear(domainName);
+        StartupProfiler.Phase reloadPhase = profiler.start(StartupProfiler.RELOAD, domainName, null);
+        ExternalDefinition.clearResolutionCache();
+        DependencyTracker.clearKeptInputs();
         loaded = false;
         loadError = false;
         defaultSite = null;
@@ -306,7 +321,9 @@ public class CantoDomain implements canto_domain {
             log("No data for site in cantopath.");
         }
 
+        StartupProfiler.Phase globalInitPhase = profiler.start(StartupProfiler.GLOBAL_INIT, domainName, null);
         globalInit();
+        profiler.stop(globalInitPhase);
         
         // initialize values used by the runtime system that are defined
         // by the site itself
@@ -330,14 +347,17 @@ public class CantoDomain implements canto_domain {
                     loadError = true;
                 }
             }
+            StartupProfiler.Phase initPhase = profiler.start(StartupProfiler.INIT, domainName, null);
             try {
                 init();
             } catch (Redirection r) {
                 log("Unable to initialize site: " + r.getMessage());
                 loadError = true;
             }
+            profiler.stop(initPhase);
         }
         
+        profiler.stop(reloadPhase, 0, core.getNumDefinitions());
         return !loadError;
     }
 
@@ -73,6 +73,7 @@ public class CantoServer extends HttpServlet implements CantoProcessor {
     private String port = null;
     private boolean initedOk = false;
     private String stateFileName = null;
+    private String startupReportFileName = null;
     private String logFileName = null;
     private boolean appendToLog = true;
     private PrintStream log = null;
@@ -204,6 +205,9 @@ public class CantoServer extends HttpServlet implements CantoProcessor {
             System.out.println("                               by the first site loaded.\n");
             System.out.println("-sf, --statefile <filename>    Instructs the server to write state intormation");
             System.out.println("                               to a file.\n");
+            System.out.println("-sr, --startupreport <filename> Instructs the server to write a JSON report of");
+            System.out.println("                               the time and memory spent in each phase of");
+            System.out.println("                               loading to a file.\n");
             System.out.println("-l, --log <path>               All output messages are logged in the specified");
             System.out.println("                               file.  The file is overwritten if it already");
             System.out.println("                               exists.\n");
@@ -331,6 +335,16 @@ public class CantoServer extends HttpServlet implements CantoProcessor {
                     i++;
                 }
 
+            } else if (arg.equals("--startupreport") || arg.equals("-sr")) {
+                if (noNextArg) {
+                    numProblems++;
+                    String msg = "startup report filename not provided";
+                    initParams.put("problem" + numProblems, msg);
+                } else {
+                    initParams.put("startupreport", nextArg);
+                    i++;
+                }
+
             } else if (arg.equals("--log") || arg.equals("-l")) {
                 if (noNextArg) {
                     numProblems++;
@@ -379,6 +393,10 @@ public class CantoServer extends HttpServlet implements CantoProcessor {
         return true;
     }
 
+    /** Creates and initializes a new server running in this JVM.  Unless the server
+     *  is configured with a custom core, its sites overlay the same frozen core
+     *  image as every other site in the JVM.
+     */
     private static CantoServerRunner launchServer(Map<String, String> params) {
         CantoServer server = new CantoServer(params);
         if (server.initedOk) {
@@ -445,6 +463,7 @@ public class CantoServer extends HttpServlet implements CantoProcessor {
         }
         
         stateFileName = initParams.get("statefile");
+        startupReportFileName = initParams.get("startupreport");
         
         logFileName = initParams.get("log");
         String appendLog = initParams.get("log.append");
@@ -608,10 +627,12 @@ public class CantoServer extends HttpServlet implements CantoProcessor {
         slog("             cantopath = " + cantoPath);
         slog("             recursive = " + recursive);
         slog("             state file = " + (stateFileName == null ? "(none)" : stateFileName));
+        slog("             startup report = " + (startupReportFileName == null ? "(none)" : startupReportFileName));
         slog("             log file = " + CantoLogger.getLogFile());
         slog("             multithreaded = " + multithreaded);
         slog("             autoloadcore = " + !customCore);
         slog("             sharecore = " + shareCore);
+        slog("             shared core image = " + (mainSite.getCore().getImage() != null));
         slog("             current directory = " + (new File(".")).getAbsolutePath());
         slog("             files_first = " + filesFirst);
         slog("             file_base = " + fileBase);
@@ -620,6 +641,14 @@ public class CantoServer extends HttpServlet implements CantoProcessor {
         slog("             verbosity = " + Integer.toString(CantoLogger.verbosity));
         slog("             debuggingEnabled = " + debuggingEnabled);
         slog("Site " + siteName + " launched at " + (new Date()).toString());
+
+        if (startupReportFileName != null) {
+            try {
+                StartupProfiler.getProfiler().writeReport(startupReportFileName);
+            } catch (IOException ioe) {
+                slog("Unable to write startup report to " + startupReportFileName + ": " + ioe);
+            }
+        }
     }
 
 
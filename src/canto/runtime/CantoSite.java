@@ -10,6 +10,7 @@ package canto.runtime;
 
 import java.io.*;
 import java.util.*;
+import java.sql.SQLException;
 
 import canto.lang.*;
 import canto.parser.CantoParserConstants;
@@ -128,6 +129,9 @@ public class CantoSite extends CantoDomain {
     
     void siteInit() {
         hasGeneralResponse = isDefined("general_response");
+        if (site != null) {
+            site.setParallelLoops(getBooleanProperty("parallel_loops"));
+        }
         List<? extends Object> exts = getPropertyList("ignore_extensions");
         if (exts != null && exts.size() > 0) {
             ignoreExtensions = new TreeSet<String>();
@@ -313,7 +317,43 @@ public class CantoSite extends CantoDomain {
     }
     
     
+    /** Responds to a request.  Database table writes made while responding
+     *  may be batched; they are sent to the database before a page is
+     *  written out, so a failure there produces the error page, and any
+     *  made after that are sent when the response is complete, in which
+     *  case a failure makes the request fail with a server error.
+     */
     public int respond(String pageName, Construction paramsArg, Construction requestArg, Construction sessionArg, Context context, PrintWriter out) throws Redirection {
+        WriteBatch.beginRequest();
+        boolean responded = false;
+        try {
+            int status = respondToRequest(pageName, paramsArg, requestArg, sessionArg, context, out);
+            responded = true;
+            if (!endRequest(pageName)) {
+                status = CantoServer.SERVER_ERROR;
+            }
+            return status;
+        } finally {
+            if (!responded) {
+                endRequest(pageName);
+            }
+        }
+    }
+
+    /** Sends any batched database writes made during the request.  Returns
+     *  false if they fail.
+     */
+    private boolean endRequest(String pageName) {
+        try {
+            WriteBatch.endRequest();
+            return true;
+        } catch (Exception e) {
+            log("Database writes for request " + pageName + " failed: " + e);
+            return false;
+        }
+    }
+
+    private int respondToRequest(String pageName, Construction paramsArg, Construction requestArg, Construction sessionArg, Context context, PrintWriter out) throws Redirection {
         ArgumentList[] argLists = getArgumentLists(paramsArg, requestArg, sessionArg);
         Instantiation page = getPageInstance(cleanForCanto(pageName), argLists, context);
         boolean respondWithPage = true;
@@ -338,6 +378,14 @@ public class CantoSite extends CantoDomain {
                 recordRequest("$stat", pageTracker);
                 printStatus(out);
 
+            } else if (pageName.equalsIgnoreCase("$startup")) {
+                recordRequest("$startup", pageTracker);
+                try {
+                    StartupProfiler.getProfiler().writeReport(out);
+                } catch (IOException ioe) {
+                    log("Unable to write startup report: " + ioe);
+                }
+
             } else if (pageName.equalsIgnoreCase("$source")) {
                 recordRequest("$source", pageTracker);
                 printSource(out);
@@ -489,6 +537,17 @@ public class CantoSite extends CantoDomain {
             }
             String str = getStringForData(pageData);
 
+            // send the database writes batched while generating the page
+            // before writing it, so if they fail the error page is sent
+            // instead of a page reporting writes that weren't made
+            try {
+                WriteBatch.flushRequest();
+            } catch (SQLException sqle) {
+                String message = "Database writes for page " + pageName + " failed: " + sqle.getMessage();
+                log(message);
+                throw new Redirection(Redirection.SERVER_ERROR_STATUS, Redirection.STANDARD_ERROR, message);
+            }
+
             // for server-to-server communications, we want to send the response exactly as
             // it has been constructed, so we make sure not to add a newline
             if (pageDef != null && pageDef.isSuperType("server_response")) {
@@ -688,6 +747,24 @@ public class CantoSite extends CantoDomain {
         out.println("Created " + Context.getNumHashMapsCreated() + " HashMaps.<br>");
         out.println("Created " + Context.getNumArrayListsCreated() + " ArrayLists, " + Context.getTotalListSize() + " total initial allocation.</p>");
 
+        List<ConnectionPool> pools = ConnectionPool.getPools();
+        if (pools.size() > 0) {
+            out.println("<h3>Database Connections</h3>");
+            out.println("<p><table border=\"1\" cellpadding=\"8\"><tr><th align=\"left\">Database</th><th align=\"left\">Connection Pool</th></tr>");
+            for (ConnectionPool pool: pools) {
+                out.println("<tr><td>" + pool.getUserName() + " at " + pool.getUrl() + "</td><td>" + pool.getStats() + "</td></tr>");
+            }
+            out.println("</table></p>");
+        }
+        List<QueryCache> queryCaches = QueryCache.getCaches();
+        if (queryCaches.size() > 0) {
+            out.println("<p><table border=\"1\" cellpadding=\"8\"><tr><th align=\"left\">Database</th><th align=\"left\">Query Cache</th></tr>");
+            for (QueryCache cache: queryCaches) {
+                out.println("<tr><td>" + cache.getUserName() + " at " + cache.getUrl() + "</td><td>" + cache.getStats() + "</td></tr>");
+            }
+            out.println("</table></p>");
+        }
+
         out.println("<h3>Input</h3>");
         out.println("<p>cantopath: " + cantoPath + "</p>");
 
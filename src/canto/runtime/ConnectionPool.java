@@ -0,0 +1,511 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * ConnectionPool.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.security.MessageDigest;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * A bounded pool of JDBC connections to one database, shared by all the
+ * Database objects with the same URL, user name and password.
+ *
+ * Connections are validated when they are borrowed, and connections that have
+ * been idle longer than the idle timeout are closed.  A connection whose
+ * result set was handed out to the caller (by <code>stream_query</code>)
+ * stays borrowed until the caller releases it, which happens when the
+ * results are read to the end.  Every connection goes back to the idle list
+ * through <code>release</code>, which undoes any transaction left open on
+ * it, so a connection is never lent out with autocommit turned off.  A
+ * connection that is still out after the leak timeout is reported as
+ * leaked, closed and dropped from the pool, so a result set that is never
+ * fully read does not tie up a connection forever.
+ *
+ * Each connection keeps a cache of the statements prepared on it, keyed by
+ * the SQL text and discarding the least recently used statement when full,
+ * so statements run repeatedly are only parsed and planned once per
+ * connection.  Cached statements belong to the connection and must not be
+ * closed by the caller.
+ *
+ * There is no housekeeping thread; idle eviction and leak detection are done
+ * whenever a connection is borrowed or returned.
+ */
+public class ConnectionPool {
+
+    /** Default maximum number of connections, idle and borrowed. */
+    public static final int DEFAULT_MAX_SIZE = 10;
+
+    /** Default number of seconds a connection may sit idle before it is closed. */
+    public static final int DEFAULT_IDLE_TIMEOUT = 300;
+
+    /** Default number of seconds a connection may be out before it is considered leaked. */
+    public static final int DEFAULT_LEAK_TIMEOUT = 600;
+
+    /** Number of seconds to wait for a connection when the pool is exhausted. */
+    private static final int BORROW_TIMEOUT = 30;
+
+    /** Number of seconds to wait for a connection to respond to validation. */
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    /** Number of seconds a connection may sit idle and still be lent out
+     *  without being validated first. */
+    private static final int VALIDATION_IDLE_TIME = 30;
+
+    /** Maximum number of prepared statements cached per connection. */
+    private static final int STATEMENT_CACHE_SIZE = 32;
+
+    private static Map<String, ConnectionPool> pools = new LinkedHashMap<String, ConnectionPool>();
+
+    /** Returns the pool for the passed URL, user and password, creating it if
+     *  necessary.  Databases that connect as the same user with different
+     *  passwords get different pools, so a connection opened with one
+     *  password is never lent to a database configured with another.
+     */
+    public static ConnectionPool getPool(String url, String user_name, String password) {
+        String key = user_name + '@' + url + '#' + hashPassword(password);
+        synchronized (pools) {
+            ConnectionPool pool = pools.get(key);
+            if (pool == null) {
+                pool = new ConnectionPool(url, user_name, password);
+                pools.put(key, pool);
+            }
+            return pool;
+        }
+    }
+
+    /** Returns a digest of the password for use in a pool key, so the key
+     *  doesn't hold the password itself.
+     */
+    private static String hashPassword(String password) {
+        if (password == null) {
+            return "";
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(password.getBytes("UTF-8"));
+            StringBuffer sb = new StringBuffer(bytes.length * 2);
+            for (int i = 0; i < bytes.length; i++) {
+                int b = bytes[i] & 0xFF;
+                if (b < 0x10) {
+                    sb.append('0');
+                }
+                sb.append(Integer.toHexString(b));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            // every JVM has SHA-256 and UTF-8, but fall back to the password
+            return password;
+        }
+    }
+
+    /** Returns all the pools that have been created. */
+    public static List<ConnectionPool> getPools() {
+        synchronized (pools) {
+            return new ArrayList<ConnectionPool>(pools.values());
+        }
+    }
+
+
+    /** A physical connection and its bookkeeping. */
+    private static class PooledConnection {
+        Connection connection;
+        long createdAt;
+        long lastUsed;
+        long borrowedAt;
+        String purpose;
+        ResultSet results;
+        StatementCache statements;
+
+        PooledConnection(Connection connection, long now) {
+            this.connection = connection;
+            createdAt = now;
+            lastUsed = now;
+        }
+    }
+
+    /** A least recently used cache of prepared statements.  Statements are
+     *  closed when they are dropped.
+     */
+    private static class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+        private static final long serialVersionUID = 1L;
+
+        StatementCache() {
+            super(16, 0.75f, true);
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() > STATEMENT_CACHE_SIZE) {
+                try {
+                    eldest.getValue().close();
+                } catch (SQLException sqle) {
+                    ;
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private String url;
+    private String user_name;
+    private String password;
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT * 1000L;
+    private long leakTimeout = DEFAULT_LEAK_TIMEOUT * 1000L;
+
+    /** idle connections, most recently returned first */
+    private LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+    private Map<Connection, PooledConnection> borrowed = new IdentityHashMap<Connection, PooledConnection>();
+
+    /** connections being opened, counted against the maximum size */
+    private int numOpening = 0;
+
+    private int numCreated = 0;
+    private int numBorrows = 0;
+    private int numWaits = 0;
+    private int numTimeouts = 0;
+    private int numEvicted = 0;
+    private int numInvalid = 0;
+    private int numLeaked = 0;
+    private int peakInUse = 0;
+    private int numStatementsPrepared = 0;
+    private int numStatementsReused = 0;
+
+    private ConnectionPool(String url, String user_name, String password) {
+        this.url = url;
+        this.user_name = user_name;
+        this.password = password;
+    }
+
+    /** Sets the maximum number of connections and the idle and leak timeouts,
+     *  in seconds.  Values less than one leave the setting unchanged.
+     */
+    public synchronized void configure(int max_size, int idle_timeout, int leak_timeout) {
+        if (max_size > 0) {
+            maxSize = max_size;
+        }
+        if (idle_timeout > 0) {
+            idleTimeout = idle_timeout * 1000L;
+        }
+        if (leak_timeout > 0) {
+            leakTimeout = leak_timeout * 1000L;
+        }
+        notifyAll();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUserName() {
+        return user_name;
+    }
+
+    /** Borrows a connection, waiting if the pool is exhausted.  The purpose
+     *  (usually the SQL to be run) is reported if the connection leaks.  A
+     *  connection that has been idle for more than VALIDATION_IDLE_TIME
+     *  seconds is validated before it is lent out.
+     */
+    public Connection borrow(String purpose) throws SQLException {
+        long deadline = System.currentTimeMillis() + BORROW_TIMEOUT * 1000L;
+        while (true) {
+            PooledConnection pc = null;
+            synchronized (this) {
+                while (true) {
+                    long now = System.currentTimeMillis();
+                    housekeep(now);
+                    if (!idle.isEmpty()) {
+                        pc = idle.removeFirst();
+                        break;
+                    } else if (borrowed.size() + numOpening < maxSize) {
+                        numOpening++;
+                        break;
+                    } else if (now >= deadline) {
+                        numTimeouts++;
+                        throw new SQLException("Timed out waiting for a connection to " + url + " (" + maxSize + " in use)");
+                    }
+                    numWaits++;
+                    try {
+                        wait(Math.min(deadline - now, 1000L));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted waiting for a connection to " + url);
+                    }
+                }
+            }
+
+            if (pc == null) {
+                Connection connection = null;
+                try {
+                    connection = DriverManager.getConnection(url, user_name, password);
+                } finally {
+                    synchronized (this) {
+                        numOpening--;
+                        if (connection == null) {
+                            notifyAll();
+                        }
+                    }
+                }
+                if (connection == null) {
+                    throw new SQLException("Unable to connect to " + url);
+                }
+                synchronized (this) {
+                    numCreated++;
+                    pc = new PooledConnection(connection, System.currentTimeMillis());
+                    checkOut(pc, purpose);
+                }
+                return connection;
+
+            } else if (System.currentTimeMillis() - pc.lastUsed < VALIDATION_IDLE_TIME * 1000L || isValid(pc.connection)) {
+                synchronized (this) {
+                    checkOut(pc, purpose);
+                }
+                return pc.connection;
+
+            } else {
+                closeQuietly(pc.connection);
+                synchronized (this) {
+                    numInvalid++;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void checkOut(PooledConnection pc, String purpose) {
+        pc.borrowedAt = System.currentTimeMillis();
+        pc.purpose = purpose;
+        pc.results = null;
+        borrowed.put(pc.connection, pc);
+        numBorrows++;
+        if (borrowed.size() > peakInUse) {
+            peakInUse = borrowed.size();
+        }
+    }
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException sqle) {
+            return false;
+        }
+    }
+
+    /** Returns a borrowed connection to the pool. */
+    public void release(Connection connection) {
+        release(connection, null);
+    }
+
+    /** Closes a result set read from a borrowed connection and returns the
+     *  connection to the pool.  Closing the results here rather than before
+     *  the call keeps the connection from being reclaimed, and perhaps
+     *  borrowed by someone else, in between.
+     */
+    public void release(Connection connection, ResultSet results) {
+        if (connection == null) {
+            return;
+        }
+        PooledConnection pc;
+        synchronized (this) {
+            pc = borrowed.remove(connection);
+            if (pc == null) {
+                // already returned
+                for (PooledConnection idlePc: idle) {
+                    if (idlePc.connection == connection) {
+                        return;
+                    }
+                }
+            }
+        }
+        if (results != null) {
+            try {
+                results.close();
+            } catch (SQLException sqle) {
+                ;
+            }
+        }
+        if (pc == null) {
+            // not ours, or already reclaimed as a leak
+            closeQuietly(connection);
+            return;
+        }
+        boolean reusable = reset(connection);
+        synchronized (this) {
+            if (reusable) {
+                pc.lastUsed = System.currentTimeMillis();
+                pc.purpose = null;
+                pc.results = null;
+                idle.addFirst(pc);
+            } else {
+                numInvalid++;
+            }
+            notifyAll();
+        }
+        if (!reusable) {
+            closeQuietly(connection);
+        }
+    }
+
+    /** Returns a prepared statement for the passed SQL on a borrowed
+     *  connection, from the connection's statement cache if it has been
+     *  prepared before.  The statement's parameters are cleared.  The
+     *  statement must not be closed, and is only valid until the connection
+     *  is returned.
+     */
+    public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        return prepareStatement(connection, sql, ResultSet.TYPE_FORWARD_ONLY);
+    }
+
+    public PreparedStatement prepareStatement(Connection connection, String sql, int resultSetType) throws SQLException {
+        PooledConnection pc;
+        synchronized (this) {
+            pc = borrowed.get(connection);
+        }
+        if (pc == null) {
+            throw new SQLException("Connection to " + url + " is not borrowed from the pool");
+        }
+
+        // the borrower has the connection to itself, so the cache needs no locking
+        String key = (resultSetType == ResultSet.TYPE_FORWARD_ONLY ? sql : resultSetType + ":" + sql);
+        if (pc.statements == null) {
+            pc.statements = new StatementCache();
+        }
+        PreparedStatement s = pc.statements.get(key);
+        if (s != null && !s.isClosed()) {
+            s.clearParameters();
+            synchronized (this) {
+                numStatementsReused++;
+            }
+            return s;
+        }
+        s = connection.prepareStatement(sql, resultSetType, ResultSet.CONCUR_READ_ONLY);
+        pc.statements.put(key, s);
+        synchronized (this) {
+            numStatementsPrepared++;
+        }
+        return s;
+    }
+
+    /** Notes that the passed result set, read from a borrowed connection, has
+     *  been handed out.  The connection stays borrowed until it is released;
+     *  if it leaks, the result set is closed along with it.
+     */
+    public synchronized void attachResults(Connection connection, ResultSet results) {
+        PooledConnection pc = borrowed.get(connection);
+        if (pc != null) {
+            pc.results = results;
+        }
+    }
+
+    /** Undoes any transaction left open on a connection being returned.
+     *  Returns false if the connection is not fit for reuse.
+     */
+    private static boolean reset(Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException sqle) {
+            return false;
+        }
+    }
+
+    /** Closes connections that have been idle too long and drops leaked
+     *  connections.  Connections whose result sets have been closed are
+     *  left for their borrowers to release, since only release resets them.
+     */
+    private void housekeep(long now) {
+        Iterator<PooledConnection> it = idle.iterator();
+        while (it.hasNext()) {
+            PooledConnection pc = it.next();
+            if (now - pc.lastUsed > idleTimeout) {
+                it.remove();
+                numEvicted++;
+                closeQuietly(pc.connection);
+            }
+        }
+
+        if (borrowed.isEmpty()) {
+            return;
+        }
+        it = borrowed.values().iterator();
+        while (it.hasNext()) {
+            PooledConnection pc = it.next();
+            if (now - pc.borrowedAt > leakTimeout) {
+                it.remove();
+                numLeaked++;
+                System.out.println("Connection to " + url + " leaked: "
+                                   + (pc.results != null && !isClosed(pc.results) ? "results not fully read" : "not returned")
+                                   + " after " + ((now - pc.borrowedAt) / 1000) + " seconds"
+                                   + (pc.purpose != null ? " (sql = \"" + pc.purpose + "\")" : ""));
+                if (pc.results != null) {
+                    try {
+                        pc.results.close();
+                    } catch (SQLException sqle) {
+                        ;
+                    }
+                }
+                closeQuietly(pc.connection);
+            }
+        }
+    }
+
+    private static boolean isClosed(ResultSet results) {
+        try {
+            return results.isClosed();
+        } catch (SQLException sqle) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException sqle) {
+            ;
+        }
+    }
+
+    /** Closes all idle connections.  Borrowed connections are closed when
+     *  they are returned.
+     */
+    public synchronized void closeIdle() {
+        while (!idle.isEmpty()) {
+            closeQuietly(idle.removeFirst().connection);
+        }
+    }
+
+    public synchronized int getNumIdle() {
+        return idle.size();
+    }
+
+    public synchronized int getNumInUse() {
+        return borrowed.size();
+    }
+
+    /** Returns a one-line summary of the pool's settings and statistics. */
+    public synchronized String getStats() {
+        housekeep(System.currentTimeMillis());
+        return "max " + maxSize + ", in use " + borrowed.size() + " (peak " + peakInUse + "), idle " + idle.size()
+               + "; " + numCreated + " opened, " + numBorrows + " borrowed, " + numWaits + " waits, "
+               + numTimeouts + " timeouts, " + numEvicted + " evicted idle, " + numInvalid + " invalid, "
+               + numLeaked + " leaked; " + numStatementsPrepared + " statements prepared, "
+               + numStatementsReused + " reused";
+    }
+
+    public String toString() {
+        return user_name + " at " + url + ": " + getStats();
+    }
+}
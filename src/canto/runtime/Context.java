@@ -10,6 +10,7 @@ package canto.runtime;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import canto.lang.*;
 
@@ -239,13 +240,13 @@ public class Context {
 
 
     
-    private static int instanceCount = 0;
+    private static AtomicInteger instanceCount = new AtomicInteger();
     public static int getNumContextsCreated() {
-        return instanceCount;
+        return instanceCount.get();
     }
-    private static int numClonedContexts = 0;
+    private static AtomicInteger numClonedContexts = new AtomicInteger();
     public static int getNumClonedContexts() {
-        return numClonedContexts;
+        return numClonedContexts.get();
     }
 
     // -------------------------------------------
@@ -283,7 +284,7 @@ public class Context {
 
     /** Constructs a context beginning with the specified definition */
     public Context(Site site) throws Redirection {
-        instanceCount++;
+        instanceCount.incrementAndGet();
         rootContext = this;
         stateFactory = new StateFactory();
         stateCount = stateFactory.lastState();
@@ -312,7 +313,7 @@ public class Context {
     /** Constructs a context which is a copy of the passed context.
      */
     public Context(Context context, boolean clearKeep) {
-        instanceCount++;
+        instanceCount.incrementAndGet();
         copy(context, clearKeep);
     }
 
@@ -974,7 +975,8 @@ if (definition.getName().equals("add")) {
                 }
             }
     
-            if (data instanceof Value) {
+            // a pending value is left for the caller to join when it's used
+            if (data instanceof Value && !(data instanceof PendingValue)) {
                 data = ((Value) data).getValue();
 
             } else if (data instanceof AbstractNode) {
@@ -1007,6 +1009,8 @@ if (definition.getName().equals("add")) {
         } catch (Throwable t) {
             if (catchBlock != null && catchBlock.getCatchIdentifier() == null) {
                 return catchBlock.getData(this);
+            } else if (t instanceof PendingValue.FailureException) {
+                throw ((PendingValue.FailureException) t).getRedirection();
             } else {
                 String className = t.getClass().getName();
                 String message = t.getMessage();
@@ -1043,10 +1047,46 @@ if (definition.getName().equals("add")) {
     }
 
 
+    /** Text for a construction whose value was still pending when it was
+     *  reached, to be inserted at the recorded offset once the rest of the
+     *  constructions are done.
+     */
+    private static class PendingText {
+        int offset;
+        AbstractConstruction construction;
+        PendingValue value;
+
+        PendingText(int offset, AbstractConstruction construction, PendingValue value) {
+            this.offset = offset;
+            this.construction = construction;
+            this.value = value;
+        }
+    }
+
+    /** Waits for the pending values and inserts their text, last first so
+     *  that the earlier offsets stay valid.
+     */
+    private void fillPendingTexts(StringBuffer sb, List<PendingText> pendingTexts) throws Redirection {
+        for (int i = pendingTexts.size() - 1; i >= 0; i--) {
+            PendingText pending = pendingTexts.get(i);
+            String str;
+            if (pending.construction != null) {
+                str = pending.construction.getTextForData(this, pending.value);
+            } else {
+                str = PrimitiveValue.getStringFor(pending.value.join());
+            }
+            if (str != null && str.length() > 0) {
+                sb.insert(pending.offset, str);
+            }
+        }
+        pendingTexts.clear();
+    }
+
     public Object construct(List<Construction> constructions) throws Redirection {
         Object data = null;
         if (constructions != null) {
             StringBuffer sb = null;
+            List<PendingText> pendingTexts = null;
             try {
                 int n = constructions.size();
                 for (int i = 0; i < n; i++) {
@@ -1102,7 +1142,9 @@ if (definition.getName().equals("add")) {
                             data = object;
                         }
                 
-                        if (data instanceof Value) {
+                        // leave a pending value pending; it's joined when the
+                        // text is assembled, or by whoever uses the result
+                        if (data instanceof Value && !(data instanceof PendingValue)) {
                             data = ((Value) data).getValue();
                         } else if (data instanceof AbstractNode) {
                             if (instantiatedDef != null) {
@@ -1114,6 +1156,7 @@ if (definition.getName().equals("add")) {
 
                     } else {
                         String str = null;
+                        PendingValue pendingValue = null;
                         if (object instanceof SubStatement) {
                             NamedDefinition sub = getSubdefinition();
                             if (sub != null) {
@@ -1160,6 +1203,13 @@ if (definition.getName().equals("add")) {
                             if (!object.equals(NullValue.NULL_VALUE)) {
                                 str = ((Value) object).getString();
                             }
+                        } else if (object instanceof Instantiation) {
+                            Object text = ((Instantiation) object).getTextOrPending(this);
+                            if (text instanceof PendingValue) {
+                                pendingValue = (PendingValue) text;
+                            } else {
+                                str = (String) text;
+                            }
                         } else if (object instanceof Chunk) {
                             str = ((Chunk) object).getText(this);
                         } else if (object instanceof ValueGenerator) {
@@ -1167,12 +1217,25 @@ if (definition.getName().equals("add")) {
                         } else if (object != null) {
                             str = object.toString();
                         }
-                        if (str != null && str.length() > 0) {
+                        if (pendingValue != null || (str != null && str.length() > 0)) {
                             if (sb == null) {
-                                sb = new StringBuffer(PrimitiveValue.getStringFor(data));
+                                if (data instanceof PendingValue) {
+                                    sb = new StringBuffer();
+                                    pendingTexts = new ArrayList<PendingText>(4);
+                                    pendingTexts.add(new PendingText(0, null, (PendingValue) data));
+                                } else {
+                                    sb = new StringBuffer(PrimitiveValue.getStringFor(data));
+                                }
                                 data = sb;
                             }
-                            sb.append(str);
+                            if (pendingValue != null) {
+                                if (pendingTexts == null) {
+                                    pendingTexts = new ArrayList<PendingText>(4);
+                                }
+                                pendingTexts.add(new PendingText(sb.length(), (Instantiation) object, pendingValue));
+                            } else {
+                                sb.append(str);
+                            }
                         }
                     }
                 }
@@ -1180,6 +1243,9 @@ if (definition.getName().equals("add")) {
             } catch (ScriptExit se) {
                 String textOut = null;
                 if (sb != null) {
+                    if (pendingTexts != null) {
+                        fillPendingTexts(sb, pendingTexts);
+                    }
                     textOut = sb.toString();
                 } else if (data != null) {
                     textOut = data.toString();
@@ -1191,6 +1257,9 @@ if (definition.getName().equals("add")) {
             }
 
             if (sb != null && data == sb) {
+                if (pendingTexts != null) {
+                    fillPendingTexts(sb, pendingTexts);
+                }
                 data = sb.toString();
             }
         }
@@ -2036,7 +2105,7 @@ if (name.equals("i")) {
                             }
                     
                         } else if (arg instanceof PrimitiveValue) {
-                            data = arg; //((PrimitiveValue) arg).getValue();
+                            data = ((PrimitiveValue) arg).detach();
                     
                         } else if (arg instanceof Expression) {
                             data = ((ValueGenerator) arg).getData(this);
@@ -3035,10 +3104,6 @@ if (name.equals("i")) {
             }
         }
 
-        // dereference collections represented as CantoArray objects
-        if (data instanceof CantoArray) {
-            data = ((CantoArray) data).getArrayObject();
-        }
         Iterator<Index> it = indexes.iterator();
         while (it.hasNext() && data != null) {
             Index index = it.next();
@@ -3067,6 +3132,21 @@ if (name.equals("i")) {
         }
 
         if (collection instanceof CantoArray) {
+            // read numeric indexes straight from the array rather than
+            // through a copy of its elements
+            if (index.isNumericIndex(this)) {
+                data = ((CantoArray) collection).get(index.getIndexValue(this).getInt());
+                if (data instanceof CollectionInstance) {
+                    data = ((CollectionInstance) data).getCollectionObject();
+                }
+                while (data instanceof Holder) {
+                    data = ((Holder) data).data;
+                }
+                if (data instanceof ElementDefinition) {
+                    data = ((ElementDefinition) data).getElement();
+                }
+                return data;
+            }
             collection = ((CantoArray) collection).getArrayObject();
         }
 
@@ -3713,6 +3793,7 @@ if (name.equals("i")) {
         if (entry.def == null) {
             throw new NullPointerException("attempt to push null definition on context");
         }
+        DependencyTracker.definitionUsed(entry.def);
 
         if (size >= maxSize) {
             throw new RuntimeException("blown context");
@@ -4160,13 +4241,13 @@ if (unpushedEntries == null) {
 
     public Object clone() {
         Context context = new Context(this, false);
-        numClonedContexts++;
+        numClonedContexts.incrementAndGet();
         return context;
     }
     
     public Context clone(boolean clearKeep) {
         Context context = new Context(this, clearKeep);
-        numClonedContexts++;
+        numClonedContexts.incrementAndGet();
         return context;
     }
   
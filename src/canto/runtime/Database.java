@@ -15,6 +15,8 @@ import java.util.Date;
 import canto.lang.*;
 
 import java.sql.*;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 
 /**
  * Supports basic database access by Canto code.
@@ -47,6 +49,25 @@ public class Database {
      */
     private String password = null;
 
+    /** The pool supplying connections, obtained on first use.
+     */
+    private ConnectionPool pool = null;
+
+    /** The number of rows fetched at a time by streaming queries.
+     */
+    private int fetch_size = DEFAULT_FETCH_SIZE;
+
+    /** The cache of query results, obtained on first use.
+     */
+    private QueryCache queryCache = null;
+
+    /** The number of table writes to collect before sending them to the
+     *  database, or zero if writes are not batched.
+     */
+    private int batch_size = 0;
+
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
     public Database(String driver, String url, String user_name, String password) throws Redirection {
         if (driver == null || driver.length() == 0) {
             throw new Redirection(Redirection.STANDARD_ERROR, "No database driver specified");
@@ -66,9 +87,9 @@ public class Database {
     public boolean checkConnection() {
         System.out.println("Checking connection to " + user_name + " at " + url + " on " + (new Date()).toString());
         try {
-            Connection connection = DriverManager.getConnection(url, user_name, password);
+            Connection connection = getPool().borrow(null);
             if (connection != null) {
-                connection.close();
+                releaseConnection(connection);
                 return true;
             }
         } catch (Exception e) {
@@ -77,17 +98,69 @@ public class Database {
         return false;
     }
 
+    /** Returns the pool supplying connections to this database.  Pools are
+     *  shared by all Database objects with the same URL and user name.
+     */
+    public ConnectionPool getPool() {
+        if (pool == null) {
+            pool = ConnectionPool.getPool(url, user_name, password);
+        }
+        return pool;
+    }
+
+    /** Sets the maximum number of pooled connections, the number of seconds
+     *  an idle connection is kept open and the number of seconds a connection
+     *  may be out before it is reported as leaked and closed.  Values less
+     *  than one leave the setting unchanged.
+     */
+    public void configure_pool(int max_size, int idle_timeout, int leak_timeout) {
+        getPool().configure(max_size, idle_timeout, leak_timeout);
+    }
+
+    /** Sets the number of rows a streaming query fetches from the database
+     *  at a time.
+     */
+    public void set_fetch_size(int fetch_size) {
+        if (fetch_size > 0) {
+            this.fetch_size = fetch_size;
+        }
+    }
+
+    public String pool_stats() {
+        return getPool().getStats();
+    }
+
+    /** Borrows a connection from the pool.  The connection must be returned
+     *  by calling releaseConnection rather than closing it.
+     */
     public Connection getConnection() {
+        return getConnection(null);
+    }
+
+    Connection getConnection(String sql) {
         Connection connection = null;
         try {
-            System.out.println("Connecting to " + user_name + " at " + url + " on " + (new Date()).toString());
-            connection = DriverManager.getConnection(url, user_name, password);
+            connection = getPool().borrow(sql);
         } catch (Exception e) {
             System.out.println("Error connecting to db: " + e);
         }
         return connection;
     }
 
+    /** Returns a connection obtained from getConnection to the pool. */
+    public void releaseConnection(Connection connection) {
+        getPool().release(connection);
+    }
+
+    /** Reads results into a disconnected result set, which holds no
+     *  connection and needs no closing.
+     */
+    private static ResultSet detach(ResultSet results) throws SQLException {
+        CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.populate(results);
+        return rows;
+    }
+
     public boolean init() {
         if (driver_initialized) {
             return true;
@@ -445,67 +518,234 @@ public class Database {
     }
         
     public int int_query(String sql) throws Redirection {
+        flushPendingWrites();
         int value = 0;
-        Connection connection = null;
         try {
-            System.out.println("Connecting to " + user_name + " at " + url + " for query on " + (new Date()).toString());
-            connection = DriverManager.getConnection(url, user_name, password);
-            if (connection == null) {
-                throw new RuntimeException("unable to connect to database");
-            }
-            Statement s = connection.createStatement();
-            sql = sql.trim();
-            if (sql.endsWith(";")) {
-                sql = sql.substring(0, sql.length() - 1);
+            Object obj = readFirstValue(sql, true);
+            if (obj != null) {
+                value = ((Integer) obj).intValue();
             }
-            System.out.println("    ...int_query: " + sql);
-            ResultSet results = s.executeQuery(sql);
-            if (results.next()) {
-                value = results.getInt(1);
-            }
-            connection.close();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception querying database (sql = \"" + sql + "\": " + e);
-        } finally {
-            System.out.println("Query completed on " + (new Date()).toString());
         }
         
         return value;
     }
     
     public String str_query(String sql) throws Redirection {
+        flushPendingWrites();
         String str = null;
+        try {
+            str = (String) readFirstValue(sql, false);
+        } catch (RuntimeException re) {
+            throw re;
+        } catch (Exception e) {
+            System.out.println("Exception querying database (sql = \"" + sql + "\": " + e);
+        }
+        
+        return str;
+    }
+
+    /** Runs a query and returns the first column of the first row, as an
+     *  Integer or a String, or null if the query returns no rows.
+     */
+    private Object readFirstValue(String sql, boolean asInt) throws SQLException {
+        Object value = null;
         Connection connection = null;
         try {
             System.out.println("Connecting to " + user_name + " at " + url + " for query on " + (new Date()).toString());
-            connection = DriverManager.getConnection(url, user_name, password);
-            if (connection == null) {
-                throw new RuntimeException("unable to connect to database");
-            }
+            sql = trimSql(sql);
+            connection = getPool().borrow(sql);
             Statement s = connection.createStatement();
-            sql = sql.trim();
-            if (sql.endsWith(";")) {
-                sql = sql.substring(0, sql.length() - 1);
-            }
-            System.out.println("    ...str_query: " + sql);
+            System.out.println("    ..." + (asInt ? "int_query: " : "str_query: ") + sql);
             ResultSet results = s.executeQuery(sql);
             if (results.next()) {
-                str = results.getString(1);
+                if (asInt) {
+                    value = Integer.valueOf(results.getInt(1));
+                } else {
+                    value = results.getString(1);
+                }
             }
-            connection.close();
-        } catch (RuntimeException re) {
-            throw re;
-        } catch (Exception e) {
-            System.out.println("Exception querying database (sql = \"" + sql + "\": " + e);
+            s.close();
         } finally {
+            releaseConnection(connection);
             System.out.println("Query completed on " + (new Date()).toString());
         }
-        
-        return str;
+        return value;
     }
-    
+
+    private static String trimSql(String sql) {
+        sql = sql.trim();
+        if (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1);
+        }
+        return sql;
+    }
+
+    /** Returns the cache of query results shared by all Database objects
+     *  with the same URL and user name.
+     */
+    QueryCache getQueryCache() {
+        if (queryCache == null) {
+            queryCache = QueryCache.getCache(url, user_name);
+        }
+        return queryCache;
+    }
+
+    /** Sets the amount of memory, in kilobytes, the cache of query results
+     *  may use.  Results are only cached if this is greater than zero.
+     */
+    public void configure_query_cache(int budget_kb) {
+        getQueryCache().setBudget(budget_kb * 1024L);
+    }
+
+    /** Sets the number of writes to a table (via a RecordCollection) to
+     *  collect during a request before sending them to the database in one
+     *  transaction.  Writes still pending when the request ends are sent
+     *  then.  If batch_size is zero, writes are made immediately.
+     */
+    public void configure_batching(int batch_size) {
+        this.batch_size = Math.max(batch_size, 0);
+    }
+
+    /** Returns the batch collecting this database's table writes for the
+     *  current request, or null if writes are not being batched.  If writes
+     *  are batched but this thread isn't handling a request, as on a
+     *  parallel loop worker, the writes pending in requests in progress are
+     *  flushed, so the write about to be made directly comes after them.
+     */
+    WriteBatch getWriteBatch() {
+        if (batch_size <= 0) {
+            return null;
+        }
+        WriteBatch batch = WriteBatch.getBatch(getPool(), batch_size, getQueryCache());
+        if (batch == null) {
+            try {
+                WriteBatch.flushOpenBatches(getPool());
+            } catch (SQLException sqle) {
+                throw new RuntimeException("Pending database writes failed: " + sqle.getMessage(), sqle);
+            }
+        }
+        return batch;
+    }
+
+    /** Runs the writes to this database still pending in the current
+     *  request's batch, so that a statement run directly comes after them
+     *  and a query sees them.
+     */
+    void flushPendingWrites() throws Redirection {
+        try {
+            WriteBatch.flushPending(getPool());
+        } catch (SQLException sqle) {
+            throw new Redirection(Redirection.STANDARD_ERROR, "Pending database writes failed: " + sqle.getMessage());
+        }
+    }
+
+    public String query_cache_stats() {
+        return getQueryCache().getStats();
+    }
+
+    /** Like int_query, but the result is cached for ttl seconds if the query
+     *  cache is enabled.
+     */
+    public int cached_int_query(String sql, int ttl) throws Redirection {
+        Object value = cachedFirstValue(sql, ttl, true);
+        return (value == null ? 0 : ((Integer) value).intValue());
+    }
+
+    /** Like str_query, but the result is cached for ttl seconds if the query
+     *  cache is enabled.
+     */
+    public String cached_str_query(String sql, int ttl) throws Redirection {
+        return (String) cachedFirstValue(sql, ttl, false);
+    }
+
+    private Object cachedFirstValue(String sql, int ttl, boolean asInt) throws Redirection {
+        flushPendingWrites();
+        QueryCache cache = getQueryCache();
+        if (ttl <= 0 || !cache.isEnabled()) {
+            return (asInt ? Integer.valueOf(int_query(sql)) : str_query(sql));
+        }
+        sql = trimSql(sql);
+        String key = (asInt ? "int:" : "str:") + sql;
+        Object value = cache.get(key);
+        if (value == null) {
+            long generation = cache.getGeneration();
+            try {
+                value = readFirstValue(sql, asInt);
+            } catch (SQLException sqle) {
+                System.out.println("Exception querying database (sql = \"" + sql + "\": " + sqle);
+                return (asInt ? Integer.valueOf(0) : null);
+            }
+            if (value != null) {
+                cache.put(key, sql, value, ttl, generation, QueryCache.estimateSize(value));
+            }
+        }
+        return value;
+    }
+
+    /** Like query, but the results are cached for ttl seconds if the query
+     *  cache is enabled.  Cached results are read-only and shared by all
+     *  the callers making the same query.
+     */
+    public CantoArray cached_query(String sql, int ttl) throws Redirection {
+        return cached_query(sql, null, ttl);
+    }
+
+    public CantoArray cached_query(String sql, Object[] fields, int ttl) throws Redirection {
+        flushPendingWrites();
+        QueryCache cache = getQueryCache();
+        if (ttl <= 0 || !cache.isEnabled()) {
+            return query(sql, fields);
+        }
+        if (sql == null) {
+            throw new Redirection(Redirection.STANDARD_ERROR, "SQL string is empty.");
+        }
+        sql = trimSql(sql);
+        String key = QueryCache.getKey(sql, fields);
+        CompactRow[] rows = (CompactRow[]) cache.get(key);
+        if (rows == null) {
+            long generation = cache.getGeneration();
+            Connection connection = null;
+            ResultSet results = null;
+            try {
+                connection = getPool().borrow(sql);
+                PreparedStatement s = getPool().prepareStatement(connection, sql);
+                if (fields != null) {
+                    for (int i = 0; i < fields.length; i++) {
+                        s.setObject(i + 1, fields[i]);
+                    }
+                }
+                System.out.println("    ...cached_query: " + sql);
+                results = s.executeQuery();
+
+                RowSchema schema = RowSchema.forResultSet(results);
+                int numCols = schema.size();
+                long bytes = 0;
+                List<CompactRow> rowList = new ArrayList<CompactRow>();
+                while (results.next()) {
+                    Object[] values = new Object[numCols];
+                    for (int i = 0; i < numCols; i++) {
+                        values[i] = Record.readLob(results.getObject(i + 1));
+                        bytes += QueryCache.estimateSize(values[i]);
+                    }
+                    bytes += 32 + numCols * 8;
+                    rowList.add(new CompactRow(schema, values));
+                }
+                rows = rowList.toArray(new CompactRow[rowList.size()]);
+                cache.put(key, sql, rows, ttl, generation, bytes);
+
+            } catch (Exception e) {
+                throw new Redirection(Redirection.STANDARD_ERROR, e.toString());
+            } finally {
+                getPool().release(connection, results);
+            }
+        }
+        return new CachedResultArray(rows);
+    }
+
     public CantoArray query(String sql, Object[] fields) throws Redirection {
         try {
             return new ResultArray(execute_query(sql, fields));
@@ -532,10 +772,71 @@ public class Database {
     }
 
 
+    /** Runs a query whose results are streamed rather than read into memory,
+     *  for loops over large results.  The rows can only be iterated once, and
+     *  the iterator presents every row through the same object.
+     */
+    public CantoArray stream_query(String sql) throws Redirection {
+        return stream_query(sql, null, null);
+    }
+
+    /** Runs a streaming query, taking the number of rows, if the array is
+     *  asked for it, from the passed count query.
+     */
+    public CantoArray stream_query(String sql, String count_sql) throws Redirection {
+        return stream_query(sql, null, count_sql);
+    }
+
+    public CantoArray stream_query(String sql, Object[] fields, String count_sql) throws Redirection {
+        flushPendingWrites();
+        ResultArray resultArray = null;
+        Connection connection = null;
+        if (sql == null) {
+            throw new Redirection(Redirection.STANDARD_ERROR, "SQL string is empty.");
+        }
+        sql = sql.trim();
+        if (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1);
+        }
+        try {
+            connection = getPool().borrow(sql);
+
+            // some drivers (PostgreSQL, for one) only fetch in batches inside a
+            // transaction; the pool restores autocommit when the connection
+            // comes back
+            connection.setAutoCommit(false);
+
+            PreparedStatement s = getPool().prepareStatement(connection, sql, ResultSet.TYPE_FORWARD_ONLY);
+            s.setFetchSize(fetch_size);
+            if (fields != null) {
+                for (int i = 0; i < fields.length; i++) {
+                    s.setObject(i + 1, fields[i]);
+                }
+            }
+            System.out.println("    ...stream_query: " + sql);
+            ResultSet results = s.executeQuery();
+            getPool().attachResults(connection, results);
+            resultArray = new ResultArray(results, this, connection, count_sql);
+
+        } catch (Exception e) {
+            throw new Redirection(Redirection.STANDARD_ERROR, e.toString());
+        } finally {
+            if (connection != null && resultArray == null) {
+                releaseConnection(connection);
+            }
+        }
+        return resultArray;
+    }
+
+    /** Runs a query and returns its results.  The results are read into a
+     *  disconnected result set before the connection goes back to the pool,
+     *  since the caller may never close them.
+     */
     public ResultSet execute_query(String sql, Object[] fields) throws Redirection {
+        flushPendingWrites();
         ResultSet results = null;
+        ResultSet rawResults = null;
         Connection connection = null;
-        //ConnectedResultSet connectedResults = null;
         if (sql == null) {
         	throw new Redirection(Redirection.STANDARD_ERROR, "SQL string is empty.");
        
@@ -547,89 +848,71 @@ public class Database {
         }
         try {
             System.out.println("Connecting to " + user_name + " at " + url + " for query on " + (new Date()).toString());
-            connection = DriverManager.getConnection(url, user_name, password);
-            if (connection != null) {
-                PreparedStatement s = connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+            connection = getPool().borrow(sql);
+            PreparedStatement s = getPool().prepareStatement(connection, sql, ResultSet.TYPE_SCROLL_INSENSITIVE);
 
-                if (fields != null) {
-                    for (int i = 0; i < fields.length; i++) {
-                        s.setObject(i + 1, fields[i]);
-                    }
+            if (fields != null) {
+                for (int i = 0; i < fields.length; i++) {
+                    s.setObject(i + 1, fields[i]);
                 }
-                System.out.println("    ...execute_query: " + sql);
-                results = s.executeQuery();
-                //connectedResults = new ConnectedResultSet(connection, results);
             }
+            System.out.println("    ...execute_query: " + sql);
+            rawResults = s.executeQuery();
+            results = detach(rawResults);
+
         } catch (Exception e) {
             throw new Redirection(Redirection.STANDARD_ERROR, e.toString());
         } finally {
-            if (connection != null && results == null) { // connectedResults == null) {
-                try {
-                    connection.close();
-                } catch (SQLException sqle) {
-                    ;
-                }
-            }
+            getPool().release(connection, rawResults);
             System.out.println("Query completed on " + (new Date()).toString());
         }
         return results;
     }
 
     public int execute_update(String sql, Object[] fields) throws Redirection {
+        flushPendingWrites();
         int results = -1;
         Connection connection = null;
         try {
             System.out.println("Connecting to " + user_name + " at " + url + " for update on " + (new Date()).toString());
-            connection = DriverManager.getConnection(url, user_name, password);
-            if (connection != null) {
-                sql = sql.trim();
-                if (sql.endsWith(";")) {
-                    sql = sql.substring(0, sql.length() - 1);
-                }
-                PreparedStatement s = connection.prepareStatement(sql);
-                for (int i = 0; i < fields.length; i++) {
-                    s.setObject(i + 1, fields[i]);
-                }
-                results = s.executeUpdate();
+            sql = sql.trim();
+            if (sql.endsWith(";")) {
+                sql = sql.substring(0, sql.length() - 1);
             }
+            connection = getPool().borrow(sql);
+            PreparedStatement s = getPool().prepareStatement(connection, sql);
+            for (int i = 0; i < fields.length; i++) {
+                s.setObject(i + 1, fields[i]);
+            }
+            results = s.executeUpdate();
         } catch (Exception e) {
             throw new Redirection(Redirection.STANDARD_ERROR, e.toString());
         } finally {
-            if (connection != null) {
-                try {
-                    connection.close();
-                } catch (SQLException sqle) {
-                    ;
-                }
-            }
+            releaseConnection(connection);
+            getQueryCache().invalidate(sql);
         }
         return results;
     }
 
     public int execute(String sql) throws Redirection {
+        flushPendingWrites();
         int results = -1;
         Connection connection = null;
         try {
             System.out.println("Connecting to " + user_name + " at " + url + " for execute on " + (new Date()).toString());
-            connection = DriverManager.getConnection(url, user_name, password);
-            if (connection != null) {
-                Statement s = connection.createStatement();
-                sql = sql.trim();
-                if (sql.endsWith(";")) {
-                    sql = sql.substring(0, sql.length() - 1);
-                }
-                results = s.executeUpdate(sql);
+            sql = sql.trim();
+            if (sql.endsWith(";")) {
+                sql = sql.substring(0, sql.length() - 1);
             }
+            connection = getPool().borrow(sql);
+            Statement s = connection.createStatement();
+            results = s.executeUpdate(sql);
+            s.close();
         } catch (Exception e) {
             throw new Redirection(Redirection.STANDARD_ERROR, e.toString());
         } finally {
-            if (connection != null) {
-                try {
-                    connection.close();
-                } catch (SQLException sqle) {
-                    ;
-                }
-            }
+            releaseConnection(connection);
+            getQueryCache().invalidate(sql);
             System.out.println("Update completed on " + (new Date()).toString());
         }
         return results;
@@ -640,16 +923,14 @@ public class Database {
         if (sqls == null) {
             return null;
         }
+        flushPendingWrites();
         int numSqls = sqls.length;
         Object[] retVals = new Object[numSqls];
             
         Connection connection = null;
         try {
             System.out.println("Connecting to " + user_name + " at " + url + " for batch execute on " + (new Date()).toString());
-            connection = DriverManager.getConnection(url, user_name, password);
-            if (connection == null) {
-                throw new RuntimeException("unable to connect to database");
-            }
+            connection = getPool().borrow("batch of " + numSqls + " statements");
             Statement s = connection.createStatement();
             for (int i = 0; i < numSqls; i++) {
                 String sql = sqls[i].toString();
@@ -661,15 +942,18 @@ public class Database {
             }
             int[] retCodes = s.executeBatch();
             for (int i = 0; i < numSqls; i++) {
-                retVals[i] = new Integer(retCodes[i]);
+                retVals[i] = Integer.valueOf(retCodes[i]);
             }
-            
-            connection.close();
+            s.close();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception executing batch: " + e);
         } finally {
+            releaseConnection(connection);
+            for (int i = 0; i < numSqls; i++) {
+                getQueryCache().invalidate(sqls[i].toString());
+            }
             System.out.println("Query completed on " + (new Date()).toString());
         }
         
@@ -681,8 +965,13 @@ public class Database {
     }
     
     
+    /** Calls a stored procedure and returns the results it produces, read
+     *  into a disconnected result set as for execute_query.
+     */
     public Object execute_call(String procName, Object[] fields, Object retVal) throws Redirection {
+        flushPendingWrites();
         ResultSet results = null;
+        ResultSet rawResults = null;
         Connection connection = null;
         
         if (procName == null) {
@@ -711,28 +1000,25 @@ public class Database {
         
         try {
             System.out.println("Connecting to " + user_name + " at " + url + " for procedure call on " + (new Date()).toString());
-            connection = DriverManager.getConnection(url, user_name, password);
-            if (connection != null) {
-                CallableStatement s = connection.prepareCall(command.toString());
+            connection = getPool().borrow(command.toString());
+            CallableStatement s = connection.prepareCall(command.toString());
 
-                if (fields != null) {
-                    for (int i = 0; i < fields.length; i++) {
-                        s.setObject(i + 1, fields[i]);
-                    }
+            if (fields != null) {
+                for (int i = 0; i < fields.length; i++) {
+                    s.setObject(i + 1, fields[i]);
                 }
-                System.out.println("    ...execute_call: " + command.toString());
-                results = s.executeQuery();
             }
+            System.out.println("    ...execute_call: " + command.toString());
+            rawResults = s.executeQuery();
+            results = detach(rawResults);
+
         } catch (Exception e) {
             throw new Redirection(Redirection.STANDARD_ERROR, e.toString());
         } finally {
-            if (connection != null && results == null) { // connectedResults == null) {
-                try {
-                    connection.close();
-                } catch (SQLException sqle) {
-                    ;
-                }
-            }
+            getPool().release(connection, rawResults);
+
+            // a procedure may write to any table
+            getQueryCache().invalidateTables(null);
             System.out.println("Query completed on " + (new Date()).toString());
         }
         return results;
@@ -756,6 +1042,26 @@ class RecordCollection implements Map<String, Record> {
     private String keyName;
     private Class keyClass;
     private Context resolutionContext;
+
+    /** The statements, built once so their text is the same on every call
+     *  and they can be reused from the statement cache.
+     */
+    private String countSql;
+    private String containsKeySql;
+    private String containsValueSql;
+    private String selectSql;
+    private String insertSql;
+    private String updateSql;
+    private String deleteSql;
+
+    /** the layout of the records read by get */
+    private RowSchema recordSchema;
+
+    /** the classes of the parameters of the update statement */
+    private Class<?>[] updateClasses;
+
+    /** the table name as it appears in the query cache and write batches */
+    private String cacheTableName;
     
     public RecordCollection(Database db, Type tableType, Type keyType, Context context) {
         this(db, tableType, keyType, false, context);
@@ -794,28 +1100,83 @@ class RecordCollection implements Map<String, Record> {
             
             columnClasses[i] = childTypes[i].getTypeClass(context);
         }
+
+        String keyClause = " where " + keyName + " = ?";
+        countSql = "select count(*) from " + tableName;
+        containsKeySql = countSql + keyClause;
+        if (numTypes > 0) {
+            StringBuffer vsb = new StringBuffer(countSql + " where ");
+            for (int i = 0; i < numTypes; i++) {
+                if (i > 0) {
+                    vsb.append(" or ");
+                }
+                vsb.append(columnNames[i]);
+                vsb.append(" = ?");
+            }
+            containsValueSql = vsb.toString();
+        }
+        selectSql = "select " + columnList + " from " + tableName + keyClause;
+        deleteSql = "delete from " + tableName + keyClause;
+
+        StringBuffer sb = new StringBuffer("insert into " + tableName + " (" + columnList + ") values (");
+        for (int i = 0; i < numTypes; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        sb.append(')');
+        insertSql = sb.toString();
+
+        sb = new StringBuffer("update " + tableName + " set ");
+        boolean hasSetClause = false;
+        for (int i = 0; i < numTypes; i++) {
+            if (!columnNames[i].equals(keyName)) {
+                if (hasSetClause) {
+                    sb.append(", ");
+                }
+                sb.append(columnNames[i]);
+                sb.append(" = ?");
+                hasSetClause = true;
+            }
+        }
+        sb.append(keyClause);
+        updateSql = (hasSetClause ? sb.toString() : null);
+
+        List<Class<?>> classes = new ArrayList<Class<?>>(numTypes);
+        for (int i = 0; i < numTypes; i++) {
+            if (!columnNames[i].equals(keyName)) {
+                classes.add(columnClasses[i]);
+            }
+        }
+        classes.add(keyClass);
+        updateClasses = classes.toArray(new Class<?>[classes.size()]);
+
+        cacheTableName = tableName.substring(tableName.lastIndexOf('.') + 1).toLowerCase();
+        recordSchema = new RowSchema(columnNames);
     }
 
     public int size() {
+        flushPendingWrites();
         int count = -1;    // -1 means unknown size
-        String sql = "select count(*) from " + tableName;
+        String sql = countSql;
+        Connection connection = null;
         try {
-            Connection connection = db.getConnection();
+            connection = db.getConnection(sql);
             if (connection == null) {
                 throw new RuntimeException("unable to connect to database");
             }
-            Statement s = connection.createStatement();
-            ResultSet results = s.executeQuery(sql);
+            PreparedStatement s = db.getPool().prepareStatement(connection, sql);
+            ResultSet results = s.executeQuery();
             if (results.next()) {
                 count = results.getInt(1);
             } else {
                 count = 0;
             }
-            connection.close();
+            results.close();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception querying database (sql = \"" + sql + "\": " + e);
+        } finally {
+            db.releaseConnection(connection);
         }
         return count;
     }
@@ -824,106 +1185,156 @@ class RecordCollection implements Map<String, Record> {
         return size() <= 0;
     }
 
-    private String getKeyString(Object key) {
-        String keyString = key.toString();
-        if (!Number.class.isAssignableFrom(keyClass) && (!keyClass.isPrimitive() || keyClass.equals(Character.TYPE))) {
-            keyString = '\'' + keyString + '\'';
+    /** Returns the object to bind to a statement parameter for a value of
+     *  the passed class.  Canto values are unwrapped, and strings passed for
+     *  numeric columns are converted to numbers.
+     */
+    private static Object getParameter(Object value, Class<?> valueClass) {
+        if (value instanceof Value) {
+            value = ((Value) value).getValue();
         }
-        return keyString;
+        if (value instanceof String && valueClass != null) {
+            String str = ((String) value).trim();
+            try {
+                if (valueClass.equals(Double.class) || valueClass.equals(Double.TYPE) || valueClass.equals(Float.class) || valueClass.equals(Float.TYPE)) {
+                    return Double.valueOf(str);
+                } else if (Number.class.isAssignableFrom(valueClass) || (valueClass.isPrimitive() && !valueClass.equals(Character.TYPE) && !valueClass.equals(Boolean.TYPE))) {
+                    return Long.valueOf(str);
+                }
+            } catch (NumberFormatException nfe) {
+                ;
+            }
+        }
+        return value;
     }
-    
-    private String getFieldValueString(int n, Object value) {
+
+    static void setParameter(PreparedStatement s, int n, Object value, Class<?> valueClass) throws SQLException {
+        value = getParameter(value, valueClass);
         if (value == null) {
-            return "NULL";
+            s.setNull(n, getSqlType(valueClass));
+        } else {
+            s.setObject(n, value);
         }
-        
-        String valueString = (value instanceof Value ? ((Value) value).getString() : value.toString());
-        if (!Number.class.isAssignableFrom(columnClasses[n]) && (!columnClasses[n].isPrimitive() || columnClasses[n].equals(Character.TYPE))) {
-            valueString = '\'' + valueString + '\'';
+    }
+
+    /** Returns the java.sql.Types code for a column class, used to bind nulls. */
+    private static int getSqlType(Class<?> valueClass) {
+        if (valueClass == null) {
+            return Types.VARCHAR;
+        } else if (valueClass.equals(Integer.class) || valueClass.equals(Integer.TYPE)) {
+            return Types.INTEGER;
+        } else if (valueClass.equals(Long.class) || valueClass.equals(Long.TYPE)) {
+            return Types.BIGINT;
+        } else if (valueClass.equals(Double.class) || valueClass.equals(Double.TYPE) || valueClass.equals(Float.class) || valueClass.equals(Float.TYPE)) {
+            return Types.DOUBLE;
+        } else if (valueClass.equals(Boolean.class) || valueClass.equals(Boolean.TYPE)) {
+            return Types.BOOLEAN;
+        } else if (Number.class.isAssignableFrom(valueClass) || valueClass.isPrimitive()) {
+            return Types.NUMERIC;
+        } else {
+            return Types.VARCHAR;
         }
-        return valueString;
     }
 
     
     public boolean containsKey(Object key) {
+        flushPendingWrites();
         boolean doesContain = false;
-        String keyString = getKeyString(key);
-        String sql = "select count(*) from " + tableName + " where " + keyName + " = " + keyString + ";";
+        String sql = containsKeySql;
+        Connection connection = null;
         try {
-            Connection connection = db.getConnection();
+            connection = db.getConnection(sql);
             if (connection == null) {
                 throw new RuntimeException("unable to connect to database");
             }
-            Statement s = connection.createStatement();
-            ResultSet results = s.executeQuery(sql);
-            if (results.first()) {
+            PreparedStatement s = db.getPool().prepareStatement(connection, sql);
+            setParameter(s, 1, key, keyClass);
+            ResultSet results = s.executeQuery();
+            if (results.next()) {
                 if (results.getInt(1) > 0) {
                     doesContain = true;
                 }
             }
-            
-            connection.close();
+            results.close();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception querying database (sql = \"" + sql + "\": " + e);
+        } finally {
+            db.releaseConnection(connection);
         }
         return doesContain;
     }
 
     public boolean containsValue(Object value) {
+        flushPendingWrites();
         boolean doesContain = false;
-        String sql = "select count(*) from " + tableName + " where ";
-        int numcols = columnNames.length;
-        if (numcols > 0) {
+        String sql = containsValueSql;
+        if (sql != null) {
+            Connection connection = null;
             try {
-                Connection connection = db.getConnection();
+                connection = db.getConnection(sql);
                 if (connection == null) {
                     throw new RuntimeException("unable to connect to database");
                 }
-            
+
+                // every column is compared to the value as a string, as the
+                // value was previously quoted into the statement
                 String stringVal = value.toString();
-                Statement s = connection.createStatement();
-                for (int i = 0; i < numcols - 1; i++) {
-                    sql = sql + columnNames[i] + " = '" + stringVal + "' or ";
+                PreparedStatement s = db.getPool().prepareStatement(connection, sql);
+                int numcols = columnNames.length;
+                for (int i = 0; i < numcols; i++) {
+                    s.setString(i + 1, stringVal);
                 }
-                sql = sql + columnNames[numcols - 1] + " = '" + stringVal + "';";
-            
-                ResultSet results = s.executeQuery(sql);
-                if (results.first()) {
+                ResultSet results = s.executeQuery();
+                if (results.next()) {
                     if (results.getInt(1) > 0) {
                         doesContain = true;
                     }
                 }
-            
-                connection.close();
+                results.close();
             } catch (RuntimeException re) {
                 throw re;
             } catch (Exception e) {
                 System.out.println("Exception querying database (sql = \"" + sql + "\": " + e);
+            } finally {
+                db.releaseConnection(connection);
             }
         }
         return doesContain;
     }
 
     public Record get(Object key) {
+        flushPendingWrites();
+        return readRecord(key);
+    }
+
+    /** Reads the row with the passed key from the database, without
+     *  flushing pending writes first.
+     */
+    private Record readRecord(Object key) {
         Record record = null;
-        String sql = "select " + columnList + " from " + tableName + " where " + keyName + " = " + getKeyString(key) + ";";
+        String sql = selectSql;
+        Connection connection = null;
         try {
-            Connection connection = db.getConnection();
+            connection = db.getConnection(sql);
             if (connection == null) {
                 throw new RuntimeException("unable to connect to database");
             }
-            Statement s = connection.createStatement();
-            ResultSet results = s.executeQuery(sql);
-            if (results.first()) {
-                record = new Record(tableType, columnNames, results);
+            PreparedStatement s = db.getPool().prepareStatement(connection, sql);
+            setParameter(s, 1, key, keyClass);
+            ResultSet results = s.executeQuery();
+            if (results.next()) {
+                record = new Record(tableType, recordSchema, results);
+                record.loadLobs();
             }
-            connection.close();
+            results.close();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception querying database (sql = \"" + sql + "\": " + e);
+        } finally {
+            db.releaseConnection(connection);
         }
         return record;
     }
@@ -948,109 +1359,209 @@ class RecordCollection implements Map<String, Record> {
     
     public Record put(String key, Record value) {
         Record record = null;
-        String keyValue = getKeyString(key); //getField(value, key.toString()).toString();
-        String sqlCheck = "select count(*) from " + tableName + " where " + keyName + " = " + keyValue + ";";
-        String sqlInsertPre = "insert into " + tableName + " (" + columnList + ") values (";
-        String sqlInsertPost = ");";
-        String sqlUpdatePre = "update " + tableName + " set ";
-        String sqlUpdatePost = " where " + keyName + " = " + keyValue + ";";
-        int numcols = columnNames.length;
         int count = 0;
-        String sql = sqlCheck;
+        String sql = containsKeySql;
+        WriteBatch batch = db.getWriteBatch();
+        String keyString = String.valueOf(getParameter(key, keyClass));
+        Boolean pendingExists = (batch == null ? null : batch.keyExists(cacheTableName, keyString));
+        Connection connection = null;
         try {
-            
-            Connection connection = db.getConnection();
-            if (connection == null) {
-                throw new RuntimeException("unable to connect to database");
-            }
-            Statement s = connection.createStatement();
-            ResultSet results = s.executeQuery(sql);
-            if (results.first()) {
-                count = results.getInt(1);
+            PreparedStatement s;
+            if (pendingExists != null) {
+                // a pending write determines whether the row exists
+                count = (pendingExists.booleanValue() ? 1 : 0);
             } else {
-                count = 0;
+                connection = db.getConnection(sql);
+                if (connection == null) {
+                    throw new RuntimeException("unable to connect to database");
+                }
+                s = db.getPool().prepareStatement(connection, sql);
+                setParameter(s, 1, key, keyClass);
+                ResultSet results = s.executeQuery();
+                if (results.next()) {
+                    count = results.getInt(1);
+                } else {
+                    count = 0;
+                }
+                results.close();
             }
-            s.close();
-            sql = null; 
 
+            Object[] params;
+            Class<?>[] paramClasses;
             if (count > 0) {
-                sql = sqlUpdatePre;
-                for (int i = 0; i < numcols - 1; i++) {
-                    if (columnNames[i].equals(keyName)) {
-                        continue;
-                    }
-                    sql = sql + columnNames[i] + " = " + getFieldValueString(i, getField(value, columnNames[i])) + ",";
+                if (updateSql == null) {
+                    // every column is part of the key, so there is nothing to update
+                    return record;
                 }
-                sql = sql + columnNames[numcols - 1] + " = " + getFieldValueString(numcols - 1, getField(value, columnNames[numcols - 1])) + sqlUpdatePost;
+                sql = updateSql;
+                params = getUpdateParameters(key, value);
+                paramClasses = updateClasses;
             } else {
-                sql = sqlInsertPre;
-                for (int i = 0; i < numcols - 1; i++) {
-                    sql = sql + getFieldValueString(i, getField(value, columnNames[i])) + ", ";
-                }
-                sql = sql + getFieldValueString(numcols - 1, getField(value, columnNames[numcols - 1])) + sqlInsertPost;
+                sql = insertSql;
+                params = getInsertParameters(value);
+                paramClasses = columnClasses;
+            }
 
+            if (batch != null) {
+                db.releaseConnection(connection);
+                connection = null;
+                batch.setKeyExists(cacheTableName, keyString, true);
+                addToBatch(batch, sql, params, paramClasses);
+            } else {
+                s = db.getPool().prepareStatement(connection, sql);
+                for (int i = 0; i < params.length; i++) {
+                    setParameter(s, i + 1, params[i], paramClasses[i]);
+                }
+                s.executeUpdate();
             }
-            s = connection.createStatement();
-            s.executeUpdate(sql);
-            s.close();
-            
-            connection.close();
         } catch (RuntimeException re) {
             re.printStackTrace();
             throw re;
         } catch (Exception e) {
             System.out.println("Exception writing to database\n  sql = \"" + sql + "\"\n  " + e);
+        } finally {
+            if (connection != null) {
+                db.releaseConnection(connection);
+                invalidateCachedQueries();
+            }
         }
         return record;
     }
 
+    private Object[] getInsertParameters(Record value) {
+        int numcols = columnNames.length;
+        Object[] params = new Object[numcols];
+        for (int i = 0; i < numcols; i++) {
+            params[i] = getField(value, columnNames[i]);
+        }
+        return params;
+    }
+
+    /** Returns the values of the non-key columns followed by the key. */
+    private Object[] getUpdateParameters(Object key, Record value) {
+        int numcols = columnNames.length;
+        Object[] params = new Object[updateClasses.length];
+        int n = 0;
+        for (int i = 0; i < numcols; i++) {
+            if (!columnNames[i].equals(keyName)) {
+                params[n++] = getField(value, columnNames[i]);
+            }
+        }
+        params[n] = key;
+        return params;
+    }
+
+    /** Adds a write to the request's batch.  If that fills the batch and the
+     *  batch fails, the failure is thrown as a runtime exception.
+     */
+    private void addToBatch(WriteBatch batch, String sql, Object[] params, Class<?>[] paramClasses) {
+        try {
+            batch.add(cacheTableName, sql, params, paramClasses);
+        } catch (SQLException sqle) {
+            throw new RuntimeException(sqle.getMessage(), sqle);
+        }
+    }
+
+    /** Makes any writes to this database pending in the current request, so
+     *  reads see them.
+     */
+    private void flushPendingWrites() {
+        WriteBatch batch = db.getWriteBatch();
+        if (batch != null && batch.hasPending()) {
+            try {
+                batch.flush();
+            } catch (SQLException sqle) {
+                throw new RuntimeException(sqle.getMessage(), sqle);
+            }
+        }
+    }
+
+    /** Deletes the row with the passed key and returns it, or null if there
+     *  is no such row.  When writes are being batched, the pending writes are
+     *  consulted rather than flushed, and if the row was written earlier in
+     *  the batch the delete is queued but null is returned, since the row
+     *  has not been read back.
+     */
     public Record remove(Object key) {
-        Record record = null;
-        String sql = "";
+        String sql = deleteSql;
+        WriteBatch batch = db.getWriteBatch();
+        if (batch != null) {
+            String keyString = String.valueOf(getParameter(key, keyClass));
+            Boolean pendingExists = batch.keyExists(cacheTableName, keyString);
+            Record record = null;
+            if (pendingExists == null) {
+                // no pending write touches this row, so it can be read as is
+                record = readRecord(key);
+                if (record == null) {
+                    return null;
+                }
+            } else if (!pendingExists.booleanValue()) {
+                return null;
+            }
+            batch.setKeyExists(cacheTableName, keyString, false);
+            addToBatch(batch, sql, new Object[] { key }, new Class<?>[] { keyClass });
+            return record;
+        }
+        Record record = get(key);
+        if (record == null) {
+            return null;
+        }
+        Connection connection = null;
         try {
-            Connection connection = db.getConnection();
+            connection = db.getConnection(sql);
             if (connection == null) {
                 throw new RuntimeException("unable to connect to database");
             }
-            
-            connection.close();
+            PreparedStatement s = db.getPool().prepareStatement(connection, sql);
+            setParameter(s, 1, key, keyClass);
+            s.executeUpdate();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception deleting from database (sql = \"" + sql + "\": " + e);
+        } finally {
+            db.releaseConnection(connection);
+            invalidateCachedQueries();
         }
         return record;
     }
 
+    /** Drops cached query results that read from this table. */
+    private void invalidateCachedQueries() {
+        db.getQueryCache().invalidateTables(Collections.singleton(cacheTableName));
+    }
+
     public void putAll(Map<? extends String, ? extends Record> T) {
-        String sql = "";
-        try {
-            Connection connection = db.getConnection();
-            if (connection == null) {
-                throw new RuntimeException("unable to connect to database");
-            }
-            
-            connection.close();
-        } catch (RuntimeException re) {
-            throw re;
-        } catch (Exception e) {
-            System.out.println("Exception writing to database (sql = \"" + sql + "\": " + e);
+        Iterator<? extends Map.Entry<? extends String, ? extends Record>> it = T.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<? extends String, ? extends Record> entry = it.next();
+            put(entry.getKey(), entry.getValue());
         }
     }
 
     public void clear() {
-        String sql = "";
+        String sql = "delete from " + tableName;
+        WriteBatch batch = db.getWriteBatch();
+        if (batch != null) {
+            batch.setCleared(cacheTableName);
+            addToBatch(batch, sql, new Object[0], new Class<?>[0]);
+            return;
+        }
+        Connection connection = null;
         try {
-            Connection connection = db.getConnection();
+            connection = db.getConnection(sql);
             if (connection == null) {
                 throw new RuntimeException("unable to connect to database");
             }
-            
-            connection.close();
+            PreparedStatement s = db.getPool().prepareStatement(connection, sql);
+            s.executeUpdate();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception clearing database (sql = \"" + sql + "\": " + e);
+        } finally {
+            db.releaseConnection(connection);
+            invalidateCachedQueries();
         }
     }
     
@@ -1101,6 +1612,7 @@ class RecordCollection implements Map<String, Record> {
 
         public StringFieldIterator(String column) {
             this.column = column;
+            flushPendingWrites();
             String sql = "select " + column + " from " + tableName + ";";
             try {
                 connection = db.getConnection();
@@ -1109,13 +1621,19 @@ class RecordCollection implements Map<String, Record> {
                 }
                 Statement s = connection.createStatement();
                 results = s.executeQuery(sql);
+                db.getPool().attachResults(connection, results);
                 if (!results.first()) {
+                    db.getPool().release(connection, results);
+                    connection = null;
                     results = null;
                 }
             } catch (RuntimeException re) {
                 throw re;
             } catch (Exception e) {
                 System.out.println("Exception querying database (sql = \"" + sql + "\": " + e);
+                results = null;
+                db.releaseConnection(connection);
+                connection = null;
             }
         }
         
@@ -1126,9 +1644,9 @@ class RecordCollection implements Map<String, Record> {
                 try {
                     more = !results.isAfterLast();
                     if (!more && connection != null) {
-                        results.close();
-                        connection.close();
+                        db.getPool().release(connection, results);
                         connection = null;
+                        results = null;
                     }
                 } catch (Exception e) {
                     System.out.println("Exception in database results: " + e);
@@ -1161,17 +1679,18 @@ class RecordCollection implements Map<String, Record> {
     public Collection<Record> values() {
         Collection<Record> values = null;
         String sql = "";
+        Connection connection = null;
         try {
-            Connection connection = db.getConnection();
+            connection = db.getConnection();
             if (connection == null) {
                 throw new RuntimeException("unable to connect to database");
             }
-            
-            connection.close();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception querying database(sql = \"" + sql + "\": " + e);
+        } finally {
+            db.releaseConnection(connection);
         }
         return values;
     }
@@ -1179,17 +1698,18 @@ class RecordCollection implements Map<String, Record> {
     public Set<Map.Entry<String, Record>> entrySet() {
         Set<Map.Entry<String, Record>> entries = null;
         String sql = "";
+        Connection connection = null;
         try {
-            Connection connection = db.getConnection();
+            connection = db.getConnection();
             if (connection == null) {
                 throw new RuntimeException("unable to connect to database");
             }
-            
-            connection.close();
         } catch (RuntimeException re) {
             throw re;
         } catch (Exception e) {
             System.out.println("Exception querying database(sql = \"" + sql + "\": " + e);
+        } finally {
+            db.releaseConnection(connection);
         }
         return entries;
     }
@@ -1204,59 +1724,158 @@ class RecordCollection implements Map<String, Record> {
 
 }
 
-class Record extends HashMap<String, Object> implements ValueMap {
-    private static final long serialVersionUID = 1L;
+/** A row read from a database.  The column names and their positions are
+ *  held in a RowSchema shared by all the rows read from the same result, and
+ *  the values in an array in column order, so a record costs little more
+ *  than its values.  CLOB and BLOB values are kept as read from the driver
+ *  and only converted to strings when they are first accessed; call
+ *  loadLobs to convert them before the result set they came from is closed.
+ */
+class Record extends AbstractMap<String, Object> implements ValueMap {
 
     private Type type;
-    private String[] columnNames;
+    private RowSchema schema;
+    private Object[] values;
     
+    /** Reads the named columns of the current row of the result set, which
+     *  may be any of its columns in any order.
+     */
     public Record(Type recType, String[] columnNames, ResultSet results) {
-        if (recType == null || columnNames == null || results == null) {
+        this(recType, (columnNames == null || results == null ? null : RowSchema.forColumns(results, columnNames)), results);
+    }
+
+    Record(Type recType, RowSchema schema, ResultSet results) {
+        if (recType == null || schema == null || results == null) {
             throw new NullPointerException("Null parameter passed to Record constructor");
         }
         type = recType;
-        this.columnNames = columnNames;
-        int numcols = columnNames.length;
+        this.schema = schema;
+        values = new Object[schema.size()];
+        load(results);
+    }
+
+    /** Reads the fields of the current row of the result set, replacing any
+     *  fields read before.  This lets a single record serve as a view of
+     *  each row in turn.  The columns are read where the schema says they
+     *  are in the result.
+     */
+    void load(ResultSet results) {
+        int numcols = values.length;
         for (int i = 0; i < numcols; i++) {
-            String col = columnNames[i];
             try {
-                Object obj = results.getObject(col);
-                Reader objReader = null;
+                values[i] = schema.readValue(results, i);
+            } catch (SQLException sqle) {
+                values[i] = null;
+                System.err.println("SQL Exception (" + sqle +") retrieving field " + schema.getColumn(i) + " in " + type.getName() + " table.");
+            }
+        }
+    }
 
-                if (obj instanceof Clob) {
-                    objReader = ((Clob) obj).getCharacterStream();
-                } else if (obj instanceof Blob) {
-                    objReader = new InputStreamReader(((Blob) obj).getBinaryStream());
-                }
+    /** Converts any large objects not yet read to strings. */
+    void loadLobs() {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Clob || values[i] instanceof Blob) {
+                getValueAt(i);
+            }
+        }
+    }
 
-                if (objReader != null) {                	
-                	char[] buf = new char[8192];
-                	StringBuffer sb = new StringBuffer();
-                	BufferedReader r = new BufferedReader(objReader);
-                	int n = r.read(buf);
-                	while (n >= 0) {
-                		sb.append(buf, 0, n); 
-                		n = r.read(buf);
-                    }
-                	obj = sb.toString();
-                }
-                
-                put(col, obj);
+    /** Returns the value of the nth column, reading it first if it is a
+     *  large object.
+     */
+    private Object getValueAt(int n) {
+        Object obj = values[n];
+        if (obj instanceof Clob || obj instanceof Blob) {
+            try {
+                obj = readLob(obj);
             } catch (IOException ioe) {
-                System.err.println("IO Exception (" + ioe +") retrieving field " + col + " in " + type.getName() + " table.");
-            	
+                System.err.println("IO Exception (" + ioe +") retrieving field " + schema.getColumn(n) + " in " + type.getName() + " table.");
+                obj = null;
             } catch (SQLException sqle) {
-                System.err.println("SQL Exception (" + sqle +") retrieving field " + col + " in " + type.getName() + " table.");
+                System.err.println("SQL Exception (" + sqle +") retrieving field " + schema.getColumn(n) + " in " + type.getName() + " table.");
+                obj = null;
             }
+            values[n] = obj;
         }
+        return obj;
     }
-    
+
+    /** If the passed value is a CLOB or BLOB, returns its contents as a
+     *  string, else returns the value.
+     */
+    static Object readLob(Object obj) throws SQLException, IOException {
+        Reader objReader = null;
+
+        if (obj instanceof Clob) {
+            objReader = ((Clob) obj).getCharacterStream();
+        } else if (obj instanceof Blob) {
+            objReader = new InputStreamReader(((Blob) obj).getBinaryStream());
+        }
+
+        if (objReader != null) {                	
+        	char[] buf = new char[8192];
+        	StringBuilder sb = new StringBuilder();
+        	BufferedReader r = new BufferedReader(objReader);
+        	int n = r.read(buf);
+        	while (n >= 0) {
+        		sb.append(buf, 0, n); 
+        		n = r.read(buf);
+            }
+        	obj = sb.toString();
+        }
+        return obj;
+    }
+
+    public Object get(Object key) {
+        int n = schema.indexOf(key);
+        return (n < 0 ? null : getValueAt(n));
+    }
+
+    public boolean containsKey(Object key) {
+        return schema.indexOf(key) >= 0;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    private int n = 0;
+
+                    public boolean hasNext() {
+                        return n < values.length;
+                    }
+
+                    public Map.Entry<String, Object> next() {
+                        if (n >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, Object> entry = new AbstractMap.SimpleImmutableEntry<String, Object>(schema.getColumn(n), getValueAt(n));
+                        n++;
+                        return entry;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException("Records are immutable");
+                    }
+                };
+            }
+
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
     public String[] getColumnNames() {
-        return columnNames;
+        return schema.getColumns();
     }
     
     public int getColumnCount() {
-        return columnNames.length;
+        return values.length;
     }
 
     public String getString(String key) {
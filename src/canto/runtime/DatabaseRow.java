@@ -16,6 +16,8 @@ import java.sql.*;
 
 /**
  * A DatabaseRow represents one row in a ResultSet returned by a database query.
+ * Rows read from the same result share a RowSchema mapping column names to
+ * positions, and hold their values in an array.
  *
  * @author Michael St. Hippolyte
  * @version $Revision: 1.13 $
@@ -44,11 +46,41 @@ public class DatabaseRow extends AbstractMap {
             System.out.println("Exception creating DatabaseRow: " + e);
         }
     }
+
+    DatabaseRow(ResultSet resultSet, RowSchema schema, int row) {
+        this.row = row;
+        try {
+            record = new Record(ROWTYPE, schema, resultSet);
+        } catch (Exception e) {
+            System.out.println("Exception creating DatabaseRow: " + e);
+        }
+    }
     
     protected void init(ResultSet resultSet, String[] columns) throws SQLException {
 	    record = new Record(ROWTYPE, columns, resultSet);
     }
 
+    /** Makes this row a view of the current row of the result set, for
+     *  iterators that reuse one row object rather than creating one per row.
+     */
+    void advance(ResultSet resultSet, RowSchema schema, int row) {
+        this.row = row;
+        if (record == null) {
+            record = new Record(ROWTYPE, schema, resultSet);
+        } else {
+            record.load(resultSet);
+        }
+    }
+
+    /** Reads any large object values not yet read, so the row remains
+     *  complete after the result set is closed.
+     */
+    void loadLobs() {
+        if (record != null) {
+            record.loadLobs();
+        }
+    }
+
     public Set entrySet() {
         return new ColumnSet();
     }
@@ -0,0 +1,243 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * DependencyTracker.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.io.File;
+import java.util.*;
+
+import canto.lang.Definition;
+import canto.lang.NamedDefinition;
+import canto.lang.Site;
+
+/**
+ * Records the definitions instantiated and the files read while a piece of
+ * output is generated, so that the output can be regenerated only when one
+ * of those inputs changes.
+ *
+ * Tracking is per thread.  A tracker is made current on a thread by
+ * <code>begin</code> and removed by <code>end</code>; in between, the runtime
+ * reports every definition it pushes on a context or retrieves from a keep,
+ * and every file read by <code>include_file</code> or one of the
+ * <code>lines_from_file</code> functions.  Tracking must be enabled first with
+ * <code>setEnabled</code>, so that it costs nothing when it isn't used.
+ *
+ * Values which may be kept are computed inside a nested tracker, bracketed
+ * by <code>beginComputation</code> and <code>endComputation</code>, and the
+ * inputs recorded while computing a kept value are remembered until the
+ * site is reloaded.  When a value is later retrieved from a keep, possibly while
+ * generating a different page, the inputs it was computed from are recorded
+ * along with its definition.
+ */
+public class DependencyTracker {
+
+    private static volatile boolean enabled = false;
+    private static ThreadLocal<DependencyTracker> currentTracker = new ThreadLocal<DependencyTracker>();
+
+    /** the inputs of kept values, keyed by the name of the definition */
+    private static Map<String, DependencyTracker> keptInputs = new HashMap<String, DependencyTracker>();
+
+    public static void setEnabled(boolean enabled) {
+        DependencyTracker.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Creates a new tracker and makes it current on this thread. */
+    public static DependencyTracker begin() {
+        DependencyTracker tracker = new DependencyTracker(currentTracker.get());
+        currentTracker.set(tracker);
+        return tracker;
+    }
+
+    /** Stops tracking on this thread. */
+    public static void end() {
+        DependencyTracker tracker = currentTracker.get();
+        if (tracker != null && tracker.parent != null) {
+            currentTracker.set(tracker.parent);
+        } else {
+            currentTracker.remove();
+        }
+    }
+
+    /** Starts recording the inputs of a value which may be kept.  Returns
+     *  the nested tracker, which must be passed to <code>endComputation</code>,
+     *  or null if tracking is not enabled.
+     */
+    public static DependencyTracker beginComputation() {
+        return (enabled ? begin() : null);
+    }
+
+    /** Stops recording the inputs of a value, adding them to the enclosing
+     *  tracker, if any.
+     */
+    public static void endComputation(DependencyTracker tracker) {
+        if (tracker != null) {
+            end();
+            if (tracker.parent != null) {
+                tracker.parent.addAll(tracker);
+            }
+        }
+    }
+
+    /** Forgets the inputs of every kept value.  This is called when a site
+     *  is reloaded, since the definitions they refer to are replaced.
+     */
+    public static void clearKeptInputs() {
+        synchronized (keptInputs) {
+            keptInputs.clear();
+        }
+    }
+
+    /** Remembers the inputs recorded by the passed tracker as inputs of the
+     *  value kept for the passed definition.
+     */
+    public static void recordKept(DependencyTracker tracker, Definition def) {
+        String key = getKey(def);
+        if (tracker != null && key != null) {
+            synchronized (keptInputs) {
+                DependencyTracker inputs = keptInputs.get(key);
+                if (inputs == null) {
+                    inputs = new DependencyTracker(null);
+                    keptInputs.put(key, inputs);
+                }
+                inputs.addAll(tracker);
+            }
+        }
+    }
+
+    /** Records that a value kept for the passed definition was used by the
+     *  current tracker, if any, along with the inputs it was computed from.
+     */
+    public static void keptValueUsed(Definition def) {
+        if (enabled && def != null) {
+            DependencyTracker tracker = currentTracker.get();
+            if (tracker != null) {
+                tracker.addDefinition(def);
+                String key = getKey(def);
+                if (key != null) {
+                    synchronized (keptInputs) {
+                        DependencyTracker inputs = keptInputs.get(key);
+                        if (inputs != null) {
+                            tracker.addAll(inputs);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the full name of the nearest named definition which is or
+     *  owns the passed definition, or null if there is none.
+     */
+    private static String getKey(Definition def) {
+        while (def != null && !(def instanceof NamedDefinition)) {
+            def = def.getOwner();
+        }
+        return (def == null ? null : def.getFullName());
+    }
+
+    /** Records that the passed definition was used by the current tracker,
+     *  if any.
+     */
+    public static void definitionUsed(Definition def) {
+        if (enabled && def != null) {
+            DependencyTracker tracker = currentTracker.get();
+            if (tracker != null) {
+                tracker.addDefinition(def);
+            }
+        }
+    }
+
+    /** Records that the named file was read by the current tracker, if any. */
+    public static void fileRead(String filename) {
+        if (enabled && filename != null) {
+            DependencyTracker tracker = currentTracker.get();
+            if (tracker != null) {
+                tracker.addFile(new File(filename).getAbsolutePath());
+            }
+        }
+    }
+
+
+    // the sets are created when the first input is recorded, since most
+    // computations are of values that have no inputs of their own
+    private Set<Definition> definitions = null;
+    private Set<String> files = null;
+
+    private DependencyTracker parent;
+
+    private DependencyTracker(DependencyTracker parent) {
+        this.parent = parent;
+    }
+
+    private void addDefinition(Definition def) {
+        if (definitions == null) {
+            definitions = Collections.newSetFromMap(new IdentityHashMap<Definition, Boolean>());
+        }
+        definitions.add(def);
+    }
+
+    private void addFile(String path) {
+        if (files == null) {
+            files = new TreeSet<String>();
+        }
+        files.add(path);
+    }
+
+    private void addAll(DependencyTracker tracker) {
+        if (tracker.definitions != null) {
+            Iterator<Definition> it = tracker.definitions.iterator();
+            while (it.hasNext()) {
+                addDefinition(it.next());
+            }
+        }
+        if (tracker.files != null) {
+            Iterator<String> it = tracker.files.iterator();
+            while (it.hasNext()) {
+                addFile(it.next());
+            }
+        }
+    }
+
+    /** Returns the named definitions used, sorted by full name.  Definitions
+     *  without a name are represented by the nearest named definition that
+     *  owns them.  Sites are left out, since everything depends on them.
+     */
+    public SortedMap<String, NamedDefinition> getDefinitions() {
+        SortedMap<String, NamedDefinition> defs = new TreeMap<String, NamedDefinition>();
+        if (definitions == null) {
+            return defs;
+        }
+        Iterator<Definition> it = definitions.iterator();
+        while (it.hasNext()) {
+            Definition def = it.next();
+            while (def != null && !(def instanceof NamedDefinition)) {
+                def = def.getOwner();
+            }
+            if (def == null || def instanceof Site) {
+                continue;
+            }
+            String name = def.getFullName();
+            if (name != null && !defs.containsKey(name)) {
+                defs.put(name, (NamedDefinition) def);
+            }
+        }
+        return defs;
+    }
+
+    /** Returns the absolute paths of the files read, in sorted order. */
+    public Set<String> getFiles() {
+        if (files == null) {
+            return new TreeSet<String>();
+        }
+        return files;
+    }
+}
@@ -0,0 +1,394 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * QueryCache.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.util.*;
+
+import canto.lang.*;
+
+/**
+ * A cache of the results of read-only queries against one database, shared
+ * by all the Database objects with the same URL and user name.
+ *
+ * Results are keyed by the SQL text and the values of its parameters, and
+ * each is kept for the number of seconds passed when it is stored.  The
+ * cache holds results up to a memory budget, based on a rough estimate of
+ * their size, dropping the least recently used results to stay within it.
+ *
+ * When a statement that may write to the database is run, cached results of
+ * queries reading from the tables it names are dropped.  Table names are
+ * found by a simple scan of the SQL for the names following
+ * <code>from</code>, <code>join</code>, <code>into</code>,
+ * <code>update</code> and <code>table</code>.  A result whose tables can't
+ * be determined is dropped by any write, and a write whose tables can't be
+ * determined clears the cache.
+ *
+ * A query which is under way when a write occurs does not store its result,
+ * since it may have read the data from before the write.
+ */
+class QueryCache {
+
+    private static Map<String, QueryCache> caches = new LinkedHashMap<String, QueryCache>();
+
+    /** Returns the cache for the passed URL and user, creating it if
+     *  necessary.
+     */
+    static QueryCache getCache(String url, String user_name) {
+        String key = user_name + '@' + url;
+        synchronized (caches) {
+            QueryCache cache = caches.get(key);
+            if (cache == null) {
+                cache = new QueryCache(url, user_name);
+                caches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    static List<QueryCache> getCaches() {
+        synchronized (caches) {
+            return new ArrayList<QueryCache>(caches.values());
+        }
+    }
+
+
+    private static class Entry {
+        Object value;
+        Set<String> tables;
+        long expires;
+        long bytes;
+    }
+
+    private String url;
+    private String user_name;
+
+    /** memory budget in bytes; zero means the cache is disabled */
+    private long budget = 0;
+    private long bytesUsed = 0;
+
+    /** incremented by every write, so queries can tell if one happened
+     *  while they ran
+     */
+    private long generation = 0;
+
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private int numHits = 0;
+    private int numMisses = 0;
+    private int numExpired = 0;
+    private int numEvicted = 0;
+    private int numInvalidated = 0;
+
+    private QueryCache(String url, String user_name) {
+        this.url = url;
+        this.user_name = user_name;
+    }
+
+    /** Sets the memory budget in bytes.  A budget of zero disables the cache
+     *  and empties it.
+     */
+    synchronized void setBudget(long budget) {
+        this.budget = Math.max(budget, 0);
+        trim();
+    }
+
+    synchronized boolean isEnabled() {
+        return budget > 0;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    String getUserName() {
+        return user_name;
+    }
+
+    /** Returns the key for a query and its parameter values. */
+    static String getKey(String sql, Object[] fields) {
+        if (fields == null || fields.length == 0) {
+            return sql;
+        }
+        StringBuffer sb = new StringBuffer(sql);
+        for (int i = 0; i < fields.length; i++) {
+            Object field = fields[i];
+            if (field instanceof Value) {
+                field = ((Value) field).getValue();
+            }
+            sb.append('\u0000');
+            if (field != null) {
+                sb.append(field.getClass().getName());
+                sb.append(':');
+                sb.append(field.toString());
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Returns the cached result for the key, or null if there is none. */
+    synchronized Object get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            numMisses++;
+            return null;
+        }
+        if (System.currentTimeMillis() > entry.expires) {
+            remove(key);
+            numExpired++;
+            numMisses++;
+            return null;
+        }
+        numHits++;
+        return entry.value;
+    }
+
+    /** Returns the current generation, to be passed to put once the query
+     *  has run.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /** Caches a query result for the passed number of seconds, unless a
+     *  write has occurred since the query started.  The value must not be
+     *  modified after it is stored.
+     */
+    synchronized void put(String key, String sql, Object value, int ttl, long startGeneration, long bytes) {
+        if (budget <= 0 || ttl <= 0 || startGeneration != generation || bytes > budget / 4) {
+            return;
+        }
+        remove(key);
+        Entry entry = new Entry();
+        entry.value = value;
+        entry.tables = getTables(sql);
+        entry.expires = System.currentTimeMillis() + ttl * 1000L;
+        entry.bytes = bytes + key.length() * 2 + 64;
+        entries.put(key, entry);
+        bytesUsed += entry.bytes;
+        trim();
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytesUsed -= entry.bytes;
+        }
+    }
+
+    /** Drops the least recently used results until the cache is within its
+     *  budget.
+     */
+    private void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytesUsed > budget && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            bytesUsed -= entry.bytes;
+            numEvicted++;
+        }
+    }
+
+    /** Drops the cached results that may be affected by the passed
+     *  statement.
+     */
+    synchronized void invalidate(String sql) {
+        invalidateTables(getTables(sql));
+    }
+
+    /** Drops the cached results reading from the passed tables, or all the
+     *  results if tables is null.
+     */
+    synchronized void invalidateTables(Set<String> tables) {
+        generation++;
+        if (entries.isEmpty()) {
+            return;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (tables == null || entry.tables == null || !Collections.disjoint(tables, entry.tables)) {
+                it.remove();
+                bytesUsed -= entry.bytes;
+                numInvalidated++;
+            }
+        }
+    }
+
+    synchronized String getStats() {
+        return (budget > 0 ? "budget " + (budget / 1024) + "K, " : "disabled, ") + entries.size() + " results, "
+               + (bytesUsed / 1024) + "K; " + numHits + " hits, " + numMisses + " misses, " + numExpired + " expired, "
+               + numEvicted + " evicted, " + numInvalidated + " invalidated";
+    }
+
+
+    /** Returns a rough estimate of the memory taken by a value read from a
+     *  database.
+     */
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 40 + ((String) value).length() * 2;
+        } else if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        } else {
+            return 24;
+        }
+    }
+
+    /** Words which may follow a table name, so are not taken as aliases */
+    private static final Set<String> CLAUSE_WORDS = new HashSet<String>(Arrays.asList(new String[] {
+        "where", "group", "order", "having", "limit", "offset", "union", "intersect", "except",
+        "join", "inner", "outer", "left", "right", "full", "cross", "natural", "on", "using",
+        "set", "values", "select", "for", "with", "window", "fetch", "returning"
+    }));
+
+    /** Returns the lower case names of the tables the SQL reads or writes,
+     *  without any schema prefix, or null if none can be found.
+     */
+    static Set<String> getTables(String sql) {
+        List<String> tokens = tokenize(sql);
+        Set<String> tables = new HashSet<String>();
+        int n = tokens.size();
+        for (int i = 0; i < n - 1; i++) {
+            String token = tokens.get(i);
+            boolean listAllowed = token.equals("from");
+            if (token.equals("table") || token.equals("truncate")) {
+                // truncate table t, alter table t, drop table t
+                if (tokens.get(i + 1).equals("table")) {
+                    continue;
+                }
+            } else if (!listAllowed && !token.equals("join") && !token.equals("into") && !token.equals("update")) {
+                continue;
+            }
+            int j = i + 1;
+            while (j < n) {
+                String name = tokens.get(j);
+                if (!isName(name) || CLAUSE_WORDS.contains(name)) {
+                    break;
+                }
+                tables.add(name.substring(name.lastIndexOf('.') + 1));
+                j++;
+                if (!listAllowed) {
+                    break;
+                }
+                // skip an alias, then continue a comma-separated list
+                if (j < n && tokens.get(j).equals("as")) {
+                    j++;
+                }
+                if (j < n && isName(tokens.get(j)) && !CLAUSE_WORDS.contains(tokens.get(j))) {
+                    j++;
+                }
+                if (j < n && tokens.get(j).equals(",")) {
+                    j++;
+                } else {
+                    break;
+                }
+            }
+        }
+        return (tables.isEmpty() ? null : tables);
+    }
+
+    private static boolean isName(String token) {
+        char c = token.charAt(0);
+        return Character.isLetter(c) || c == '_';
+    }
+
+    /** Splits SQL into lower case names (which may be qualified with dots)
+     *  and single punctuation characters, dropping string literals, quotes
+     *  around names and comments.
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<String>();
+        int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                i = sql.indexOf('\'', i + 1);
+                i = (i < 0 ? len : i + 1);
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                i = sql.indexOf('\n', i);
+                i = (i < 0 ? len : i + 1);
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                i = sql.indexOf("*/", i + 2);
+                i = (i < 0 ? len : i + 2);
+            } else if (Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[') {
+                StringBuffer sb = new StringBuffer();
+                while (i < len) {
+                    c = sql.charAt(i);
+                    if (Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$') {
+                        sb.append(Character.toLowerCase(c));
+                    } else if (c != '"' && c != '`' && c != '[' && c != ']') {
+                        break;
+                    }
+                    i++;
+                }
+                if (sb.length() > 0 && !Character.isDigit(sb.charAt(0))) {
+                    tokens.add(sb.toString());
+                }
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+}
+
+
+/**
+ * A read-only array of cached query results.  The rows are shared with the
+ * cache and with every other array returned for the same query.
+ */
+class CachedResultArray extends AbstractList<Object> implements CantoArray {
+    private CompactRow[] rows;
+
+    CachedResultArray(CompactRow[] rows) {
+        this.rows = rows;
+    }
+
+    public Object getArrayObject() {
+        return this;
+    }
+
+    public Object instantiateArray(Context context) {
+        return this;
+    }
+
+    public Object get(int n) {
+        return rows[n];
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    public int getSize() {
+        return rows.length;
+    }
+
+    public boolean isGrowable() {
+        return false;
+    }
+
+    public boolean add(Object element) {
+        throw new UnsupportedOperationException("Cached query results are immutable");
+    }
+
+    public boolean addAll(List<Object> list) {
+        throw new UnsupportedOperationException("Cached query results are immutable");
+    }
+
+    public Object set(int n, Object element) {
+        throw new UnsupportedOperationException("Cached query results are immutable");
+    }
+}
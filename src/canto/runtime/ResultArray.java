@@ -17,6 +17,16 @@ import java.sql.*;
 /**
  * A ResultSet wrapper that implements the CantoArray interface.
  *
+ * A ResultArray created by <code>Database.stream_query</code> streams its
+ * rows: the result set is forward-only, so the rows can be read once, and
+ * the iterator returns the same row object each time, updated to show the
+ * current row, so a loop over millions of rows holds one row at a time.
+ * The connection is returned to the pool as soon as the last row is read
+ * or the loop stops.  Asking such an array for its size, or for a row by
+ * index, before it has been iterated reads all the rows into memory, as for
+ * an ordinary ResultArray, unless a count query was supplied, in which case
+ * the size comes from running the count query.
+ *
  * @author Michael St. Hippolyte
  * @version $Revision: 1.5 $
  */
@@ -28,6 +38,14 @@ public class ResultArray extends AbstractList implements CantoArray {
     private List instantiatedResultSet = null;
     private int size;
 
+    /** for a streaming array, the database and connection the results came
+     *  from and the optional query giving the number of rows
+     */
+    private Database db = null;
+    private Connection connection = null;
+    private String countSql = null;
+    private boolean streamed = false;
+
     public ResultArray(ResultSet results) throws SQLException {
     	this(results, -1);
     }
@@ -38,6 +56,17 @@ public class ResultArray extends AbstractList implements CantoArray {
         this.size = size;
     }
 
+    /** Constructs a streaming array over forward-only results.  The
+     *  connection is returned to the database's pool when the results are
+     *  used up.
+     */
+    ResultArray(ResultSet results, Database db, Connection connection, String countSql) throws SQLException {
+        this(results, -1);
+        this.db = db;
+        this.connection = connection;
+        this.countSql = countSql;
+    }
+
     public Object getArrayObject() {
         return this;
     }
@@ -49,16 +78,30 @@ public class ResultArray extends AbstractList implements CantoArray {
        
     private void instantiateResults() {
         if (instantiatedResultSet == null) {
+            if (streamed) {
+                throw new IllegalStateException("Streamed query results can only be read once");
+            }
 System.out.println("-}} instantiating result set");
             instantiatedResultSet = new ArrayList();
             Iterator it = new ResultIterator(resultSet);
             while (it.hasNext()) {
                 instantiatedResultSet.add(it.next());
             }
+            releaseConnection();
 System.out.println("-}} instantiated " + instantiatedResultSet.size() + " rows");
         }
     }
 
+    /** Closes the results and, for a streaming array, returns the connection
+     *  to the pool.
+     */
+    synchronized void releaseConnection() {
+        if (connection != null) {
+            db.getPool().release(connection, resultSet);
+            connection = null;
+        }
+    }
+
     public Object get(int n) {
         if (instantiatedResultSet == null) {
             instantiateResults(); 
@@ -72,6 +115,14 @@ System.out.println("-}} instantiated " + instantiatedResultSet.size() + " rows")
     
     public int getSize() {
     	if (size == -1) {
+    	    if (countSql != null) {
+    	        try {
+    	            size = db.int_query(countSql);
+    	            return size;
+    	        } catch (Redirection r) {
+    	            System.out.println("Unable to count results: " + r);
+    	        }
+    	    }
     	    instantiateResults();
             size = instantiatedResultSet.size();
     	}
@@ -94,7 +145,20 @@ System.out.println("-}} instantiated " + instantiatedResultSet.size() + " rows")
         throw new UnsupportedOperationException("ResultArrays are immutable");
     }
 
+    /** Returns an iterator over the rows.  A streaming array reads the rows
+     *  on demand.  Otherwise the rows are instantiated first, which closes
+     *  the result set and so lets its connection go back to the pool even
+     *  if the loop stops early; the driver has usually buffered a scrollable
+     *  result set in full anyway, so bounding memory is left to stream_query.
+     */
     public Iterator iterator() {
+        if (instantiatedResultSet == null && db != null) {
+            if (streamed) {
+                throw new IllegalStateException("Streamed query results can only be read once");
+            }
+            streamed = true;
+            return new StreamingIterator();
+        }
         if (instantiatedResultSet == null) {
             instantiateResults();
         }
@@ -104,24 +168,86 @@ System.out.println("-}} instantiated " + instantiatedResultSet.size() + " rows")
     public ResultSet getResultSet() {
         return resultSet;
     }
+
+    /** Iterates over forward-only results, presenting each row in turn
+     *  through a single DatabaseRow.  The connection is returned when the
+     *  rows run out or the iterator is closed.
+     */
+    private class StreamingIterator implements Iterator, AutoCloseable, ReusingIterator {
+        private RowSchema schema;
+        private DatabaseRow row = null;
+        private int rowNum = 0;
+        private boolean ready = false;
+        private boolean more = true;
+
+        StreamingIterator() {
+            try {
+                schema = RowSchema.forResultSet(resultSet);
+            } catch (SQLException sqle) {
+                System.out.println("Exception reading result columns: " + sqle);
+                close();
+            }
+        }
+
+        public boolean hasNext() {
+            if (!ready && more) {
+                try {
+                    more = resultSet.next();
+                } catch (SQLException sqle) {
+                    System.out.println("Exception reading results: " + sqle);
+                    more = false;
+                }
+                ready = true;
+                if (!more) {
+                    if (size == -1) {
+                        size = rowNum;
+                    }
+                    close();
+                }
+            }
+            return more;
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            rowNum++;
+            if (row == null) {
+                row = new DatabaseRow(resultSet, schema, rowNum);
+            } else {
+                row.advance(resultSet, schema, rowNum);
+            }
+            return row;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("ResultArrays are immutable");
+        }
+
+        public boolean reusesElements() {
+            return true;
+        }
+
+        public void close() {
+            more = false;
+            releaseConnection();
+        }
+    }
 }
 
 
-class ResultIterator implements Iterator {
+class ResultIterator implements Iterator, AutoCloseable {
     private ResultSet resultSet;
-    private String[] columns; 
+    private RowSchema schema;
     private DatabaseRow nextRow = null;
     private boolean more = true;
 
     public ResultIterator(ResultSet resultSet) {
         this.resultSet = resultSet;
         try {
-            ResultSetMetaData rsmd = resultSet.getMetaData();
-            int numCols = rsmd.getColumnCount();
-            columns = new String[numCols];
-            for (int i = 0; i < numCols; i++) {
-                columns[i] = rsmd.getColumnName(i + 1);
-            }
+            schema = RowSchema.forResultSet(resultSet);
             if (resultSet.getType() != ResultSet.TYPE_FORWARD_ONLY) {
                 resultSet.beforeFirst();
             }
@@ -131,7 +257,7 @@ class ResultIterator implements Iterator {
     }
 
     public boolean hasNext() {
-        if (nextRow == null) {
+        if (nextRow == null && more) {
             nextRow();
         }
         return more;
@@ -153,19 +279,32 @@ class ResultIterator implements Iterator {
     public void remove() {
         throw new UnsupportedOperationException("ResultArrays are immutable");
     }
+
+    /** Stops the iteration and closes the result set. */
+    public void close() {
+        more = false;
+        nextRow = null;
+        try {
+            resultSet.close();
+        } catch (SQLException sqle) {
+            ;
+        }
+    }
+
     private void nextRow() {
         try {
             more = resultSet.next();
             if (more) {
-                nextRow = new DatabaseRow(resultSet, columns, resultSet.getRow());
+                // the result set is closed at the end, so large objects
+                // must be read now
+                nextRow = new DatabaseRow(resultSet, schema, resultSet.getRow());
+                nextRow.loadLobs();
             } else {
                 nextRow = null;
                 resultSet.close();
             }
         } catch (Exception e) {
-            more = false;
-            nextRow = null;
+            close();
         }
     }
 }
-
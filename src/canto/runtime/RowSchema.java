@@ -0,0 +1,171 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * RowSchema.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * The column names of a query result and the index of each, shared by all
+ * the rows read from the result so each row need only hold an array of
+ * values.  Usually the columns are those of the result, in the same order.
+ * A schema may instead name a subset of the result's columns, or name them
+ * in another order, in which case it records where in the result each
+ * column is found.
+ */
+final class RowSchema {
+
+    static RowSchema forResultSet(ResultSet results) throws SQLException {
+        ResultSetMetaData rsmd = results.getMetaData();
+        int numCols = rsmd.getColumnCount();
+        String[] columns = new String[numCols];
+        for (int i = 0; i < numCols; i++) {
+            columns[i] = rsmd.getColumnName(i + 1);
+        }
+        return new RowSchema(columns);
+    }
+
+    /** Returns a schema for the named columns of the passed result, which
+     *  may be any of the result's columns in any order.  Names are matched
+     *  to the result's column labels and names ignoring case, as
+     *  ResultSet.getObject(String) does.  A column that can't be found is
+     *  read by name, which reports the problem when the row is read.
+     */
+    static RowSchema forColumns(ResultSet results, String[] columns) {
+        int[] positions = new int[columns.length];
+        try {
+            ResultSetMetaData rsmd = results.getMetaData();
+            int numCols = rsmd.getColumnCount();
+            for (int i = 0; i < columns.length; i++) {
+                for (int j = 1; j <= numCols; j++) {
+                    if (columns[i].equalsIgnoreCase(rsmd.getColumnLabel(j)) || columns[i].equalsIgnoreCase(rsmd.getColumnName(j))) {
+                        positions[i] = j;
+                        break;
+                    }
+                }
+            }
+        } catch (SQLException sqle) {
+            System.out.println("Exception reading result columns: " + sqle);
+        }
+        return new RowSchema(columns, positions);
+    }
+
+    private final String[] columns;
+    private final Map<String, Integer> index;
+
+    /** the position in the result of each column, starting at 1, or 0 for a
+     *  column to be read by name; null if the columns are the result's
+     *  columns in order
+     */
+    private final int[] positions;
+
+    RowSchema(String[] columns) {
+        this(columns, null);
+    }
+
+    private RowSchema(String[] columns, int[] positions) {
+        this.columns = columns;
+        this.positions = positions;
+        index = new HashMap<String, Integer>(columns.length * 4 / 3 + 1);
+        for (int i = columns.length - 1; i >= 0; i--) {
+            // if a name is repeated, the first column with that name wins
+            index.put(columns[i], Integer.valueOf(i));
+        }
+    }
+
+    /** Returns the index of the named column, or -1 if there is none. */
+    int indexOf(Object name) {
+        Integer n = index.get(name);
+        return (n == null ? -1 : n.intValue());
+    }
+
+    String getColumn(int n) {
+        return columns[n];
+    }
+
+    /** Reads the value of the nth column of this schema from the current
+     *  row of the passed result.
+     */
+    Object readValue(ResultSet results, int n) throws SQLException {
+        if (positions == null) {
+            return results.getObject(n + 1);
+        } else if (positions[n] > 0) {
+            return results.getObject(positions[n]);
+        } else {
+            return results.getObject(columns[n]);
+        }
+    }
+
+    String[] getColumns() {
+        return columns;
+    }
+
+    int size() {
+        return columns.length;
+    }
+}
+
+
+/**
+ * An immutable row of values, stored in an array laid out by a RowSchema.
+ * Compact rows can be shared by any number of readers.
+ */
+class CompactRow extends AbstractMap<String, Object> {
+    private final RowSchema schema;
+    private final Object[] values;
+
+    CompactRow(RowSchema schema, Object[] values) {
+        this.schema = schema;
+        this.values = values;
+    }
+
+    public Object get(Object key) {
+        int n = schema.indexOf(key);
+        return (n < 0 ? null : values[n]);
+    }
+
+    public boolean containsKey(Object key) {
+        return schema.indexOf(key) >= 0;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    private int n = 0;
+
+                    public boolean hasNext() {
+                        return n < values.length;
+                    }
+
+                    public Map.Entry<String, Object> next() {
+                        if (n >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, Object> entry = new AbstractMap.SimpleImmutableEntry<String, Object>(schema.getColumn(n), values[n]);
+                        n++;
+                        return entry;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException("Rows are immutable");
+                    }
+                };
+            }
+
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+}
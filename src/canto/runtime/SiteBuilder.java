@@ -53,6 +53,9 @@ public class SiteBuilder {
             CantoLogger.log("--- RESOLVE PASS ---");
             parseResult.jjtAccept(new Resolver(), null);
 
+            CantoLogger.log("--- FOLD PASS ---");
+            parseResult.jjtAccept(new ConstantFolder(), null);
+
             CantoLogger.log("--- VALIDATE PASS ---");
             Validater validater = new Validater();
             parseResult.jjtAccept(validater, null);
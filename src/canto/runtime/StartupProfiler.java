@@ -0,0 +1,323 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * StartupProfiler.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+import canto.lang.Definition;
+import canto.parser.Node;
+
+/**
+ * Records where the time and memory go while sites are loaded.  Each phase
+ * of loading (parsing a file, building it, linking it, initializing the
+ * domain, etc.) is measured for wall time, CPU time and bytes allocated on
+ * the thread doing the work, along with the number of nodes, definitions
+ * and source files involved.  The collected measurements can be written out
+ * as JSON.
+ *
+ * There is one profiler per JVM, shared by every site loaded in it.  When a
+ * site is reloaded the measurements from its previous load are discarded,
+ * and the profiler never holds more than MAX_PHASES measurements, dropping
+ * the oldest first.
+ */
+public class StartupProfiler {
+
+    public final static String LOAD = "load";
+    public final static String PARSE = "parse";
+    public final static String BUILD = "build";
+    public final static String LINK = "link";
+    public final static String FREEZE = "freeze";
+    public final static String RELOAD = "reload";
+    public final static String GLOBAL_INIT = "global_init";
+    public final static String INIT = "init";
+
+    /** The most measurements the profiler holds at once. */
+    public final static int MAX_PHASES = 10000;
+
+    private static StartupProfiler profiler = new StartupProfiler();
+
+    public static StartupProfiler getProfiler() {
+        return profiler;
+    }
+
+    /** A single measurement, begun by <code>start</code> and completed by
+     *  <code>stop</code>.  Both calls must be made on the same thread.
+     */
+    public static class Phase {
+        private String phase;
+        private String site;
+        private String source;
+        private long startWall;
+        private long startCpu;
+        private long startAllocated;
+        private long wallNanos = 0L;
+        private long cpuNanos = 0L;
+        private long allocatedBytes = 0L;
+        private int numNodes = 0;
+        private int numDefinitions = 0;
+        private int numFiles = 0;
+
+        private Phase(String phase, String site, String source) {
+            this.phase = phase;
+            this.site = site;
+            this.source = source;
+            startCpu = getCpuTime();
+            startAllocated = getAllocatedBytes();
+            startWall = System.nanoTime();
+        }
+
+        private void finish() {
+            wallNanos = System.nanoTime() - startWall;
+            cpuNanos = getCpuTime() - startCpu;
+            allocatedBytes = getAllocatedBytes() - startAllocated;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getSite() {
+            return site;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public int getNumNodes() {
+            return numNodes;
+        }
+
+        public int getNumDefinitions() {
+            return numDefinitions;
+        }
+
+        public int getNumFiles() {
+            return numFiles;
+        }
+    }
+
+    private static long getCpuTime() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean.isCurrentThreadCpuTimeSupported()) {
+            return bean.getCurrentThreadCpuTime();
+        }
+        return 0L;
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0L;
+    }
+
+    /** Counts the nodes and the definitions in the passed tree.  Returns a two
+     *  element array, the node count followed by the definition count.
+     */
+    public static int[] countNodes(Node node) {
+        int[] counts = new int[2];
+        if (node != null) {
+            countNodes(node, counts);
+        }
+        return counts;
+    }
+
+    private static void countNodes(Node node, int[] counts) {
+        counts[0]++;
+        if (node instanceof Definition) {
+            counts[1]++;
+        }
+        int n = node.jjtGetNumChildren();
+        for (int i = 0; i < n; i++) {
+            countNodes(node.jjtGetChild(i), counts);
+        }
+    }
+
+
+    private LinkedList<Phase> phases = new LinkedList<Phase>();
+    private long created = System.currentTimeMillis();
+
+    private StartupProfiler() {}
+
+    /** Begins measuring a phase of loading. */
+    public Phase start(String phase, String site, String source) {
+        return new Phase(phase, site, source);
+    }
+
+    /** Completes the passed measurement and records it. */
+    public void stop(Phase phase) {
+        stop(phase, 0, 0);
+    }
+
+    /** Completes the passed measurement, recording the number of nodes and
+     *  definitions it covered.
+     */
+    public void stop(Phase phase, int numNodes, int numDefinitions) {
+        stop(phase, numNodes, numDefinitions, 0);
+    }
+
+    /** Completes the passed measurement, recording the number of nodes,
+     *  definitions and source files it covered.
+     */
+    public void stop(Phase phase, int numNodes, int numDefinitions, int numFiles) {
+        phase.finish();
+        phase.numNodes = numNodes;
+        phase.numDefinitions = numDefinitions;
+        phase.numFiles = numFiles;
+        record(phase);
+    }
+
+    /** Completes the passed measurement, recording the nodes and definitions
+     *  in the passed tree.  The tree is counted after the clocks are stopped,
+     *  so the count isn't included in the measurement.
+     */
+    public void stop(Phase phase, Node tree) {
+        phase.finish();
+        int[] counts = countNodes(tree);
+        phase.numNodes = counts[0];
+        phase.numDefinitions = counts[1];
+        record(phase);
+    }
+
+    private void record(Phase phase) {
+        synchronized (phases) {
+            phases.add(phase);
+            while (phases.size() > MAX_PHASES) {
+                phases.removeFirst();
+            }
+        }
+    }
+
+    public List<Phase> getPhases() {
+        synchronized (phases) {
+            return new ArrayList<Phase>(phases);
+        }
+    }
+
+    public void clear() {
+        synchronized (phases) {
+            phases.clear();
+        }
+    }
+
+    /** Discards the measurements recorded for the named site.  Called at the
+     *  start of a reload, so that the report covers only the latest load of
+     *  each site.
+     */
+    public void clear(String site) {
+        synchronized (phases) {
+            Iterator<Phase> it = phases.iterator();
+            while (it.hasNext()) {
+                Phase p = it.next();
+                if (site == null ? p.site == null : site.equals(p.site)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /** Writes the recorded measurements as a JSON object containing one entry
+     *  per measurement, in the order they completed, followed by totals per
+     *  phase.  Times are in microseconds.
+     */
+    public void writeReport(Writer out) throws IOException {
+        List<Phase> list = getPhases();
+        Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+
+        out.write("{\n  \"created\": " + created + ",\n  \"phases\": [");
+        Iterator<Phase> it = list.iterator();
+        while (it.hasNext()) {
+            Phase p = it.next();
+            out.write("\n    { \"phase\": " + quote(p.phase) + ", \"site\": " + quote(p.site) + ", \"source\": " + quote(p.source)
+                      + ", \"wall_us\": " + (p.wallNanos / 1000L) + ", \"cpu_us\": " + (p.cpuNanos / 1000L)
+                      + ", \"allocated_bytes\": " + p.allocatedBytes + ", \"nodes\": " + p.numNodes
+                      + ", \"definitions\": " + p.numDefinitions + ", \"files\": " + p.numFiles + " }");
+            if (it.hasNext()) {
+                out.write(',');
+            }
+
+            long[] total = totals.get(p.phase);
+            if (total == null) {
+                total = new long[7];
+                totals.put(p.phase, total);
+            }
+            total[0]++;
+            total[1] += p.wallNanos;
+            total[2] += p.cpuNanos;
+            total[3] += p.allocatedBytes;
+            total[4] += p.numNodes;
+            total[5] += p.numDefinitions;
+            total[6] += p.numFiles;
+        }
+        out.write("\n  ],\n  \"totals\": {");
+
+        Iterator<Map.Entry<String, long[]>> totalIt = totals.entrySet().iterator();
+        while (totalIt.hasNext()) {
+            Map.Entry<String, long[]> entry = totalIt.next();
+            long[] total = entry.getValue();
+            out.write("\n    " + quote(entry.getKey()) + ": { \"count\": " + total[0]
+                      + ", \"wall_us\": " + (total[1] / 1000L) + ", \"cpu_us\": " + (total[2] / 1000L)
+                      + ", \"allocated_bytes\": " + total[3] + ", \"nodes\": " + total[4]
+                      + ", \"definitions\": " + total[5] + ", \"files\": " + total[6] + " }");
+            if (totalIt.hasNext()) {
+                out.write(',');
+            }
+        }
+        out.write("\n  }\n}\n");
+        out.flush();
+    }
+
+    /** Writes the report to the named file, replacing any previous contents. */
+    public void writeReport(String fileName) throws IOException {
+        Writer out = new BufferedWriter(new FileWriter(fileName, false));
+        try {
+            writeReport(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String quote(String str) {
+        if (str == null) {
+            return "null";
+        }
+        StringBuffer sb = new StringBuffer(str.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+                sb.append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
@@ -12,6 +12,7 @@ import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 
+import canto.lang.ConstantFolder;
 import canto.lang.Construction;
 import canto.lang.Core;
 import canto.lang.Definition;
@@ -109,6 +110,7 @@ public class Table {
             Core core = site.getCore();
             collectionDef.jjtAccept(new Initializer(core, site, true), owner);
             collectionDef.jjtAccept(new Resolver(), null);
+            collectionDef.jjtAccept(new ConstantFolder(), null);
             Validater validater = new Validater();
             collectionDef.jjtAccept(validater, null);
             String problems = validater.spoolProblems();
@@ -362,6 +362,7 @@ public class Utils {
     
     public static String includeFile(String filename) throws Redirection {
         String text = null;
+        DependencyTracker.fileRead(filename);
         try {
             File file = new File(filename);
             if (file.exists() && !file.isDirectory()) {
@@ -747,6 +748,7 @@ public class Utils {
     }
 
     public static List<String> linesFromFile(String filename) throws Redirection {
+        DependencyTracker.fileRead(filename);
         try {
             Path path = Paths.get(filename);
             List<String> lines = Files.readAllLines(path);
@@ -762,6 +764,7 @@ public class Utils {
     public static List<String> safeLinesFromFile(String filename, String baseDir) throws Redirection {
         List<String> list = new ArrayList<String>();
         FileReader in = null;
+        DependencyTracker.fileRead(baseDir + filename);
         try {
             File file = new File(baseDir + filename);
             if (file.exists() && !file.isDirectory()) {
@@ -0,0 +1,318 @@
+/* Canto Compiler and Runtime Engine
+ *
+ * WriteBatch.java
+ *
+ * Copyright (c) 2026 by cantolang.org
+ * All rights reserved.
+ */
+
+package canto.runtime;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Writes to the tables of one database that have been put off so they can
+ * be sent together.
+ *
+ * When batching is enabled for a database, the writes a RecordCollection
+ * makes while a request is being handled are collected here rather than run
+ * one at a time.  Consecutive writes with the same SQL are sent as one JDBC
+ * batch, and all the batches are run in a single transaction when the batch
+ * fills up, before a statement or query is run directly on the same
+ * database, before the page is written out and when the request ends.  If
+ * any write fails, the transaction is rolled back, so either all the writes
+ * in a batch are made or none are.
+ *
+ * Batches belong to the thread handling a request, between calls to
+ * beginRequest and endRequest.  Writes made outside a request, or on other
+ * threads such as parallel loop workers, are not batched.  So that such a
+ * write doesn't overtake writes a request has already made, the batches of
+ * every request in progress are flushed before a thread without a batch
+ * reads or writes the same database.
+ */
+final class WriteBatch {
+
+    /** the batches for the request the current thread is handling */
+    private static ThreadLocal<List<WriteBatch>> requestBatches = new ThreadLocal<List<WriteBatch>>();
+
+    /** the batches of every request in progress, by pool */
+    private static Map<ConnectionPool, List<WriteBatch>> openBatches = new HashMap<ConnectionPool, List<WriteBatch>>();
+
+    /** how deeply the current thread's requests are nested */
+    private static ThreadLocal<int[]> requestDepth = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /** Starts collecting writes for a request on the current thread. */
+    static void beginRequest() {
+        if (requestDepth.get()[0]++ == 0) {
+            requestBatches.set(new ArrayList<WriteBatch>(1));
+        }
+    }
+
+    /** Ends a request, flushing the writes made during it.  If any batch
+     *  fails, the rest are still flushed and the first failure is thrown.
+     */
+    static void endRequest() throws SQLException {
+        int[] depth = requestDepth.get();
+        if (depth[0] == 0 || --depth[0] > 0) {
+            return;
+        }
+        List<WriteBatch> batches = requestBatches.get();
+        requestBatches.remove();
+        try {
+            flushAll(batches);
+        } finally {
+            synchronized (openBatches) {
+                for (WriteBatch batch: batches) {
+                    List<WriteBatch> poolBatches = openBatches.get(batch.pool);
+                    if (poolBatches != null) {
+                        poolBatches.remove(batch);
+                        if (poolBatches.isEmpty()) {
+                            openBatches.remove(batch.pool);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Flushes the writes made so far during the current request on this
+     *  thread, if any.  Writes made later in the request are collected as
+     *  before.  If any batch fails, the rest are still flushed and the first
+     *  failure is thrown.
+     */
+    static void flushRequest() throws SQLException {
+        List<WriteBatch> batches = requestBatches.get();
+        if (batches != null) {
+            flushAll(batches);
+        }
+    }
+
+    private static void flushAll(List<WriteBatch> batches) throws SQLException {
+        SQLException failure = null;
+        for (WriteBatch batch: batches) {
+            try {
+                batch.flush();
+            } catch (SQLException sqle) {
+                if (failure == null) {
+                    failure = sqle;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Flushes the current request's batch for the database using the passed
+     *  pool, if there is one with writes pending.  If this thread isn't
+     *  handling a request, flushes the batches of every request in progress
+     *  for that database instead.
+     */
+    static void flushPending(ConnectionPool pool) throws SQLException {
+        List<WriteBatch> batches = requestBatches.get();
+        if (batches == null) {
+            flushOpenBatches(pool);
+            return;
+        }
+        for (WriteBatch batch: batches) {
+            if (batch.pool == pool) {
+                batch.flush();
+                return;
+            }
+        }
+    }
+
+    /** Flushes the batches of every request in progress for the database
+     *  using the passed pool.  Called before a thread that isn't handling a
+     *  request, and so has no batch of its own, reads or writes the database
+     *  directly.  If any batch fails, the rest are still flushed and the
+     *  first failure is thrown.
+     */
+    static void flushOpenBatches(ConnectionPool pool) throws SQLException {
+        List<WriteBatch> batches;
+        synchronized (openBatches) {
+            List<WriteBatch> poolBatches = openBatches.get(pool);
+            if (poolBatches == null) {
+                return;
+            }
+            batches = new ArrayList<WriteBatch>(poolBatches);
+        }
+        flushAll(batches);
+    }
+
+    /** Returns the current request's batch for the database using the passed
+     *  pool, or null if no request is being handled on this thread.
+     */
+    static WriteBatch getBatch(ConnectionPool pool, int maxSize, QueryCache queryCache) {
+        List<WriteBatch> batches = requestBatches.get();
+        if (batches == null) {
+            return null;
+        }
+        for (WriteBatch batch: batches) {
+            if (batch.pool == pool) {
+                batch.maxSize = maxSize;
+                return batch;
+            }
+        }
+        WriteBatch batch = new WriteBatch(pool, maxSize, queryCache);
+        batches.add(batch);
+        synchronized (openBatches) {
+            List<WriteBatch> poolBatches = openBatches.get(pool);
+            if (poolBatches == null) {
+                poolBatches = new ArrayList<WriteBatch>(1);
+                openBatches.put(pool, poolBatches);
+            }
+            poolBatches.add(batch);
+        }
+        return batch;
+    }
+
+
+    /** Writes with the same SQL, in the order they were made. */
+    private static class Group {
+        String sql;
+        Class<?>[] paramClasses;
+        List<Object[]> rows = new ArrayList<Object[]>();
+
+        Group(String sql, Class<?>[] paramClasses) {
+            this.sql = sql;
+            this.paramClasses = paramClasses;
+        }
+    }
+
+    private ConnectionPool pool;
+    private int maxSize;
+    private QueryCache queryCache;
+
+    private List<Group> groups = new ArrayList<Group>();
+    private int numPending = 0;
+
+    /** tables written to, for invalidating cached queries */
+    private Set<String> tables = new HashSet<String>();
+
+    /** whether each key written to in each table exists once the pending
+     *  writes are made
+     */
+    private Map<String, Map<String, Boolean>> keyStates = new HashMap<String, Map<String, Boolean>>();
+
+    /** tables with a pending write deleting all their rows */
+    private Set<String> clearedTables = new HashSet<String>();
+
+    private WriteBatch(ConnectionPool pool, int maxSize, QueryCache queryCache) {
+        this.pool = pool;
+        this.maxSize = maxSize;
+        this.queryCache = queryCache;
+    }
+
+    /** Adds a write to the batch.  The parameter values are bound using the
+     *  passed classes when the batch is flushed.  Flushes the batch if it is
+     *  full.
+     */
+    synchronized void add(String table, String sql, Object[] params, Class<?>[] paramClasses) throws SQLException {
+        Group group = (groups.isEmpty() ? null : groups.get(groups.size() - 1));
+        if (group == null || !group.sql.equals(sql)) {
+            group = new Group(sql, paramClasses);
+            groups.add(group);
+        }
+        group.rows.add(params);
+        tables.add(table);
+        numPending++;
+        if (numPending >= maxSize) {
+            flush();
+        }
+    }
+
+    synchronized boolean hasPending() {
+        return numPending > 0;
+    }
+
+    /** Returns whether a row with the passed key will exist in the table
+     *  once the pending writes are made, or null if the pending writes don't
+     *  determine it.
+     */
+    synchronized Boolean keyExists(String table, String key) {
+        Map<String, Boolean> states = keyStates.get(table);
+        Boolean exists = (states == null ? null : states.get(key));
+        if (exists == null && clearedTables.contains(table)) {
+            exists = Boolean.FALSE;
+        }
+        return exists;
+    }
+
+    synchronized void setKeyExists(String table, String key, boolean exists) {
+        Map<String, Boolean> states = keyStates.get(table);
+        if (states == null) {
+            states = new HashMap<String, Boolean>();
+            keyStates.put(table, states);
+        }
+        states.put(key, Boolean.valueOf(exists));
+    }
+
+    /** Notes that a pending write deletes all the rows in the table. */
+    synchronized void setCleared(String table) {
+        keyStates.remove(table);
+        clearedTables.add(table);
+    }
+
+    /** Runs the pending writes in one transaction.  The pending writes are
+     *  discarded whether or not they succeed.  The batch may be flushed from
+     *  a thread other than the one adding to it, so access is synchronized.
+     */
+    synchronized void flush() throws SQLException {
+        if (numPending == 0) {
+            return;
+        }
+        List<Group> flushGroups = groups;
+        groups = new ArrayList<Group>();
+        numPending = 0;
+        keyStates.clear();
+        clearedTables.clear();
+
+        Connection connection = pool.borrow("batch of writes to " + tables);
+        boolean committed = false;
+        try {
+            connection.setAutoCommit(false);
+            for (Group group: flushGroups) {
+                PreparedStatement s = pool.prepareStatement(connection, group.sql);
+                try {
+                    int numParams = group.paramClasses.length;
+                    for (Object[] row: group.rows) {
+                        for (int i = 0; i < numParams; i++) {
+                            RecordCollection.setParameter(s, i + 1, row[i], group.paramClasses[i]);
+                        }
+                        s.addBatch();
+                    }
+                    s.executeBatch();
+                } catch (SQLException sqle) {
+                    try {
+                        s.clearBatch();
+                    } catch (SQLException e) {
+                        ;
+                    }
+                    SQLException failure = new SQLException("Batched write failed (sql = \"" + group.sql + "\", "
+                                                            + group.rows.size() + " rows): " + sqle.getMessage(), sqle);
+                    throw failure;
+                }
+            }
+            connection.commit();
+            committed = true;
+
+        } finally {
+            if (!committed) {
+                try {
+                    connection.rollback();
+                } catch (SQLException sqle) {
+                    ;
+                }
+            }
+            pool.release(connection);
+            queryCache.invalidateTables(new HashSet<String>(tables));
+            tables.clear();
+        }
+    }
+}